@@ -0,0 +1,55 @@
+/**
+ * This interface is the activation function of one layer of nodes,
+ *    h = f(theta), and its derivative.
+ *
+ * A Layer works on a whole row of nodes at once, so besides the function of
+ *    one number there are batch methods over the first count elements of an
+ *    array. They are plain loops with no calls in them, so the JIT can unroll
+ *    and vectorize them.
+ *
+ * The derivative is given both theta and the activation the forward pass
+ *    already worked out, so each function can use whichever is cheaper:
+ *    the sigmoid's is h * (1 - h), tanh's is 1 - h * h, and ReLU's only looks
+ *    at the sign of theta. None of them calls Math.exp again.
+ *
+ * Activations has the ones there are: sigmoid (exact or from a table), tanh,
+ *    ReLU, and leaky ReLU.
+ */
+public interface Activation
+{
+   /**
+    * The activation function of one number
+    *
+    * @param x    the double we are putting into the function
+    * @return     f(x)
+    */
+   double apply(double x);
+
+   /**
+    * The activation function of count numbers
+    *    out[k] = f(theta[k])
+    *
+    * @param theta   the sums going into the nodes
+    * @param out     where to put the activations (may be theta)
+    * @param count   the number of nodes
+    */
+   void apply(double[] theta, double[] out, int count);
+
+   /**
+    * The derivative of the activation function of count numbers
+    *    out[k] = f'(theta[k])
+    *
+    * @param theta        the sums going into the nodes
+    * @param activations  f(theta), as apply(...) gave it
+    * @param out          where to put the derivatives (may be either of the others)
+    * @param count        the number of nodes
+    */
+   void derivative(double[] theta, double[] activations, double[] out, int count);
+
+   /**
+    * Finds the name of the function, as Activations.forName(...) takes it
+    *
+    * @return  the name
+    */
+   String getName();
+}//public interface Activation
@@ -0,0 +1,253 @@
+/**
+ * This class holds the activation functions a Layer can use.
+ *
+ *    name            f(x)                        f'(x)                   range
+ *    sigmoid         1 / (1 + e^ (-x))           f(x) * (1 - f(x))       0 to 1
+ *    fast sigmoid    the sigmoid from a table    f(x) * (1 - f(x))       0 to 1
+ *                    (Layer.fastF, off by at most Layer.FAST_SIGMOID_MAX_ERROR)
+ *    tanh            (e^x - e^-x) / (e^x + e^-x) 1 - f(x)^2              -1 to 1
+ *    relu            max(0, x)                   1 if x > 0, else 0      0 and up
+ *    leaky relu      x if x > 0, else 0.01 x     1 if x > 0, else 0.01   any
+ *
+ * The sigmoid saturates: once |theta| is more than about 5, f' is under 0.01
+ *    and the weights feeding that node barely move. tanh is the sigmoid
+ *    stretched to -1 to 1 and centered on 0, which keeps the next layer's
+ *    inputs centered and its gradients four times larger near 0. ReLU never
+ *    saturates for theta > 0 and costs no exp at all, but a node whose theta
+ *    is below 0 for every model stops learning; leaky ReLU keeps a small
+ *    slope there so it can come back.
+ *
+ * Passes to reach an error under the target, online, LAMBDA = 0.1, each row
+ *    from the same random starting weights (the range over three sets of
+ *    starting weights):
+ *
+ *    hidden / output           characters (400 in, 20 hidden)   patterns (2 in, 5 hidden)
+ *                              error 1e-4                       error 1e-3
+ *    sigmoid / sigmoid            1,086 - 1,309                    5,111 - 9,224
+ *    tanh / sigmoid                 230 - 585                      1,279 - 5,450
+ *    relu / sigmoid                 544 - 2,224                      416 - 435
+ *    leaky relu / sigmoid           539 - 10,276                     420 - 435
+ *    tanh / tanh                    227 - 432                        281 - 411
+ *    leaky relu / leaky relu      1,214, or NaN                      501 - 1,225
+ *
+ *    A pass costs about the same with any of them (ReLU a little less, tanh
+ *    a little more), so the time to the target goes with the passes. An
+ *    output that is not bounded (ReLU) can blow up to NaN with this LAMBDA.
+ *    The fast sigmoid takes the same passes as the sigmoid.
+ */
+public final class Activations
+{
+   /*
+    * The slope of leaky ReLU below 0
+    *
+    * Use this variable to change the default
+    */
+   final static double LEAKY_RELU_SLOPE = 0.01;
+
+   public final static Activation SIGMOID = new Sigmoid();
+   public final static Activation FAST_SIGMOID = new FastSigmoid();
+   public final static Activation TANH = new Tanh();
+   public final static Activation RELU = new LeakyReLU("relu", 0);
+   public final static Activation LEAKY_RELU = new LeakyReLU("leaky relu", Activations.LEAKY_RELU_SLOPE);
+
+   /*
+    * Every activation function; the index of each is its code in a model
+    *    file (see ModelFile), so new ones only go on the end
+    */
+   private final static Activation[] ALL = {Activations.SIGMOID, Activations.FAST_SIGMOID,
+                                            Activations.TANH, Activations.RELU, Activations.LEAKY_RELU};
+
+   /**
+    * Constructor for the class Activations
+    *    Nothing to make; everything here is static
+    */
+   private Activations()
+   {
+   }//private Activations()
+
+   /**
+    * Finds an activation function by its name (see the table above)
+    *
+    * @param name    the name, in any case
+    * @return        the activation function
+    * @throws IllegalArgumentException  if there is none by that name
+    */
+   public static Activation forName(String name)
+   {
+      for (Activation activation : Activations.ALL)
+         if (activation.getName().equalsIgnoreCase(name.trim()))
+            return activation;
+      throw new IllegalArgumentException("No activation function named \"" + name + "\"");
+   }//public static Activation forName(String name)
+
+   /**
+    * Finds the code a model file saves for an activation function
+    *
+    * @param activation    the activation function (one of the constants above)
+    * @return              its code
+    * @throws IllegalArgumentException  if it is not one of the constants above
+    */
+   public static int codeOf(Activation activation)
+   {
+      for (int code = 0; code < Activations.ALL.length; code++)
+         if (Activations.ALL[code] == activation)
+            return code;
+      throw new IllegalArgumentException("The activation function " + activation.getName() + " has no code");
+   }//public static int codeOf(Activation activation)
+
+   /**
+    * Finds an activation function by the code a model file saves for it
+    *
+    * @param code    the code (see codeOf(...))
+    * @return        the activation function
+    * @throws IllegalArgumentException  if there is none with that code
+    */
+   public static Activation forCode(int code)
+   {
+      if (code < 0 || code >= Activations.ALL.length)
+         throw new IllegalArgumentException("No activation function has the code " + code);
+      return Activations.ALL[code];
+   }//public static Activation forCode(int code)
+
+   /**
+    * Tells whether an activation function is the sigmoid (exact or from a
+    *    table), the only one FloatNetwork and QuantizedModel work out
+    *
+    * @param activation    the activation function
+    * @return              true if it is SIGMOID or FAST_SIGMOID
+    */
+   public static boolean isSigmoid(Activation activation)
+   {
+      return activation == Activations.SIGMOID || activation == Activations.FAST_SIGMOID;
+   }//public static boolean isSigmoid(Activation activation)
+
+   /**
+    * The logistic sigmoid, with Math.exp
+    */
+   private static class Sigmoid implements Activation
+   {
+      public double apply(double x)
+      {
+         return Layer.f(x);
+      }
+
+      public void apply(double[] theta, double[] out, int count)
+      {
+         for (int k = 0; k < count; k++)
+            out[k] = Layer.f(theta[k]);
+         return;
+      }
+
+      public void derivative(double[] theta, double[] activations, double[] out, int count)
+      {
+         for (int k = 0; k < count; k++)
+            out[k] = activations[k] * (1 - activations[k]);
+         return;
+      }
+
+      public String getName()
+      {
+         return "sigmoid";
+      }
+   }//private static class Sigmoid
+
+   /**
+    * The logistic sigmoid, interpolated in a table (see Layer.fastF)
+    */
+   private static class FastSigmoid extends Sigmoid
+   {
+      public double apply(double x)
+      {
+         return Layer.fastF(x);
+      }
+
+      public void apply(double[] theta, double[] out, int count)
+      {
+         for (int k = 0; k < count; k++)
+            out[k] = Layer.fastF(theta[k]);
+         return;
+      }
+
+      public String getName()
+      {
+         return "fast sigmoid";
+      }
+   }//private static class FastSigmoid
+
+   /**
+    * The hyperbolic tangent
+    */
+   private static class Tanh implements Activation
+   {
+      public double apply(double x)
+      {
+         return Math.tanh(x);
+      }
+
+      public void apply(double[] theta, double[] out, int count)
+      {
+         for (int k = 0; k < count; k++)
+            out[k] = Math.tanh(theta[k]);
+         return;
+      }
+
+      public void derivative(double[] theta, double[] activations, double[] out, int count)
+      {
+         for (int k = 0; k < count; k++)
+            out[k] = 1 - activations[k] * activations[k];
+         return;
+      }
+
+      public String getName()
+      {
+         return "tanh";
+      }
+   }//private static class Tanh
+
+   /**
+    * ReLU with a slope below 0 (plain ReLU when the slope is 0)
+    */
+   private static class LeakyReLU implements Activation
+   {
+      private final String name;       //what forName(...) calls it
+      private final double slope;      //the slope below 0
+
+      /**
+       * Constructor for the class LeakyReLU
+       *
+       * @param myName   what forName(...) calls it
+       * @param mySlope  the slope below 0
+       */
+      private LeakyReLU(String myName, double mySlope)
+      {
+         this.name = myName;
+         this.slope = mySlope;
+      }//private LeakyReLU(String myName, double mySlope)
+
+      public double apply(double x)
+      {
+         return x > 0 ? x : this.slope * x;
+      }
+
+      public void apply(double[] theta, double[] out, int count)
+      {
+         double below = this.slope;
+         for (int k = 0; k < count; k++)
+            out[k] = theta[k] > 0 ? theta[k] : below * theta[k];
+         return;
+      }
+
+      public void derivative(double[] theta, double[] activations, double[] out, int count)
+      {
+         double below = this.slope;
+         for (int k = 0; k < count; k++)
+            out[k] = theta[k] > 0 ? 1 : below;
+         return;
+      }
+
+      public String getName()
+      {
+         return this.name;
+      }
+   }//private static class LeakyReLU
+}//public final class Activations
@@ -0,0 +1,230 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class scores many inputs with a trained network (any Predictor, such as
+ *    TrainedModel, QuantizedModel, or MappedModel) on all the cores at once.
+ *
+ * The rows are split in half over and over in a ForkJoinPool until each piece
+ *    is at most ROWS_PER_TASK rows, and each piece is scored on whichever
+ *    thread runs it. The outputs go straight into the result matrix, and the
+ *    hidden layer of each thread is reused (see TrainedModel.predict), so
+ *    nothing is allocated per row other than the result row itself.
+ *
+ * The network is given to each call of score(...), so one scorer (its pool of
+ *    threads and the row each thread unpacks packed inputs into) can score
+ *    with a new immutable model every time, such as a fresh TrainedModel of
+ *    a network that is still training.
+ *
+ * Nothing here touches the training state of XOROptimized, and nothing is
+ *    printed; the caller decides what to do with the results.
+ */
+public class BatchScorer
+{
+   /*
+    * The most rows one task scores without splitting
+    */
+   final static int ROWS_PER_TASK = 64;
+
+   /*
+    * The number of rows score(Iterator) collects before scoring them together
+    */
+   final static int ROWS_PER_CHUNK = 4096;
+
+   private ForkJoinPool pool;       //runs the scoring
+   private long lastNumRows;        //the number of rows in the last call to score(...)
+   private long lastNanos;          //how long the last call to score(...) took
+
+   /*
+    * The row each thread unpacks packed inputs into, made the first time that
+    *    thread needs one (or a longer one) and reused after that
+    */
+   private final ThreadLocal<double[]> unpacked;
+
+   /**
+    * Constructor for the class BatchScorer that uses every core
+    */
+   public BatchScorer()
+   {
+      this(Runtime.getRuntime().availableProcessors());
+   }//public BatchScorer()
+
+   /**
+    * Constructor for the class BatchScorer
+    *
+    * @param numThreads    the number of threads to score on
+    */
+   public BatchScorer(int numThreads)
+   {
+      this.pool = new ForkJoinPool(Math.max(1, numThreads));
+      this.unpacked = new ThreadLocal<double[]>()
+      {
+         protected double[] initialValue()
+         {
+            return new double[0];
+         }
+      };
+   }//public BatchScorer(int numThreads)
+
+   /**
+    * Scores every row of a matrix of inputs
+    *
+    * @param model   the network to score with
+    * @param inputs  [row][input node]
+    * @return        [row][output node], one row of outputs per row of inputs
+    */
+   public double[][] score(Predictor model, double[][] inputs)
+   {
+      long start = System.nanoTime();
+      double[][] results = new double[inputs.length][model.getNumOutputs()];
+      this.pool.invoke(new ScoreTask(model, inputs, null, results, 0, inputs.length));
+      this.lastNanos = System.nanoTime() - start;
+      this.lastNumRows = inputs.length;
+      return results;
+   }//public double[][] score(Predictor model, double[][] inputs)
+
+   /**
+    * Scores every row of a matrix of packed 0/1 inputs
+    *    Each task unpacks its rows one at a time into its thread's row, so the
+    *    whole matrix is never made in doubles.
+    *
+    * @param model   the network to score with
+    * @param inputs  the rows of inputs
+    * @return        [row][output node], one row of outputs per row of inputs
+    */
+   public double[][] score(Predictor model, BitRows inputs)
+   {
+      long start = System.nanoTime();
+      double[][] results = new double[inputs.getNumRows()][model.getNumOutputs()];
+      this.pool.invoke(new ScoreTask(model, null, inputs, results, 0, inputs.getNumRows()));
+      this.lastNanos = System.nanoTime() - start;
+      this.lastNumRows = inputs.getNumRows();
+      return results;
+   }//public double[][] score(Predictor model, BitRows inputs)
+
+   /**
+    * Scores every input an iterator gives, ROWS_PER_CHUNK rows at a time
+    *    Only one chunk of inputs is held at once.
+    *
+    * @param model   the network to score with
+    * @param inputs  the inputs, one row at a time
+    * @return        one row of outputs per input, in the same order
+    */
+   public List<double[]> score(Predictor model, Iterator<double[]> inputs)
+   {
+      long start = System.nanoTime();
+      long numRows = 0;
+      List<double[]> results = new ArrayList<double[]>();
+      double[][] chunk = new double[BatchScorer.ROWS_PER_CHUNK][];
+      while (inputs.hasNext())
+      {
+         int count = 0;
+         while (count < chunk.length && inputs.hasNext())
+            chunk[count++] = inputs.next();
+
+         double[][] chunkResults = new double[count][model.getNumOutputs()];
+         this.pool.invoke(new ScoreTask(model, chunk, null, chunkResults, 0, count));
+         for (int r = 0; r < count; r++)
+            results.add(chunkResults[r]);
+         numRows += count;
+      }
+      this.lastNanos = System.nanoTime() - start;
+      this.lastNumRows = numRows;
+      return results;
+   }//public List<double[]> score(Predictor model, Iterator<double[]> inputs)
+
+   /**
+    * Finds how fast the last call to score(...) went
+    *
+    * @return  rows scored per second in the last call to score(...)
+    */
+   public double getRowsPerSecond()
+   {
+      if (this.lastNanos == 0)
+         return 0;
+      return this.lastNumRows / (this.lastNanos / 1e9);
+   }//public double getRowsPerSecond()
+
+   /**
+    * Stops the threads of the pool. The scorer cannot be used after this.
+    */
+   public void shutdown()
+   {
+      this.pool.shutdown();
+      return;
+   }//public void shutdown()
+
+   /**
+    * Finds the calling thread's row to unpack packed inputs into
+    *
+    * @param numCols the number of inputs in a row
+    * @return        the row, exactly numCols long
+    */
+   private double[] unpackedRow(int numCols)
+   {
+      double[] row = this.unpacked.get();
+      if (row.length != numCols)
+      {
+         row = new double[numCols];
+         this.unpacked.set(row);
+      }
+      return row;
+   }//private double[] unpackedRow(int numCols)
+
+   /**
+    * Scores the rows low (inclusive) to high (exclusive)
+    */
+   @SuppressWarnings("serial")
+   private class ScoreTask extends RecursiveAction
+   {
+      private Predictor model;      //the network to score with
+      private double[][] inputs;    //all the inputs (or null)
+      private BitRows bits;         //all the inputs, packed (if inputs is null)
+      private double[][] results;   //all the results
+      private int low;              //the first row
+      private int high;             //one past the last row
+
+      /**
+       * Constructor for the class ScoreTask
+       *
+       * @param myModel    the network to score with
+       * @param myInputs   all the inputs (or null)
+       * @param myBits     all the inputs, packed (if myInputs is null)
+       * @param myResults  all the results
+       * @param myLow      the first row
+       * @param myHigh     one past the last row
+       */
+      private ScoreTask(Predictor myModel, double[][] myInputs, BitRows myBits,
+                        double[][] myResults, int myLow, int myHigh)
+      {
+         this.model = myModel;
+         this.inputs = myInputs;
+         this.bits = myBits;
+         this.results = myResults;
+         this.low = myLow;
+         this.high = myHigh;
+      }//private ScoreTask(...)
+
+      /**
+       * Scores the rows, or splits them in half if there are too many
+       */
+      protected void compute()
+      {
+         if (this.high - this.low <= BatchScorer.ROWS_PER_TASK)
+         {
+            double[] row = (this.inputs == null) ? BatchScorer.this.unpackedRow(this.bits.getNumCols()) : null;
+            for (int r = this.low; r < this.high; r++)
+               this.model.predict(this.inputs == null ? this.bits.unpack(r, row) : this.inputs[r],
+                                  this.results[r]);
+            return;
+         }
+         int middle = (this.low + this.high) / 2;
+         invokeAll(new ScoreTask(this.model, this.inputs, this.bits, this.results, this.low, middle),
+                   new ScoreTask(this.model, this.inputs, this.bits, this.results, middle, this.high));
+         return;
+      }//protected void compute()
+   }//private class ScoreTask
+}//public class BatchScorer
@@ -0,0 +1,249 @@
+/**
+ * This class is a matrix of inputs, [model][node], that are all 0 or 1, kept
+ *    as one bit per input packed 64 to a long.
+ *
+ * Row m starts at word m * wordsPerRow, and input k of the row is bit (k % 64)
+ *    of word k / 64 of the row. Every row starts on a new word, so threads that
+ *    fill different rows never write the same word.
+ *
+ * A double takes 64 bits, so the matrix takes 1/64 of the memory of double[][]
+ *    (a 20 x 20 image is 7 longs instead of 400 doubles). Millions of images fit
+ *    in the memory that holds thousands as doubles. Images can be decoded
+ *    straight into the bits (DibDump.mapBMPInto(String, BitRows, int) or
+ *    ImageLoader.load(String[], BitRows)) and trained on with
+ *    Layer.forward(InputRows, int, int) without ever making the doubles.
+ *
+ * Since every input is 0 or 1, the dot product of a row and a row of weights is
+ *    the sum of the weights whose bit is set (Kernels.dot(long[], ...)), and the
+ *    gradient only changes those weights, like SparseRows without the index and
+ *    value of every element.
+ */
+public final class BitRows implements InputRows
+{
+   private final int numRows;          //the number of rows (models)
+   private final int numCols;          //the number of inputs in a row
+   private final int wordsPerRow;      //the number of longs in a row
+   private final long[] words;         //numRows rows of wordsPerRow words
+   private final double[][] dense;     //the matrix this was packed from (else null)
+
+   /**
+    * Constructor for the class BitRows
+    *    Every bit starts at 0
+    *
+    * @param myNumRows  the number of rows (models)
+    * @param myNumCols  the number of inputs in a row
+    */
+   public BitRows(int myNumRows, int myNumCols)
+   {
+      this(myNumRows, myNumCols, null);
+   }//public BitRows(int myNumRows, int myNumCols)
+
+   /**
+    * Constructor for the class BitRows that remembers the matrix it is packed from
+    *
+    * @param myNumRows  the number of rows (models)
+    * @param myNumCols  the number of inputs in a row
+    * @param myDense    the matrix (or null)
+    */
+   private BitRows(int myNumRows, int myNumCols, double[][] myDense)
+   {
+      this.numRows = myNumRows;
+      this.numCols = myNumCols;
+      this.wordsPerRow = (myNumCols + 63) >>> 6;
+      long numWords = (long) myNumRows * this.wordsPerRow;
+      if (numWords > Integer.MAX_VALUE)
+         throw new IllegalArgumentException(myNumRows + " rows of " + myNumCols + " bits is too many for one array");
+      this.words = new long[(int) numWords];
+      this.dense = myDense;
+   }//private BitRows(int myNumRows, int myNumCols, double[][] myDense)
+
+   /**
+    * Packs a matrix if every element of it is 0 or 1 and its rows are all
+    *    the same length
+    *    The matrix is kept only to tell which matrix this came from (covers(...)).
+    *
+    * @param dense   the matrix, [model][node]
+    * @return        the packed rows, or null if the matrix is not all 0s and 1s
+    */
+   public static BitRows ifBinary(double[][] dense)
+   {
+      if (dense.length == 0)
+         return null;
+      int numCols = dense[0].length;
+      for (double[] row : dense)
+      {
+         if (row.length != numCols)
+            return null;
+         for (double value : row)
+            if (value != 0 && value != 1)
+               return null;
+      }
+      BitRows bits = new BitRows(dense.length, numCols, dense);
+      for (int m = 0; m < dense.length; m++)                //loops over the rows
+         for (int k = 0; k < numCols; k++)
+            if (dense[m][k] != 0)
+               bits.set(m, k);
+      return bits;
+   }//public static BitRows ifBinary(double[][] dense)
+
+   /**
+    * Sets one input to 1
+    *
+    * @param row  the row
+    * @param col  the input
+    */
+   public void set(int row, int col)
+   {
+      this.words[row * this.wordsPerRow + (col >>> 6)] |= 1L << col;
+      return;
+   }//public void set(int row, int col)
+
+   /**
+    * Finds one input
+    *
+    * @param row  the row
+    * @param col  the input
+    * @return     true if the input is 1
+    */
+   public boolean get(int row, int col)
+   {
+      return (this.words[row * this.wordsPerRow + (col >>> 6)] & (1L << col)) != 0;
+   }//public boolean get(int row, int col)
+
+   /**
+    * Sets every input of one row to 0
+    *
+    * @param row  the row
+    */
+   public void clearRow(int row)
+   {
+      int start = row * this.wordsPerRow;
+      for (int word = 0; word < this.wordsPerRow; word++)
+         this.words[start + word] = 0;
+      return;
+   }//public void clearRow(int row)
+
+   /**
+    * Copies the words of one row out (see the class comment for the layout)
+    *
+    * @param row  the row
+    * @param out  where to put the words (length at least (numCols + 63) / 64)
+    * @return     out
+    */
+   long[] getRowWords(int row, long[] out)
+   {
+      System.arraycopy(this.words, row * this.wordsPerRow, out, 0, this.wordsPerRow);
+      return out;
+   }//long[] getRowWords(int row, long[] out)
+
+   /**
+    * Replaces the words of one row (see the class comment for the layout)
+    *
+    * @param row  the row
+    * @param in   the words (length at least (numCols + 63) / 64)
+    */
+   void setRowWords(int row, long[] in)
+   {
+      System.arraycopy(in, 0, this.words, row * this.wordsPerRow, this.wordsPerRow);
+      return;
+   }//void setRowWords(int row, long[] in)
+
+   /**
+    * Unpacks one row into doubles
+    *
+    * @param row  the row
+    * @param out  where to put the inputs (length at least numCols)
+    * @return     out
+    */
+   public double[] unpack(int row, double[] out)
+   {
+      for (int k = 0; k < this.numCols; k++)
+         out[k] = this.get(row, k) ? 1 : 0;
+      return out;
+   }//public double[] unpack(int row, double[] out)
+
+   /**
+    * Counts the inputs of one row that are 1
+    *
+    * @param row  the row
+    * @return     the number of set bits in the row
+    */
+   public int countBits(int row)
+   {
+      int count = 0;
+      int start = row * this.wordsPerRow;
+      for (int word = 0; word < this.wordsPerRow; word++)
+         count += Long.bitCount(this.words[start + word]);
+      return count;
+   }//public int countBits(int row)
+
+   /**
+    * The dot product of one row and a row of weights
+    *    (the sum of the weights whose input is 1)
+    *
+    * @param row     the row of this matrix
+    * @param w       the weights
+    * @param offset  the index in w of the weight of input 0
+    * @return        ∑k inputs[row][k] * w[offset + k]
+    */
+   public double dot(int row, double[] w, int offset)
+   {
+      return Kernels.dot(this.words, row * this.wordsPerRow, this.numCols, w, offset);
+   }//public double dot(int row, double[] w, int offset)
+
+   /**
+    * Adds alpha times one row to a row of y
+    *    (alpha to every element whose input is 1)
+    *
+    * @param alpha   what to multiply the row by
+    * @param row     the row of this matrix
+    * @param y       the array to add to
+    * @param offset  the index in y of element 0
+    */
+   public void axpy(double alpha, int row, double[] y, int offset)
+   {
+      Kernels.axpy(alpha, this.words, row * this.wordsPerRow, this.numCols, y, offset);
+      return;
+   }//public void axpy(double alpha, int row, double[] y, int offset)
+
+   /**
+    * Tells whether this was packed from the given matrix
+    *
+    * @param matrix  the matrix
+    * @return        true if the rows of this are the rows of matrix
+    */
+   public boolean covers(double[][] matrix)
+   {
+      return this.dense != null && this.dense == matrix;
+   }//public boolean covers(double[][] matrix)
+
+   /**
+    * Finds how much memory the bits take
+    *
+    * @return  the number of bytes in the array of words
+    */
+   public long getNumBytes()
+   {
+      return 8L * this.words.length;
+   }//public long getNumBytes()
+
+   /**
+    * Getter for the private instance variable int numRows
+    *
+    * @return numRows the private instance variable
+    */
+   public int getNumRows()
+   {
+      return this.numRows;
+   }//public int getNumRows()
+
+   /**
+    * Getter for the private instance variable int numCols
+    *
+    * @return numCols the private instance variable
+    */
+   public int getNumCols()
+   {
+      return this.numCols;
+   }//public int getNumCols()
+}//public final class BitRows
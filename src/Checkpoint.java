@@ -0,0 +1,237 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * This class is one saved point in training: the weights, how many passes had
+ *    been made, the error at that point, and the state of the optimizer.
+ *
+ * A checkpoint file is little-endian:
+ *
+ *    offset   size   what
+ *     0       4      MAGIC, the bytes "XORC"
+ *     4       4      VERSION
+ *     8       8      the number of passes made
+ *    16       8      the error after the last pass
+ *    24       4      the number of doubles of optimizer state
+ *    28       4      CRC32 of the rest of the header (bytes 0 to 27) and
+ *                    everything after it
+ *    32              a whole model file (see ModelFile), saved in double
+ *                    the optimizer state, as doubles
+ *
+ * The bytes are all put together by snapshot(...) on the training thread
+ *    (just bulk copies of the arrays), so training can change the weights
+ *    again straight away while another thread writes them out (see Checkpointer).
+ */
+public class Checkpoint
+{
+   /*
+    * The first four bytes of every checkpoint file ("XORC" when read as text)
+    */
+   final static int MAGIC = 0x43524F58;
+
+   /*
+    * The version of the layout above
+    */
+   final static int VERSION = 2;
+
+   /*
+    * The number of bytes before the model file
+    */
+   final static int HEADER_BYTES = 32;
+
+   /*
+    * Where the checksum is in the header
+    */
+   final static int CRC_OFFSET = 28;
+
+   private long iteration;             //the number of passes made
+   private double error;               //the error after the last pass
+   private ModelFile model;            //the weights
+   private double[] optimizerState;    //whatever the optimizer keeps between passes
+
+   /**
+    * Constructor for the class Checkpoint
+    *
+    * @param myIteration         the number of passes made
+    * @param myError             the error after the last pass
+    * @param myModel             the weights
+    * @param myOptimizerState    whatever the optimizer keeps between passes
+    */
+   public Checkpoint(long myIteration, double myError, ModelFile myModel, double[] myOptimizerState)
+   {
+      this.iteration = myIteration;
+      this.error = myError;
+      this.model = myModel;
+      this.optimizerState = myOptimizerState;
+   }//public Checkpoint(long myIteration, double myError, ModelFile myModel, double[] myOptimizerState)
+
+   /**
+    * Copies everything into the bytes of a checkpoint file
+    *    The weights and the state can change as soon as this returns.
+    *
+    * @param iteration        the number of passes made
+    * @param error            the error after the last pass
+    * @param model            the weights and activation functions, in double
+    * @param optimizerState   whatever the optimizer keeps between passes
+    * @return                 the whole file, ready to write, with the checksum not yet filled in
+    */
+   public static ByteBuffer snapshot(long iteration, double error, ModelFile model, double[] optimizerState)
+   {
+      ByteBuffer buffer = ByteBuffer.allocate(Checkpoint.HEADER_BYTES + model.numBytes()
+            + 8 * optimizerState.length).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(Checkpoint.MAGIC);
+      buffer.putInt(Checkpoint.VERSION);
+      buffer.putLong(iteration);
+      buffer.putDouble(error);
+      buffer.putInt(optimizerState.length);
+      buffer.putInt(0);                                     //the checksum, filled in by write(...)
+      model.writeTo(buffer);
+      buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().put(optimizerState);
+      buffer.position(0);
+      return buffer;
+   }//public static ByteBuffer snapshot(...)
+
+   /**
+    * Fills in the checksum of a snapshot and writes it to a file
+    *    It is written to a temporary file first and then renamed, so the file
+    *    either has the whole checkpoint or does not exist.
+    *
+    * @param snapshot   what snapshot(...) returned
+    * @param file       where to write it
+    * @throws IOException  if it cannot be written
+    */
+   public static void write(ByteBuffer snapshot, File file) throws IOException
+   {
+      snapshot.putInt(Checkpoint.CRC_OFFSET, Checkpoint.checksum(snapshot));
+
+      File temporary = new File(file.getPath() + Checkpointer.TEMPORARY_SUFFIX);
+      FileOutputStream out = new FileOutputStream(temporary);
+      try
+      {
+         FileChannel channel = out.getChannel();
+         ByteBuffer bytes = snapshot.duplicate();
+         bytes.position(0);
+         while (bytes.hasRemaining())
+            channel.write(bytes);
+         channel.force(true);
+      }
+      finally
+      {
+         out.close();
+      }
+      if (!temporary.renameTo(file))
+      {
+         file.delete();
+         if (!temporary.renameTo(file))
+            throw new IOException("Could not rename " + temporary + " to " + file);
+      }
+      return;
+   }//public static void write(ByteBuffer snapshot, File file)
+
+   /**
+    * Reads a checkpoint file
+    *
+    * @param file    the file
+    * @return        the checkpoint
+    * @throws IOException  if the file cannot be read, is not a checkpoint, does
+    *                      not match its checksum, or is larger than one buffer
+    *                      can hold
+    */
+   public static Checkpoint read(File file) throws IOException
+   {
+      FileInputStream in = new FileInputStream(file);
+      ByteBuffer buffer;
+      try
+      {
+         FileChannel channel = in.getChannel();
+         if (channel.size() > Integer.MAX_VALUE)
+            throw new IOException(file + " is too large to read (" + channel.size() + " bytes)");
+         buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+         ModelFile.readFully(channel, buffer);
+         buffer.flip();
+      }
+      finally
+      {
+         in.close();
+      }
+      if (buffer.remaining() < Checkpoint.HEADER_BYTES || buffer.getInt(0) != Checkpoint.MAGIC)
+         throw new IOException(file + " is not a checkpoint");
+      if (buffer.getInt(4) != Checkpoint.VERSION)
+         throw new IOException(file + " is version " + buffer.getInt(4)
+               + " but only version " + Checkpoint.VERSION + " can be read");
+      if (Checkpoint.checksum(buffer) != buffer.getInt(Checkpoint.CRC_OFFSET))
+         throw new IOException(file + " is damaged (the checksum does not match)");
+
+      long iteration = buffer.getLong(8);
+      double error = buffer.getDouble(16);
+      int stateLength = buffer.getInt(24);
+      buffer.position(Checkpoint.HEADER_BYTES);
+      ModelFile model = ModelFile.readFrom(buffer, file);
+      if (stateLength < 0 || buffer.remaining() != 8L * stateLength)
+         throw new IOException(file + " has the wrong amount of optimizer state");
+      double[] state = new double[stateLength];
+      buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(state);
+      return new Checkpoint(iteration, error, model, state);
+   }//public static Checkpoint read(File file)
+
+   /**
+    * Works out the CRC32 of a whole checkpoint file but its checksum field
+    *
+    * @param buffer  the file, from the start of its backing array to its limit
+    * @return        the checksum
+    */
+   private static int checksum(ByteBuffer buffer)
+   {
+      CRC32 crc = new CRC32();
+      crc.update(buffer.array(), buffer.arrayOffset(), Checkpoint.CRC_OFFSET);
+      crc.update(buffer.array(), buffer.arrayOffset() + Checkpoint.HEADER_BYTES,
+                 buffer.limit() - Checkpoint.HEADER_BYTES);
+      return (int) crc.getValue();
+   }//private static int checksum(ByteBuffer buffer)
+
+   /**
+    * Getter for the private instance variable long iteration
+    *
+    * @return iteration the private instance variable
+    */
+   public long getIteration()
+   {
+      return this.iteration;
+   }//public long getIteration()
+
+   /**
+    * Getter for the private instance variable double error
+    *
+    * @return error the private instance variable
+    */
+   public double getError()
+   {
+      return this.error;
+   }//public double getError()
+
+   /**
+    * Getter for the private instance variable ModelFile model
+    *
+    * @return model the private instance variable
+    */
+   public ModelFile getModel()
+   {
+      return this.model;
+   }//public ModelFile getModel()
+
+   /**
+    * Getter for the private instance variable double[] optimizerState
+    *
+    * @return optimizerState the private instance variable
+    */
+   public double[] getOptimizerState()
+   {
+      return this.optimizerState;
+   }//public double[] getOptimizerState()
+}//public class Checkpoint
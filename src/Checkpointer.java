@@ -0,0 +1,339 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class saves checkpoints of training (see Checkpoint) every so many
+ *    passes or every so many seconds, without holding up training.
+ *
+ * isDue(...) is checked after every pass. When a checkpoint is due, save(...)
+ *    copies the weights and state into one buffer on the training thread (a
+ *    few bulk array copies) and a background thread writes the buffer out.
+ *    If the last checkpoint is still being written, this one is put off to a
+ *    later pass instead of waiting for it.
+ *
+ * The checkpoints go in one directory as checkpoint-<sequence>.bin, where the
+ *    sequence counts every checkpoint written to the directory, by this run
+ *    and the ones before it. So a run that starts counting passes from 0 again
+ *    still writes newer checkpoints than an older run left behind. Only the
+ *    newest CHECKPOINTS_KEPT are kept. latest(...) finds the newest one that
+ *    reads back correctly, so a checkpoint cut off by a crash is skipped.
+ */
+public class Checkpointer
+{
+   /*
+    * The number of checkpoint files kept in the directory
+    */
+   final static int CHECKPOINTS_KEPT = 3;
+
+   /*
+    * The start and end of the name of every checkpoint file
+    */
+   final static String PREFIX = "checkpoint-";
+   final static String SUFFIX = ".bin";
+
+   /*
+    * The end of the name of a checkpoint file that was not finished
+    */
+   final static String TEMPORARY_SUFFIX = ".tmp";
+
+   private File directory;             //where the checkpoints go
+   private long everyPasses;           //passes between checkpoints, 0 for never
+   private long everyNanos;            //time between checkpoints, 0 for never
+   private long lastIteration;         //the passes made at the last checkpoint
+   private long lastNanos;             //when the last checkpoint was taken
+   private long sequence;              //the number in the name of the next checkpoint file
+
+   private ExecutorService writer;     //the thread that writes the files
+   private Future<?> pending;          //the checkpoint being written, if any
+
+   /**
+    * Constructor for the class Checkpointer
+    *    Deletes any unfinished checkpoint files left in the directory.
+    *
+    * @param myDirectory      where the checkpoints go (made if it does not exist)
+    * @param myEveryPasses    passes between checkpoints, 0 for never
+    * @param myEverySeconds   seconds between checkpoints, 0 for never
+    * @param myIteration      the passes already made (when resuming)
+    */
+   public Checkpointer(File myDirectory, long myEveryPasses, long myEverySeconds, long myIteration)
+   {
+      this.directory = myDirectory;
+      this.directory.mkdirs();
+      this.everyPasses = myEveryPasses;
+      this.everyNanos = myEverySeconds * 1000000000L;
+      this.lastIteration = myIteration;
+      this.lastNanos = System.nanoTime();
+      Checkpointer.deleteTemporaries(this.directory);
+      File[] files = Checkpointer.listCheckpoints(this.directory);
+      this.sequence = files.length == 0 ? 0 : Checkpointer.sequenceOf(files[0]) + 1;
+      this.writer = Executors.newSingleThreadExecutor(new ThreadFactory()
+      {
+         public Thread newThread(Runnable task)
+         {
+            Thread thread = new Thread(task, "checkpoint writer");
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+   }//public Checkpointer(File myDirectory, long myEveryPasses, long myEverySeconds, long myIteration)
+
+   /**
+    * Tells whether a checkpoint is due and the last one is done being written
+    *
+    * @param iteration  the number of passes made
+    * @return           true if save(...) should be called now
+    */
+   public boolean isDue(long iteration)
+   {
+      boolean due = (this.everyPasses > 0 && iteration - this.lastIteration >= this.everyPasses)
+            || (this.everyNanos > 0 && System.nanoTime() - this.lastNanos >= this.everyNanos);
+      return due && (this.pending == null || this.pending.isDone());
+   }//public boolean isDue(long iteration)
+
+   /**
+    * Takes a checkpoint now, waiting for the last one to be written first
+    *
+    * @param iteration        the number of passes made
+    * @param error            the error after the last pass
+    * @param model            the weights and activation functions, in double
+    * @param optimizerState   whatever the optimizer keeps between passes
+    */
+   public void save(long iteration, double error, ModelFile model, double[] optimizerState)
+   {
+      this.waitForPending();
+      final ByteBuffer snapshot = Checkpoint.snapshot(iteration, error, model, optimizerState);
+      final File file = new File(this.directory, String.format("%s%012d%s",
+            Checkpointer.PREFIX, this.sequence++, Checkpointer.SUFFIX));
+      this.pending = this.writer.submit(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               Checkpoint.write(snapshot, file);
+               Checkpointer.this.deleteOld();
+            }
+            catch (IOException e)
+            {
+               e.printStackTrace();
+            }
+         }
+      });
+      this.lastIteration = iteration;
+      this.lastNanos = System.nanoTime();
+      return;
+   }//public void save(...)
+
+   /**
+    * Waits until the checkpoint being written (if any) is on disk
+    */
+   public void waitForPending()
+   {
+      if (this.pending == null)
+         return;
+      try
+      {
+         this.pending.get();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Interrupted while writing a checkpoint", e);
+      }
+      catch (ExecutionException e)
+      {
+         throw new IllegalStateException("Writing a checkpoint failed", e.getCause());
+      }
+      this.pending = null;
+      return;
+   }//public void waitForPending()
+
+   /**
+    * Waits for the last checkpoint to be written and stops the writing thread
+    *    The Checkpointer cannot be used after this.
+    */
+   public void finish()
+   {
+      this.waitForPending();
+      this.writer.shutdown();
+      return;
+   }//public void finish()
+
+   /**
+    * Finds the checkpoint files in a directory, newest first
+    *
+    * @param directory  the directory
+    * @return           the files (none if the directory does not exist)
+    */
+   private static File[] listCheckpoints(File directory)
+   {
+      String[] names = directory.list();
+      if (names == null)
+         return new File[0];
+      int count = 0;
+      File[] files = new File[names.length];
+      for (String name : names)
+         if (Checkpointer.sequenceOf(new File(directory, name)) >= 0)
+            files[count++] = new File(directory, name);
+      files = Arrays.copyOf(files, count);
+      Arrays.sort(files, new Comparator<File>()
+      {
+         public int compare(File a, File b)
+         {
+            return Long.compare(Checkpointer.sequenceOf(b), Checkpointer.sequenceOf(a));
+         }
+      });
+      return files;
+   }//private static File[] listCheckpoints(File directory)
+
+   /**
+    * Reads the sequence number out of the name of a checkpoint file
+    *
+    * @param file    the file
+    * @return        the sequence number, or -1 if the file is not a checkpoint
+    */
+   private static long sequenceOf(File file)
+   {
+      String name = file.getName();
+      if (!name.startsWith(Checkpointer.PREFIX) || !name.endsWith(Checkpointer.SUFFIX))
+         return -1;
+      try
+      {
+         return Long.parseLong(name.substring(Checkpointer.PREFIX.length(),
+                                              name.length() - Checkpointer.SUFFIX.length()));
+      }
+      catch (NumberFormatException e)
+      {
+         return -1;
+      }
+   }//private static long sequenceOf(File file)
+
+   /**
+    * Deletes all but the newest CHECKPOINTS_KEPT checkpoints
+    */
+   private void deleteOld()
+   {
+      File[] files = Checkpointer.listCheckpoints(this.directory);
+      for (int f = Checkpointer.CHECKPOINTS_KEPT; f < files.length; f++)
+         files[f].delete();
+      return;
+   }//private void deleteOld()
+
+   /**
+    * Deletes the checkpoint files in a directory that were never finished
+    *    (renamed from checkpoint-<sequence>.bin.tmp), since a crash while
+    *    writing one leaves it behind and nothing else would ever remove it
+    *
+    * @param directory  the directory
+    */
+   private static void deleteTemporaries(File directory)
+   {
+      String[] names = directory.list();
+      if (names == null)
+         return;
+      for (String name : names)
+         if (name.startsWith(Checkpointer.PREFIX)
+               && name.endsWith(Checkpointer.SUFFIX + Checkpointer.TEMPORARY_SUFFIX))
+            new File(directory, name).delete();
+      return;
+   }//private static void deleteTemporaries(File directory)
+
+   /**
+    * Finds the newest checkpoint in a directory that reads back correctly
+    *
+    * @param directory  the directory
+    * @return           the checkpoint, or null if there is none
+    */
+   public static Checkpoint latest(File directory)
+   {
+      return Checkpointer.latest(directory, -1, -1);
+   }//public static Checkpoint latest(File directory)
+
+   /**
+    * Finds the newest checkpoint in a directory that reads back correctly and
+    *    was made for a network with the given number of inputs and outputs
+    *    Checkpoints of other networks (say, from training on the images when
+    *    the patterns are loaded) are skipped.
+    *
+    * @param directory  the directory
+    * @param numInputs  the number of inputs, or -1 for any
+    * @param numOutputs the number of outputs, or -1 for any
+    * @return           the checkpoint, or null if there is none
+    */
+   public static Checkpoint latest(File directory, int numInputs, int numOutputs)
+   {
+      for (File file : Checkpointer.listCheckpoints(directory))
+      {
+         try
+         {
+            Checkpoint checkpoint = Checkpoint.read(file);
+            ModelFile model = checkpoint.getModel();
+            if ((numInputs < 0 || model.getNumInputs() == numInputs)
+                  && (numOutputs < 0 || model.getNumOutputs() == numOutputs))
+               return checkpoint;
+            System.out.println("Skipping " + file + ": it is for " + model.getNumInputs()
+                  + " inputs and " + model.getNumOutputs() + " outputs");
+         }
+         catch (IOException e)
+         {
+            System.out.println("Skipping " + file + ": " + e.getMessage());
+         }
+      }
+      return null;
+   }//public static Checkpoint latest(File directory, int numInputs, int numOutputs)
+
+   /**
+    * Checks that a run which counts passes from 0 again keeps its own
+    *    checkpoints over those an older run left in the directory, that
+    *    latest(...) resumes the newer run, and that an unfinished checkpoint
+    *    left by a crash is deleted (java Checkpointer)
+    *
+    * @param args    not used
+    * @throws IOException  if the temporary directory cannot be made
+    * @throws IllegalStateException  if any of the checks fails
+    */
+   public static void main(String[] args) throws IOException
+   {
+      File directory = Files.createTempDirectory("checkpoints").toFile();
+      ModelFile model = new ModelFile(new WeightMatrix(2, 2), new WeightMatrix(1, 2), false);
+
+      Checkpointer older = new Checkpointer(directory, 1, 0, 0);
+      for (long pass = 50000; pass <= 50003; pass++)
+         older.save(pass, 0.5, model, new double[0]);
+      older.finish();
+      File stale = new File(directory, String.format("%s%012d%s%s", Checkpointer.PREFIX, 4,
+            Checkpointer.SUFFIX, Checkpointer.TEMPORARY_SUFFIX));
+      stale.createNewFile();
+
+      Checkpointer newer = new Checkpointer(directory, 1, 0, 0);
+      boolean cleaned = !stale.exists();
+      for (long pass = 1; pass <= 2; pass++)
+         newer.save(pass, 0.25, model, new double[0]);
+      newer.finish();
+
+      File[] files = Checkpointer.listCheckpoints(directory);
+      Checkpoint resumed = Checkpointer.latest(directory);
+      boolean kept = files.length == Checkpointer.CHECKPOINTS_KEPT
+            && Checkpointer.sequenceOf(files[0]) == 5 && Checkpointer.sequenceOf(files[1]) == 4;
+      boolean resumes = resumed != null && resumed.getIteration() == 2;
+      System.out.println("The unfinished checkpoint was deleted:\t" + cleaned);
+      System.out.println("The newer run's checkpoints were kept:\t" + kept);
+      System.out.println("The newer run is resumed:\t" + resumes);
+
+      for (String name : directory.list())
+         new File(directory, name).delete();
+      directory.delete();
+      if (!cleaned || !kept || !resumes)
+         throw new IllegalStateException("The checkpoint self-check failed");
+      return;
+   }//public static void main(String[] args)
+}//public class Checkpointer
@@ -0,0 +1,532 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * This class keeps the decoded images of earlier runs on disk, so an image
+ *    that has not changed is not decoded again.
+ *
+ * Every image in the cache is keyed by its absolute path, and the cache keeps
+ *    the file's size, last-modified time, and the CRC32 of its bytes. When
+ *    load(...) is asked for a file:
+ *
+ *    1) same path, size, and time       - the row comes from the cache; the
+ *                                         file is not opened
+ *    2) same path, new size or time     - the file is hashed; if its bytes
+ *                                         are the same (say it was copied or
+ *                                         touched) the row still comes from
+ *                                         the cache and only the time is updated
+ *    3) anything else                   - the file is decoded (in parallel, with
+ *                                         an ImageLoader) and added to the cache
+ *
+ *    save() then writes the images asked for in this run, so images that are
+ *    gone from the directories drop out of the cache too. Nothing is written
+ *    if nothing changed.
+ *
+ * The file is little endian, and is read into memory in one go when it is
+ *    opened (it is not mapped, so nothing keeps it open afterwards and save()
+ *    can always replace it):
+ *
+ *    offset   size   field
+ *       0       4    MAGIC ("XORD")
+ *       4       4    VERSION
+ *       8       4    number of images
+ *      12       4    number of bytes in the index
+ *      16      12    zero
+ *      28       4    CRC32 of everything after the header
+ *      32            the index, one entry per image:
+ *                       int path length, the path in UTF-8, long size,
+ *                       long last-modified time, int CRC32 of the image file,
+ *                       int number of pels, int where its pels start
+ *                    then the pels of every image as bits, 64 to a long, in
+ *                       the layout of a row of BitRows (pel k is bit k % 64
+ *                       of long k / 64), since DibDump.mapBMPInto only ever
+ *                       gives 0 or 1
+ *
+ * A cache file that is damaged or from another version is ignored and
+ *    written again, since everything in it can be decoded again.
+ */
+public class DatasetCache
+{
+   final static int MAGIC = 0x44524F58;      //"XORD" in little endian
+   final static int VERSION = 2;
+   final static int HEADER_BYTES = 32;
+
+   private final static Charset UTF8 = Charset.forName("UTF-8");
+
+   private File file;                                 //the cache file
+   private HashMap<String, Entry> cached;             //the images in the file, by path
+   private LinkedHashMap<String, Entry> used;         //the images asked for in this run, by path
+   private boolean changed;                           //whether save() has anything new to write
+   private int numHits;                               //the images load(...) took from the cache
+   private int numMisses;                             //the images load(...) decoded
+
+   /**
+    * Constructor for the class DatasetCache
+    *    Reads the index of the cache file, if there is one
+    *
+    * @param myFile  the cache file (need not exist yet)
+    */
+   public DatasetCache(File myFile)
+   {
+      this.file = myFile;
+      this.cached = new HashMap<String, Entry>();
+      this.used = new LinkedHashMap<String, Entry>();
+      if (myFile.exists())
+      {
+         try
+         {
+            this.readIndex();
+         }
+         catch (IOException e)
+         {
+            System.out.println("Ignoring the image cache " + myFile + ": " + e.getMessage());
+            this.cached.clear();
+            this.changed = true;
+         }
+         catch (RuntimeException e)                         //a damaged index that slipped past the checks
+         {
+            System.out.println("Ignoring the image cache " + myFile + ": " + e);
+            this.cached.clear();
+            this.changed = true;
+         }
+      }
+   }//public DatasetCache(File myFile)
+
+   /**
+    * Reads the cache file, checks it, and reads every entry of the index
+    *    The number of images is outside the checksum, so every count and
+    *    offset is checked against the file before anything is made from it.
+    *
+    * @throws IOException  if the file cannot be read, is not a cache of this
+    *                      version, or is damaged
+    */
+   private void readIndex() throws IOException
+   {
+      FileInputStream in = new FileInputStream(this.file);
+      ByteBuffer map;
+      try
+      {
+         FileChannel channel = in.getChannel();
+         if (channel.size() > Integer.MAX_VALUE)
+            throw new IOException("too large to read (" + channel.size() + " bytes)");
+         map = ByteBuffer.allocate((int) channel.size());
+         ModelFile.readFully(channel, map);
+      }
+      finally
+      {
+         in.close();
+      }
+      map.order(ByteOrder.LITTLE_ENDIAN);
+      if (map.capacity() < DatasetCache.HEADER_BYTES || map.getInt(0) != DatasetCache.MAGIC)
+         throw new IOException("not an image cache");
+      if (map.getInt(4) != DatasetCache.VERSION)
+         throw new IOException("version " + map.getInt(4) + ", expected " + DatasetCache.VERSION);
+      if (map.getInt(28) != DatasetCache.checksum(map))
+         throw new IOException("damaged (the checksum does not match)");
+
+      int numEntries = map.getInt(8);
+      ByteBuffer index = map.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      index.position(DatasetCache.HEADER_BYTES);
+      if (numEntries < 0 || numEntries > index.remaining() / (4 + 8 + 8 + 4 + 4 + 4))
+         throw new IOException("damaged (" + numEntries + " images)");
+      for (int e = 0; e < numEntries; e++)                  //loops over the entries of the index
+      {
+         int pathLength = index.getInt();
+         if (pathLength < 0 || pathLength > index.remaining())
+            throw new IOException("damaged (a path of " + pathLength + " bytes)");
+         byte[] path = new byte[pathLength];
+         index.get(path);
+         Entry entry = new Entry(new String(path, DatasetCache.UTF8));
+         entry.size = index.getLong();
+         entry.lastModified = index.getLong();
+         entry.hash = index.getInt();
+         entry.numPels = index.getInt();
+         int start = index.getInt();
+         if (entry.numPels < 0 || start < DatasetCache.HEADER_BYTES
+               || (long) start + 8L * DatasetCache.numWords(entry.numPels) > map.capacity())
+            throw new IOException("damaged (" + entry.numPels + " pels at " + start + ")");
+         entry.bits = new long[DatasetCache.numWords(entry.numPels)];
+         ByteBuffer bits = map.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+         bits.position(start);
+         bits.asLongBuffer().get(entry.bits);
+         this.cached.put(entry.path, entry);
+      }
+      return;
+   }//private void readIndex()
+
+   /**
+    * Fills each row of inputs with its image, from the cache when the file has
+    *    not changed and by decoding it otherwise (see the class comment)
+    *    File m goes into inputs[m] in the layout of DibDump.flattenImageArray().
+    *
+    * @param paths   the bitmap files
+    * @param inputs  the rows to fill, [file][pel] (at least paths.length rows)
+    * @param loader  decodes the files that are not in the cache
+    * @throws IOException  if a file that is not in the cache cannot be read
+    */
+   public void load(String[] paths, double[][] inputs, ImageLoader loader) throws IOException
+   {
+      List<Entry> misses = new ArrayList<Entry>();
+      List<double[]> missRows = new ArrayList<double[]>();
+      for (int m = 0; m < paths.length; m++)                //loops over the files
+      {
+         File source = new File(paths[m]);
+         Entry entry = this.lookUp(source, inputs[m].length);
+         if (entry == null)
+         {
+            entry = DatasetCache.newEntry(source);
+            misses.add(entry);
+            missRows.add(inputs[m]);
+         }
+         else
+         {
+            for (int k = 0; k < entry.numPels; k++)
+               inputs[m][k] = (entry.bits[k >>> 6] >>> k) & 1;
+         }
+         this.used.put(entry.path, entry);
+      }//for (int m = 0; m < paths.length; m++)
+
+      String[] missPaths = new String[misses.size()];
+      for (int e = 0; e < missPaths.length; e++)
+         missPaths[e] = misses.get(e).path;
+      double[][] rows = missRows.toArray(new double[missPaths.length][]);
+      loader.load(missPaths, rows);
+      for (int e = 0; e < missPaths.length; e++)            //keeps the newly decoded rows for save()
+      {
+         Entry entry = misses.get(e);
+         entry.numPels = rows[e].length;
+         entry.bits = new long[DatasetCache.numWords(entry.numPels)];
+         for (int k = 0; k < entry.numPels; k++)
+            if (rows[e][k] != 0)
+               entry.bits[k >>> 6] |= 1L << k;
+      }
+
+      this.numHits += paths.length - missPaths.length;
+      this.numMisses += missPaths.length;
+      if (missPaths.length > 0)
+         this.changed = true;
+      return;
+   }//public void load(String[] paths, double[][] inputs, ImageLoader loader)
+
+   /**
+    * Same as load(String[], double[][], ImageLoader), into rows of floats
+    *    (for training in single precision without making the doubles)
+    *
+    * @param paths   the bitmap files
+    * @param inputs  the rows to fill, [file][pel] (at least paths.length rows)
+    * @param loader  decodes the files that are not in the cache
+    * @throws IOException  if a file that is not in the cache cannot be read
+    */
+   public void load(String[] paths, float[][] inputs, ImageLoader loader) throws IOException
+   {
+      List<Entry> misses = new ArrayList<Entry>();
+      List<float[]> missRows = new ArrayList<float[]>();
+      for (int m = 0; m < paths.length; m++)                //loops over the files
+      {
+         File source = new File(paths[m]);
+         Entry entry = this.lookUp(source, inputs[m].length);
+         if (entry == null)
+         {
+            entry = DatasetCache.newEntry(source);
+            misses.add(entry);
+            missRows.add(inputs[m]);
+         }
+         else
+         {
+            for (int k = 0; k < entry.numPels; k++)
+               inputs[m][k] = (entry.bits[k >>> 6] >>> k) & 1;
+         }
+         this.used.put(entry.path, entry);
+      }//for (int m = 0; m < paths.length; m++)
+
+      String[] missPaths = new String[misses.size()];
+      for (int e = 0; e < missPaths.length; e++)
+         missPaths[e] = misses.get(e).path;
+      float[][] rows = missRows.toArray(new float[missPaths.length][]);
+      loader.load(missPaths, rows);
+      for (int e = 0; e < missPaths.length; e++)            //keeps the newly decoded rows for save()
+      {
+         Entry entry = misses.get(e);
+         entry.numPels = rows[e].length;
+         entry.bits = new long[DatasetCache.numWords(entry.numPels)];
+         for (int k = 0; k < entry.numPels; k++)
+            if (rows[e][k] != 0)
+               entry.bits[k >>> 6] |= 1L << k;
+      }
+
+      this.numHits += paths.length - missPaths.length;
+      this.numMisses += missPaths.length;
+      if (missPaths.length > 0)
+         this.changed = true;
+      return;
+   }//public void load(String[] paths, float[][] inputs, ImageLoader loader)
+
+   /**
+    * Same as load(String[], double[][], ImageLoader), into rows of packed bits
+    *    File m goes into row m of bits. The files that are not in the cache
+    *    are decoded into BitRows of their own and then copied in, so no row
+    *    of doubles is ever made; the cache keeps the same words, so a row
+    *    from the cache is one copy.
+    *
+    * @param paths   the bitmap files
+    * @param bits    the rows to fill (at least paths.length rows)
+    * @param loader  decodes the files that are not in the cache
+    * @throws IOException  if a file that is not in the cache cannot be read
+    */
+   public void load(String[] paths, BitRows bits, ImageLoader loader) throws IOException
+   {
+      int numPels = bits.getNumCols();
+      List<Entry> misses = new ArrayList<Entry>();
+      List<Integer> missRows = new ArrayList<Integer>();
+      for (int m = 0; m < paths.length; m++)                //loops over the files
+      {
+         File source = new File(paths[m]);
+         Entry entry = this.lookUp(source, numPels);
+         if (entry == null)
+         {
+            entry = DatasetCache.newEntry(source);
+            misses.add(entry);
+            missRows.add(m);
+         }
+         else
+            bits.setRowWords(m, entry.bits);
+         this.used.put(entry.path, entry);
+      }//for (int m = 0; m < paths.length; m++)
+
+      String[] missPaths = new String[misses.size()];
+      for (int e = 0; e < missPaths.length; e++)
+         missPaths[e] = misses.get(e).path;
+      BitRows decoded = new BitRows(missPaths.length, numPels);
+      loader.load(missPaths, decoded);
+      for (int e = 0; e < missPaths.length; e++)            //copies the new rows in and keeps them for save()
+      {
+         Entry entry = misses.get(e);
+         entry.numPels = numPels;
+         entry.bits = decoded.getRowWords(e, new long[DatasetCache.numWords(numPels)]);
+         bits.setRowWords(missRows.get(e), entry.bits);
+      }
+
+      this.numHits += paths.length - missPaths.length;
+      this.numMisses += missPaths.length;
+      if (missPaths.length > 0)
+         this.changed = true;
+      return;
+   }//public void load(String[] paths, BitRows bits, ImageLoader loader)
+
+   /**
+    * Makes the entry of a file that has to be decoded, with its size, time,
+    *    and hash (its pels are filled in once it is decoded)
+    *
+    * @param source  the bitmap file
+    * @return        the entry
+    * @throws IOException  if the file cannot be read
+    */
+   private static Entry newEntry(File source) throws IOException
+   {
+      Entry entry = new Entry(source.getAbsolutePath());
+      entry.size = source.length();
+      entry.lastModified = source.lastModified();
+      entry.hash = DatasetCache.hash(source);
+      return entry;
+   }//private static Entry newEntry(File source)
+
+   /**
+    * Finds the cached entry of a file, if its bytes have not changed
+    *
+    * @param source   the bitmap file
+    * @param numPels  the length of the row it goes in
+    * @return         the entry, or null if the file has to be decoded
+    */
+   private Entry lookUp(File source, int numPels) throws IOException
+   {
+      Entry entry = this.cached.get(source.getAbsolutePath());
+      if (entry == null || entry.numPels != numPels)
+         return null;
+      long size = source.length();
+      long lastModified = source.lastModified();
+      if (entry.size == size && entry.lastModified == lastModified)
+         return entry;
+      if (entry.size != size || entry.hash != DatasetCache.hash(source))
+         return null;
+      entry.lastModified = lastModified;                    //same bytes, so only the time moved
+      this.changed = true;
+      return entry;
+   }//private Entry lookUp(File source, int numPels)
+
+   /**
+    * Writes the images asked for since this cache was opened, if anything
+    *    changed. The file is written to a temporary file and then renamed.
+    *
+    * @throws IOException  if the file cannot be written
+    */
+   public void save() throws IOException
+   {
+      if (!this.changed && this.used.size() == this.cached.size())
+         return;
+      long indexBytes = 0;
+      long pelBytes = 0;
+      List<byte[]> paths = new ArrayList<byte[]>(this.used.size());
+      for (Entry entry : this.used.values())
+      {
+         byte[] path = entry.path.getBytes(DatasetCache.UTF8);
+         paths.add(path);
+         indexBytes += 4 + path.length + 8 + 8 + 4 + 4 + 4;
+         pelBytes += 8L * entry.bits.length;
+      }
+      if (DatasetCache.HEADER_BYTES + indexBytes + pelBytes > Integer.MAX_VALUE)
+         throw new IOException("The image cache would be too large for one file ("
+               + (DatasetCache.HEADER_BYTES + indexBytes + pelBytes) + " bytes)");
+      ByteBuffer out = ByteBuffer.allocate((int) (DatasetCache.HEADER_BYTES + indexBytes + pelBytes));
+      out.order(ByteOrder.LITTLE_ENDIAN);
+      out.putInt(DatasetCache.MAGIC).putInt(DatasetCache.VERSION).putInt(this.used.size()).putInt((int) indexBytes);
+      out.position(DatasetCache.HEADER_BYTES);
+      int start = (int) (DatasetCache.HEADER_BYTES + indexBytes);
+      int e = 0;
+      for (Entry entry : this.used.values())                //writes the index
+      {
+         out.putInt(paths.get(e).length).put(paths.get(e));
+         out.putLong(entry.size).putLong(entry.lastModified).putInt(entry.hash);
+         out.putInt(entry.numPels).putInt(start);
+         start += 8 * entry.bits.length;
+         e++;
+      }
+      for (Entry entry : this.used.values())                //writes the pels
+         for (long word : entry.bits)
+            out.putLong(word);
+      out.putInt(28, DatasetCache.checksum(out));
+
+      File temporary = new File(this.file.getPath() + ".tmp");
+      FileOutputStream stream = new FileOutputStream(temporary);
+      try
+      {
+         out.position(0);
+         FileChannel channel = stream.getChannel();
+         while (out.hasRemaining())
+            channel.write(out);
+      }
+      finally
+      {
+         stream.close();
+      }
+      if (!temporary.renameTo(this.file))
+      {
+         this.file.delete();
+         if (!temporary.renameTo(this.file))
+            throw new IOException("Could not rename " + temporary + " to " + this.file);
+      }
+      this.cached = new HashMap<String, Entry>(this.used);
+      this.changed = false;
+      return;
+   }//public void save()
+
+   /**
+    * The number of longs that hold the bits of an image
+    *
+    * @param numPels the number of pels in the image
+    * @return        the number of longs
+    */
+   private static int numWords(int numPels)
+   {
+      return (numPels + 63) >>> 6;
+   }//private static int numWords(int numPels)
+
+   /**
+    * The CRC32 of everything after the header of a cache file
+    *
+    * @param buffer  the whole file
+    * @return        the checksum
+    */
+   private static int checksum(ByteBuffer buffer)
+   {
+      ByteBuffer body = buffer.duplicate();
+      body.position(DatasetCache.HEADER_BYTES);
+      byte[] chunk = new byte[64 * 1024];
+      CRC32 crc = new CRC32();
+      while (body.hasRemaining())
+      {
+         int length = Math.min(chunk.length, body.remaining());
+         body.get(chunk, 0, length);
+         crc.update(chunk, 0, length);
+      }
+      return (int) crc.getValue();
+   }//private static int checksum(ByteBuffer buffer)
+
+   /**
+    * The CRC32 of the bytes of a file
+    *
+    * @param source  the file
+    * @return        the checksum
+    * @throws IOException  if the file cannot be read
+    */
+   private static int hash(File source) throws IOException
+   {
+      byte[] chunk = new byte[64 * 1024];
+      CRC32 crc = new CRC32();
+      FileInputStream in = new FileInputStream(source);
+      try
+      {
+         int length;
+         while ((length = in.read(chunk)) > 0)
+            crc.update(chunk, 0, length);
+      }
+      finally
+      {
+         in.close();
+      }
+      return (int) crc.getValue();
+   }//private static int hash(File source)
+
+   /**
+    * Getter for the private instance variable int numHits
+    *
+    * @return numHits the private instance variable
+    */
+   public int getNumHits()
+   {
+      return this.numHits;
+   }//public int getNumHits()
+
+   /**
+    * Getter for the private instance variable int numMisses
+    *
+    * @return numMisses the private instance variable
+    */
+   public int getNumMisses()
+   {
+      return this.numMisses;
+   }//public int getNumMisses()
+
+   /**
+    * One image in the cache
+    */
+   private static class Entry
+   {
+      private String path;             //the absolute path of the bitmap
+      private long size;               //its size in bytes
+      private long lastModified;       //its last-modified time
+      private int hash;                //the CRC32 of its bytes
+      private int numPels;             //the length of its decoded row
+      private long[] bits;             //its decoded row, one bit per pel (see BitRows)
+
+      /**
+       * Constructor for the class Entry
+       *
+       * @param myPath  the absolute path of the bitmap
+       */
+      private Entry(String myPath)
+      {
+         this.path = myPath;
+      }//private Entry(String myPath)
+   }//private static class Entry
+}//public class DatasetCache
@@ -33,6 +33,9 @@
  * Rev: 11/12/14  Added the topDownDIB flag to deal with negative biHeight values which means image is stored rightside up. All loops depending on the
  *                biHeight value were modified to accomodate both inverted (normal) and top down images. The image is stored in the normal manner
  *                regardless of how it was read in.
+ * Rev: 10/17/26  The header fields, imageArray and topDownDIB are no longer static. Each DibDump is its own decoder, so several can
+ *                read different files on different threads at once (see ImageLoader).
+ *                colorToGrayscale() no longer makes an RgbQuad per pel; the luminance is computed in integers (grayLevel()).
  *
  * Classes in the file:
  *  RgbQuad
@@ -46,14 +49,15 @@
  *  RgbQuad pelToRGB(int pel)
  *  int     rgbToPel(int red, int green, int blue)
  *  int     colorToGrayscale(int pel)
+ *  int     grayLevel(int pel)
  *  void    main(String[] args)
  *  
  * There is a lot of cutting and pasting from various
  * documents dealing with bitmaps and I have not taken the
  * time to clean up the formatting in the comments. The C syntax is
  * included for reference. The types are declared in windows.h. The C
- * structures and data arrays are predefined static so that they don't
- * ever fall out of scope.
+ * structures and data arrays are fields of each DibDump, so they stay
+ * in scope for as long as the DibDump that read the file.
  *
  * I have not "javafied" this file. Much of it needs to be broken out into
  * various specialty methods. These modifications are left as an exercise
@@ -101,6 +105,9 @@
  *   When lossy casts are done (e.g. int to byte) the conversion is done modulo the length of the smaller type.
  */
 import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 /*
  * A member-variable-only class for holding the RGBQUAD C structure elements.
@@ -116,30 +123,30 @@ final class RgbQuad
 public class DibDump
    {
 // BITMAPFILEHEADER
-   static int bmpFileHeader_bfType;          // WORD
-   static int bmpFileHeader_bfSize;          // DWORD
-   static int bmpFileHeader_bfReserved1;     // WORD
-   static int bmpFileHeader_bfReserved2;     // WORD
-   static int bmpFileHeader_bfOffBits;       // DWORD
+   int bmpFileHeader_bfType;          // WORD
+   int bmpFileHeader_bfSize;          // DWORD
+   int bmpFileHeader_bfReserved1;     // WORD
+   int bmpFileHeader_bfReserved2;     // WORD
+   int bmpFileHeader_bfOffBits;       // DWORD
 // BITMAPINFOHEADER
-   static int bmpInfoHeader_biSize;          // DWORD
-   static int bmpInfoHeader_biWidth;         // LONG
-   static int bmpInfoHeader_biHeight;        // LONG
-   static int bmpInfoHeader_biPlanes;        // WORD
-   static int bmpInfoHeader_biBitCount;      // WORD
-   static int bmpInfoHeader_biCompression;   // DWORD
-   static int bmpInfoHeader_biSizeImage;     // DWORD
-   static int bmpInfoHeader_biXPelsPerMeter; // LONG
-   static int bmpInfoHeader_biYPelsPerMeter; // LONG
-   static int bmpInfoHeader_biClrUsed;       // DWORD
-   static int bmpInfoHeader_biClrImportant;  // DWORD
+   int bmpInfoHeader_biSize;          // DWORD
+   int bmpInfoHeader_biWidth;         // LONG
+   int bmpInfoHeader_biHeight;        // LONG
+   int bmpInfoHeader_biPlanes;        // WORD
+   int bmpInfoHeader_biBitCount;      // WORD
+   int bmpInfoHeader_biCompression;   // DWORD
+   int bmpInfoHeader_biSizeImage;     // DWORD
+   int bmpInfoHeader_biXPelsPerMeter; // LONG
+   int bmpInfoHeader_biYPelsPerMeter; // LONG
+   int bmpInfoHeader_biClrUsed;       // DWORD
+   int bmpInfoHeader_biClrImportant;  // DWORD
 // The true color pels
-   static int[][] imageArray;
+   int[][] imageArray;
 
 // if bmpInfoHeader_biHeight is negative then the image is a top down DIB. This flag is used to
 // identify it as such. Note that when the image is saved, it will be written out in the usual
 // inverted format with a positive bmpInfoHeader_biHeight value.
-   static boolean topDownDIB = false;
+   boolean topDownDIB = false;
 /*
 * Methods to go between little and big endian integer formats.
 */
@@ -152,6 +159,46 @@ public class DibDump
       {
       return  ((v << 8) & 0xFF00) | ((v >> 8) & 0x00FF);
       }
+
+/*
+* Methods to read little endian WORD and DWORD values straight out of the bytes of the file.
+*/
+   public int wordAt(byte[] bytes, int offset)
+      {
+      return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+      }
+
+   public int dwordAt(byte[] bytes, int offset)
+      {
+      return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8)
+           | ((bytes[offset + 2] & 0xFF) << 16) | ((bytes[offset + 3] & 0xFF) << 24);
+      }
+
+/*
+ * Method readFile reads the whole file into one byte array with as few read calls as the operating system allows.
+ * Everything in readInBMP is then decoded out of the array, so no pel costs a call into the stream.
+ */
+   public byte[] readFile(String inFileName) throws IOException
+      {
+      File file = new File(inFileName);
+      byte[] bytes = new byte[(int) file.length()];
+      FileInputStream fstream = new FileInputStream(file);
+      try
+         {
+         int count = 0;
+         while (count < bytes.length)
+            {
+            int n = fstream.read(bytes, count, bytes.length - count);
+            if (n < 0) throw new EOFException(inFileName + " ended after " + count + " bytes");
+            count += n;
+            }
+         }
+      finally
+         {
+         fstream.close();
+         }
+      return bytes;
+      }
 /*
  * Method pelToRGBQ accepts an integer (32 bit) picture element and returns the red, green and blue colors.
  * Unlike pelToRGB, this method also extracts the most significant byte and populates the reserved element of RgbQuad.
@@ -207,16 +254,37 @@ public class DibDump
  /*
  * Y = 0.3RED+0.59GREEN+0.11Blue
  * The colorToGrayscale method takes a color picture element (pel) and returns the gray scale pel.
+ * Nothing is allocated; see grayLevel(int pel).
  */
    public int colorToGrayscale(int pel)
       {
-      RgbQuad rgb = pelToRGB(pel);
-    
-      int lum = (int)Math.round(0.3 * (double)rgb.red + 0.589 * (double)rgb.green + 0.11 * (double)rgb.blue);
+      int lum = grayLevel(pel);
 
       return rgbToPel(lum, lum, lum);
       }
 
+ /*
+ * The grayLevel method returns the luminance (0 to 255) of a color pel with integer math only:
+ *    Y = (300 * RED + 589 * GREEN + 110 * BLUE + 500) / 1000
+ * The channels are shifted straight out of the packed int, so no RgbQuad is made. This is the rounded value of
+ * 0.3RED+0.589GREEN+0.11BLUE. Rounding those doubles gave one level less for the 3,392 of the 16.7 million colors
+ * where the sum is exactly halfway (0.3 and 0.11 are not exact in double).
+ */
+   public int grayLevel(int pel)
+      {
+      return (300 * ((pel >> 16) & 0xFF) + 589 * ((pel >> 8) & 0xFF) + 110 * (pel & 0xFF) + 500) / 1000;
+      }
+
+/*
+ * GRAY_INPUTS[Y] is the input flattenImageArrayGray() gives a pel of luminance Y: the gray pel (Y, Y, Y) / 10000000.
+ */
+   final static double[] GRAY_INPUTS = new double[256];
+   static
+      {
+      for (int lum = 0; lum < GRAY_INPUTS.length; lum++)
+         GRAY_INPUTS[lum] = (double) ((lum << 16) | (lum << 8) | lum) / 10000000;
+      }
+
    /*
     * Flattens the image array
     */
@@ -245,12 +313,252 @@ public class DibDump
       {
          for (int col = 0; col < numCols; col++)           //loops through the columns of each row in imageArray
          {
-               inputs[row * numCols + col] = (double) this.colorToGrayscale(imageArray[row][col]) / 10000000;
+               inputs[row * numCols + col] = GRAY_INPUTS[this.grayLevel(imageArray[row][col])];
          }//for (int col = 0; col < imageArray[0].length; col++)
       }//for (int outer = 0; outer < imageArray.length; outer++)
       return inputs;
    }
 
+   /*
+    * Maps a bitmap file into memory, read only, with little endian byte order
+    *    The mapping stays valid after the file is closed.
+    */
+   private MappedByteBuffer mapFile(String inStr) throws IOException
+   {
+      RandomAccessFile file = new RandomAccessFile(inStr, "r");
+      try
+      {
+         MappedByteBuffer map = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+         map.order(ByteOrder.LITTLE_ENDIAN);
+         return map;
+      }
+      finally
+      {
+         file.close();
+      }
+   }//private MappedByteBuffer mapFile(String inStr)
+
+   /*
+    * Finds the number of pels in a bitmap (biWidth * |biHeight|) from its header alone
+    *    This is the length of the row mapBMPInto(...) fills.
+    *    None of the header fields are changed.
+    */
+   public int readPelCount(String inStr) throws IOException
+   {
+      MappedByteBuffer map = this.mapFile(inStr);
+      return map.getInt(18) * Math.abs(map.getInt(22));
+   }//public int readPelCount(String inStr)
+
+   /*
+    * Decodes a bitmap straight into one row of network inputs, in the same layout
+    *    and with the same values as flattenImageArray(): the top scan line first,
+    *    1 where the pel is > 0 and 0 elsewhere.
+    *
+    * The file is memory mapped and the pels are found with bfOffBits (see pixelStart),
+    *    so there is no imageArray, no flattened array, and no copy into the caller's array.
+    *    None of the header fields are changed and nothing is printed.
+    *
+    * inputs[offset] to inputs[offset + biWidth * |biHeight| - 1] are written.
+    *    Throws IOException, before anything is written, if they do not fit in inputs.
+    * Returns the number of pels written.
+    */
+   public int mapBMPInto(String inStr, double[] inputs, int offset) throws IOException
+   {
+      MappedByteBuffer map = this.mapFile(inStr);
+      int width = map.getInt(18);
+      int height = Math.abs(map.getInt(22));
+      this.checkFits(inStr, width, height, inputs.length - offset);
+      int[] palette = this.readPalette(map);
+      int[] pels = new int[width];                          //one scan line, reused for every line
+      for (int row = 0; row < height; row++)                //loops through the scan lines in the file
+      {
+         int start = offset + this.decodeRow(map, row, palette, pels) * width;
+         for (int col = 0; col < width; col++)
+            inputs[start + col] = (pels[col] > 0) ? 1 : 0;
+      }
+      return width * height;
+   }//public int mapBMPInto(String inStr, double[] inputs, int offset)
+
+   /*
+    * Same as mapBMPInto(String, double[], int), for a row of float inputs
+    */
+   public int mapBMPInto(String inStr, float[] inputs, int offset) throws IOException
+   {
+      MappedByteBuffer map = this.mapFile(inStr);
+      int width = map.getInt(18);
+      int height = Math.abs(map.getInt(22));
+      this.checkFits(inStr, width, height, inputs.length - offset);
+      int[] palette = this.readPalette(map);
+      int[] pels = new int[width];                          //one scan line, reused for every line
+      for (int row = 0; row < height; row++)                //loops through the scan lines in the file
+      {
+         int start = offset + this.decodeRow(map, row, palette, pels) * width;
+         for (int col = 0; col < width; col++)
+            inputs[start + col] = (pels[col] > 0) ? 1 : 0;
+      }
+      return width * height;
+   }//public int mapBMPInto(String inStr, float[] inputs, int offset)
+
+   /*
+    * Decodes a bitmap straight into one row of network inputs, in the same layout
+    *    and with the same values as flattenImageArrayGray()
+    *
+    * Nothing is allocated per pel. The color table of a palette image is turned
+    *    into gray levels once, so each of its pels is one table lookup; the pels
+    *    of true color images are converted with grayLevel(int) as they are decoded.
+    *    Returns the number of pels written.
+    */
+   public int mapBMPGrayInto(String inStr, double[] inputs, int offset) throws IOException
+   {
+      MappedByteBuffer map = this.mapFile(inStr);
+      int width = map.getInt(18);
+      int height = Math.abs(map.getInt(22));
+      this.checkFits(inStr, width, height, inputs.length - offset);
+      boolean hasPalette = (map.getShort(28) & 0xFFFF) <= 8;
+      int[] palette = this.readPalette(map);
+      for (int c = 0; c < palette.length; c++)              //the color table becomes a table of gray levels
+         palette[c] = this.grayLevel(palette[c]);
+      int[] pels = new int[width];                          //one scan line, reused for every line
+      for (int row = 0; row < height; row++)                //loops through the scan lines in the file
+      {
+         int start = offset + this.decodeRow(map, row, palette, pels) * width;
+         if (hasPalette)
+            for (int col = 0; col < width; col++)
+               inputs[start + col] = GRAY_INPUTS[pels[col]];
+         else
+            for (int col = 0; col < width; col++)
+               inputs[start + col] = GRAY_INPUTS[this.grayLevel(pels[col])];
+      }
+      return width * height;
+   }//public int mapBMPGrayInto(String inStr, double[] inputs, int offset)
+
+   /*
+    * Same as mapBMPInto(String, double[], int), into one row of packed bits
+    *    Bit k of the row is 1 where input k would be 1. The row is cleared
+    *    first, so an image smaller than the row leaves the rest of it 0, as
+    *    in a row of doubles.
+    */
+   public int mapBMPInto(String inStr, BitRows rows, int row) throws IOException
+   {
+      MappedByteBuffer map = this.mapFile(inStr);
+      int width = map.getInt(18);
+      int height = Math.abs(map.getInt(22));
+      this.checkFits(inStr, width, height, rows.getNumCols());
+      int[] palette = this.readPalette(map);
+      int[] pels = new int[width];                          //one scan line, reused for every line
+      rows.clearRow(row);
+      for (int line = 0; line < height; line++)             //loops through the scan lines in the file
+      {
+         int start = this.decodeRow(map, line, palette, pels) * width;
+         for (int col = 0; col < width; col++)
+            if (pels[col] > 0)
+               rows.set(row, start + col);
+      }
+      return width * height;
+   }//public int mapBMPInto(String inStr, BitRows rows, int row)
+
+   /*
+    * Makes sure the pels of a width x height image fit in the room a caller has for them
+    *    Throws IOException if they do not, or if the width or height is negative.
+    */
+   private void checkFits(String inStr, int width, int height, int room) throws IOException
+   {
+      if (width < 0 || height < 0 || (long) width * height > room)
+         throw new IOException(inStr + " has " + (long) width * height + " pels, but there is room for "
+                               + Math.max(room, 0));
+      return;
+   }//private void checkFits(String inStr, int width, int height, int room)
+
+   /*
+    * Reads the color table of a mapped bitmap (see readInBMP for where it is and how big it is)
+    *    Returns an empty table for true color images.
+    */
+   private int[] readPalette(MappedByteBuffer map)
+   {
+      int numberOfColors = this.colorCount(map);
+      int[] palette = new int[Math.max(numberOfColors, 256)];
+      int p = 14 + map.getInt(14);                          //the color table follows the BITMAPINFOHEADER
+      for (int c = 0; c < numberOfColors; c++)
+      {
+         palette[c] = map.getInt(p + 4 * c) & 0x00FFFFFF;   //blue, green, red; the reserved byte is dropped
+      }
+      return palette;
+   }//private int[] readPalette(MappedByteBuffer map)
+
+   /*
+    * Finds the number of entries in the color table of a mapped bitmap (0 for true color)
+    */
+   private int colorCount(MappedByteBuffer map)
+   {
+      int bitCount = map.getShort(28) & 0xFFFF;
+      int numberOfColors = (bitCount <= 8) ? 1 << bitCount : 0;
+      int clrUsed = map.getInt(46);
+      if (clrUsed > 0) numberOfColors = clrUsed;
+      return numberOfColors;
+   }//private int colorCount(MappedByteBuffer map)
+
+   /*
+    * Finds where the pels start: at bfOffBits, or right after the color table
+    *    for older files that leave bfOffBits at zero
+    *    readInBMP and decodeRow both use this, so the two decode a file the same way.
+    */
+   private int pixelStart(int bfOffBits, int biSize, int numberOfColors)
+   {
+      return (bfOffBits > 0) ? bfOffBits : 14 + biSize + 4 * numberOfColors;
+   }//private int pixelStart(int bfOffBits, int biSize, int numberOfColors)
+
+   /*
+    * Decodes one scan line of a mapped bitmap into true color pels, the same way readInBMP does
+    *    row is the scan line's place in the file; the return value is its row in the image
+    *    (they differ for bottom-up bitmaps, which are most of them).
+    */
+   private int decodeRow(MappedByteBuffer map, int row, int[] palette, int[] pels)
+   {
+      int width = map.getInt(18);
+      int biHeight = map.getInt(22);
+      int height = Math.abs(biHeight);
+      int bitCount = map.getShort(28) & 0xFFFF;
+      int stride = ((width * bitCount + 31) / 32) * 4;
+      int p = this.pixelStart(map.getInt(10), map.getInt(14), this.colorCount(map)) + row * stride;
+      switch (bitCount)
+      {
+      case 1:
+      case 2:
+      case 4:
+         int perByte = 8 / bitCount;
+         int mask = (1 << bitCount) - 1;
+         for (int col = 0; col < width; col++)              //the most significant bits are the left-most pel
+         {
+            int byteVal = map.get(p + col / perByte) & 0xFF;
+            pels[col] = palette[(byteVal >> ((perByte - 1 - col % perByte) * bitCount)) & mask];
+         }
+         break;
+      case 8:
+         for (int col = 0; col < width; col++)
+            pels[col] = palette[map.get(p + col) & 0xFF];
+         break;
+      case 16:
+         for (int col = 0; col < width; col++)              //5 bits each of red, green, and blue
+         {
+            int pel = map.getShort(p + 2 * col) & 0xFFFF;
+            pels[col] = (((pel >> 10) & 0x1F) << 16) | (((pel >> 5) & 0x1F) << 8) | (pel & 0x1F);
+         }
+         break;
+      case 24:
+         for (int col = 0; col < width; col++)              //blue, green, red
+            pels[col] = (map.get(p + 3 * col) & 0xFF) | ((map.get(p + 3 * col + 1) & 0xFF) << 8)
+                      | ((map.get(p + 3 * col + 2) & 0xFF) << 16);
+         break;
+      case 32:
+         for (int col = 0; col < width; col++)              //blue, green, red, reserved
+            pels[col] = map.getInt(p + 4 * col);
+         break;
+      default:
+         throw new IllegalArgumentException("Cannot decode " + bitCount + " bits per pel");
+      }//switch (bitCount)
+      return (biHeight < 0) ? row : height - 1 - row;
+   }//private int decodeRow(MappedByteBuffer map, int row, int[] palette, int[] pels)
+
    
 /*
  *
@@ -263,7 +571,9 @@ public class DibDump
       int i, j, k;
       int numberOfColors;
       int pel;
-      int iByteVal, iColumn, iBytesPerRow, iPelsPerRow, iTrailingBits, iDeadBytes;
+      int iByteVal, iColumn, iBytesPerRow, iPelsPerRow, iTrailingBits;
+      int iRowStride;                    // the number of bytes in each scan line, including the dead bytes
+      int p;                             // where the next byte to decode is in bytes[]
 // RBGQUAD
       int rgbQuad_rgbBlue;
       int rgbQuad_rgbGreen;
@@ -276,11 +586,8 @@ public class DibDump
 
       try // lots of things can go wrong when doing file i/o
          {
-         // Open the file that is the first command line parameter
-         FileInputStream fstream = new FileInputStream(inFileName);
-
-         // Convert our input stream to a DataInputStream
-         DataInputStream in = new DataInputStream(fstream);
+         // Read the whole file that is the first command line parameter in one go
+         byte[] bytes = this.readFile(inFileName);
 
 /*
  *  Read in BITMAPFILEHEADER
@@ -305,12 +612,12 @@ bfOffBits
     Specifies the offset, in bytes, from the BITMAPFILEHEADER structure to the bitmap bits
 */
 
-// Read and Convert to big endian
-         bmpFileHeader_bfType      = this.swapShort(in.readUnsignedShort());    // WORD
-         bmpFileHeader_bfSize      = this.swapInt(in.readInt());                // DWORD
-         bmpFileHeader_bfReserved1 = this.swapShort(in.readUnsignedShort());    // WORD
-         bmpFileHeader_bfReserved2 = this.swapShort(in.readUnsignedShort());    // WORD
-         bmpFileHeader_bfOffBits   = this.swapInt(in.readInt());                // DWORD
+// Read the little endian values
+         bmpFileHeader_bfType      = this.wordAt(bytes, 0);     // WORD
+         bmpFileHeader_bfSize      = this.dwordAt(bytes, 2);    // DWORD
+         bmpFileHeader_bfReserved1 = this.wordAt(bytes, 6);     // WORD
+         bmpFileHeader_bfReserved2 = this.wordAt(bytes, 8);     // WORD
+         bmpFileHeader_bfOffBits   = this.dwordAt(bytes, 10);   // DWORD
 
          System.out.printf("bfType=%2X bfSize=%d bfReserved1=%h bfReserved2=%h bfOffBits=%d\n",
                            bmpFileHeader_bfType,
@@ -415,18 +722,18 @@ An application should use the information stored in the biSize member to locate
 pColor = ((LPSTR)pBitmapInfo + (WORD)(pBitmapInfo->bmiHeader.biSize));
 */
 
-// Read and convert to big endian
-         bmpInfoHeader_biSize          = this.swapInt(in.readInt());              // DWORD
-         bmpInfoHeader_biWidth         = this.swapInt(in.readInt());              // LONG
-         bmpInfoHeader_biHeight        = this.swapInt(in.readInt());              // LONG
-         bmpInfoHeader_biPlanes        = this.swapShort(in.readUnsignedShort());  // WORD
-         bmpInfoHeader_biBitCount      = this.swapShort(in.readUnsignedShort());  // WORD
-         bmpInfoHeader_biCompression   = this.swapInt(in.readInt());              // DWORD
-         bmpInfoHeader_biSizeImage     = this.swapInt(in.readInt());              // DWORD
-         bmpInfoHeader_biXPelsPerMeter = this.swapInt(in.readInt());              // LONG
-         bmpInfoHeader_biYPelsPerMeter = this.swapInt(in.readInt());              // LONG
-         bmpInfoHeader_biClrUsed       = this.swapInt(in.readInt());              // DWORD
-         bmpInfoHeader_biClrImportant  = this.swapInt(in.readInt());              // DWORD
+// Read the little endian values
+         bmpInfoHeader_biSize          = this.dwordAt(bytes, 14);   // DWORD
+         bmpInfoHeader_biWidth         = this.dwordAt(bytes, 18);   // LONG
+         bmpInfoHeader_biHeight        = this.dwordAt(bytes, 22);   // LONG
+         bmpInfoHeader_biPlanes        = this.wordAt(bytes, 26);    // WORD
+         bmpInfoHeader_biBitCount      = this.wordAt(bytes, 28);    // WORD
+         bmpInfoHeader_biCompression   = this.dwordAt(bytes, 30);   // DWORD
+         bmpInfoHeader_biSizeImage     = this.dwordAt(bytes, 34);   // DWORD
+         bmpInfoHeader_biXPelsPerMeter = this.dwordAt(bytes, 38);   // LONG
+         bmpInfoHeader_biYPelsPerMeter = this.dwordAt(bytes, 42);   // LONG
+         bmpInfoHeader_biClrUsed       = this.dwordAt(bytes, 46);   // DWORD
+         bmpInfoHeader_biClrImportant  = this.dwordAt(bytes, 50);   // DWORD
 
          System.out.printf("biSize=%d\nbiWidth=%d\nbiHeight=%d\nbiPlanes=%d\nbiBitCount=%d\nbiCompression=%d\nbiSizeImage=%d\nbiXPelsPerMeter=%d\nbiYPelsPerMeter=%d\nbiClrUsed=%d\nbiClrImportant=%d\n",
                     bmpInfoHeader_biSize,
@@ -446,9 +753,10 @@ pColor = ((LPSTR)pBitmapInfo + (WORD)(pBitmapInfo->bmiHeader.biSize));
 // Since we use the height to crate arrays, it cannot have a negative a value. If the height field is
 // less than zero, then make it positive and set the topDownDIB flag to TRUE so we know that the image is
 // stored on disc upsidedown (which means it is actually rightside up).
-        if (bmpInfoHeader_biHeight < 0)
+// The flag is set for every file, so a top down image does not make the next image read upside down.
+        topDownDIB = bmpInfoHeader_biHeight < 0;
+        if (topDownDIB)
             {
-            topDownDIB = true;
             bmpInfoHeader_biHeight = -bmpInfoHeader_biHeight;
             }
 /*
@@ -492,13 +800,14 @@ typedef RGBQUAD FAR* LPRGBQUAD;
 *     If the bitmap is a packed bitmap (a bitmap in which the bitmap array immediately follows the BITMAPINFO header and is referenced by a single pointer), the biClrUsed member must be either zero or the actual size of the color table.
 */
          if (bmpInfoHeader_biClrUsed > 0) numberOfColors = bmpInfoHeader_biClrUsed;
-               
+
+         p = 14 + bmpInfoHeader_biSize;       // the color table follows the BITMAPINFOHEADER
          for (i = 0; i < numberOfColors; ++i) // Read in the color table (or not if numberOfColors is zero)
             {
-            rgbQuad_rgbBlue      = in.readUnsignedByte(); // lowest byte in the color
-            rgbQuad_rgbGreen     = in.readUnsignedByte();
-            rgbQuad_rgbRed       = in.readUnsignedByte(); // highest byte in the color
-            rgbQuad_rgbReserved  = in.readUnsignedByte();
+            rgbQuad_rgbBlue      = bytes[p++] & 0xFF; // lowest byte in the color
+            rgbQuad_rgbGreen     = bytes[p++] & 0xFF;
+            rgbQuad_rgbRed       = bytes[p++] & 0xFF; // highest byte in the color
+            rgbQuad_rgbReserved  = bytes[p++] & 0xFF;
 
             // Build the color from the RGB values. Since we declared the rgbQuad values to be int, we can shift and then OR the values
             // to build up the color. Since we are reading one byte at a time, there are no "endian" issues.
@@ -507,6 +816,13 @@ typedef RGBQUAD FAR* LPRGBQUAD;
 // System.out.printf("DEBUG: Color Table = %d, %06X\n", i, colorPallet[i]);
             } // for (i = 0; i < numberOfColors; ++i)
 
+// The pels start at bfOffBits. Older files that leave it at zero have the pels right after the color table.
+         int pixelStart = this.pixelStart(bmpFileHeader_bfOffBits, bmpInfoHeader_biSize, numberOfColors);
+         iRowStride = ((bmpInfoHeader_biWidth * bmpInfoHeader_biBitCount + 31) / 32) * 4;
+         if (pixelStart + (long) iRowStride * bmpInfoHeader_biHeight > bytes.length)
+            throw new EOFException(inFileName + " is too short for a " + bmpInfoHeader_biWidth + " x "
+                                   + bmpInfoHeader_biHeight + " image");
+
 /*
  * Now for the fun part. We need to read in the rest of the bit map, but how we interpret the values depends on the color depth.
  *
@@ -519,6 +835,9 @@ typedef RGBQUAD FAR* LPRGBQUAD;
  *
  * The BMP image is stored from bottom to top, meaning that the first scan line is the last scan line in the image.
  *
+ * Every scan line starts at pixelStart + row * iRowStride in bytes[], so the dead bytes at the end of a line are
+ * skipped by starting the next line there instead of being read one at a time.
+ *
  * The rest is the bitmap. Use the height and width information to read it in. And as I mentioned before....
  * In the 24-bit format, each pixel in the image is represented by a series of three bytes of RGB stored as BRG.
  * For ALL image types each scan line is padded to an even 4-byte boundary.
@@ -542,17 +861,14 @@ typedef RGBQUAD FAR* LPRGBQUAD;
                iBytesPerRow = bmpInfoHeader_biWidth / 8;
                iTrailingBits = bmpInfoHeader_biWidth % 8;
 
-               iDeadBytes = iBytesPerRow;
-               if (iTrailingBits > 0) ++iDeadBytes;
-               iDeadBytes = (4 - iDeadBytes % 4) % 4;
-
                for (int row = 0; row < bmpInfoHeader_biHeight; ++row) // read over the rows
                   {
                   if (topDownDIB) i = row; else i = bmpInfoHeader_biHeight - 1 - row;
+                  p = pixelStart + row * iRowStride;
                   
                   for (j = 0; j < iBytesPerRow; ++j)
                      {
-                     iByteVal = in.readUnsignedByte();
+                     iByteVal = bytes[p++] & 0xFF;
 
                      for (k = 0; k < 8; ++k)     // Get 8 pels from the one byte
                         {
@@ -563,7 +879,7 @@ typedef RGBQUAD FAR* LPRGBQUAD;
                      }
                   if (iTrailingBits > 0) // pick up the trailing bits for images that are not mod 8 columns wide
                      {
-                     iByteVal = in.readUnsignedByte();
+                     iByteVal = bytes[p++] & 0xFF;
 
                      for (k = 0; k < iTrailingBits; ++k)
                         {
@@ -573,7 +889,6 @@ typedef RGBQUAD FAR* LPRGBQUAD;
                         }
                      }
 
-                  for (j = 0; j < iDeadBytes; ++j) in.readUnsignedByte(); // Now read in the "dead bytes" to pad to a 4 byte boundary
                   }
                break;
             case 2: // 4 colors, Each byte is 4 pels (2 bits each),  Should work, not tested.
@@ -586,17 +901,14 @@ typedef RGBQUAD FAR* LPRGBQUAD;
                iBytesPerRow = bmpInfoHeader_biWidth / 4;
                iTrailingBits = bmpInfoHeader_biWidth % 4; // 0, 1, 2 or 3
 
-               iDeadBytes = iBytesPerRow;
-               if (iTrailingBits > 0) ++iDeadBytes;
-               iDeadBytes = (4 - iDeadBytes % 4) % 4;
-
                for (int row = 0; row < bmpInfoHeader_biHeight; ++row) // read over the rows
                   {
                   if (topDownDIB) i = row; else i = bmpInfoHeader_biHeight - 1 - row;
+                  p = pixelStart + row * iRowStride;
 
                   for (j = 0; j < iBytesPerRow; ++j)
                      {
-                     iByteVal = in.readUnsignedByte();
+                     iByteVal = bytes[p++] & 0xFF;
 
                      for (k = 0; k < 4; ++k) // Get 4 pels from one byte
                         {
@@ -607,7 +919,7 @@ typedef RGBQUAD FAR* LPRGBQUAD;
                      }
                   if (iTrailingBits > 0) // pick up the trailing nibble for images that are not mod 2 columns wide
                      {
-                     iByteVal = in.readUnsignedByte();
+                     iByteVal = bytes[p++] & 0xFF;
 
                      for (k = 0; k < iTrailingBits; ++k)
                         {
@@ -616,32 +928,28 @@ typedef RGBQUAD FAR* LPRGBQUAD;
                         imageArray[i][iColumn] = pel;
                         }
                      }
-                  for (j = 0; j < iDeadBytes; ++j) in.readUnsignedByte(); // Now read in the "dead bytes" to pad to a 4 byte boundary
                   }
                break;
             case 4: // 16 colors, Each byte is two pels. Works
 /*
 * Each byte read in is 2 columns, so we need to break them out. We also have to deal with the case
 * where the image width is not an integer multiple of 2, in which case we will
-* have one nibble from part of the remaining byte. We then read in the dead bytes so that each
-* scan line is a multiple of 4 bytes. Each color is a nibble (4 bits) which is masked with 0x0F.
+* have one nibble from part of the remaining byte. The dead bytes that pad each
+* scan line to a multiple of 4 bytes are skipped. Each color is a nibble (4 bits) which is masked with 0x0F.
 * The screen ordering of the pels is High-Nibble Low-Nibble, so the most significant element is first in the array of pels.
 */
                iPelsPerRow   = bmpInfoHeader_biWidth;
                iBytesPerRow  = iPelsPerRow / 2;
                iTrailingBits = iPelsPerRow % 2;  // Will either be 0 or 1
 
-               iDeadBytes = iBytesPerRow;
-               if (iTrailingBits > 0) ++iDeadBytes;
-               iDeadBytes = (4 - iDeadBytes % 4) % 4;
-
                for (int row = 0; row < bmpInfoHeader_biHeight; ++row) // read over the rows
                   {
                   if (topDownDIB) i = row; else i = bmpInfoHeader_biHeight - 1 - row;
+                  p = pixelStart + row * iRowStride;
 
                   for (j = 0; j < iBytesPerRow; ++j)
                      {
-                     iByteVal = in.readUnsignedByte();
+                     iByteVal = bytes[p++] & 0xFF;
 
                      for (k = 0; k < 2; ++k) // Two pels per byte
                         {
@@ -653,49 +961,48 @@ typedef RGBQUAD FAR* LPRGBQUAD;
 
                   if (iTrailingBits > 0) // pick up the trailing nibble for images that are not mod 2 columns wide
                      {
-                     iByteVal = in.readUnsignedByte();
+                     iByteVal = bytes[p++] & 0xFF;
 
                      iColumn = iBytesPerRow * 2;
                      pel = colorPallet[(iByteVal >> 4) & 0x0F]; // The High nibble is the last remaining pel
                      imageArray[i][iColumn] = pel;
                      }
-                  for (j = 0; j < iDeadBytes; ++j) in.readUnsignedByte(); // Now read in the "dead bytes" to pad to a 4 byte boundary
                   } // for (i = bmpInfoHeader_biHeight - 1; i >= 0; --i)
                break;
             case 8: // 1 byte, 1 pel, Works
 /*
-* Each byte read in is 1 column. We then read in the dead bytes so that each scan line is a multiple of 4 bytes.
+* Each byte read in is 1 column. The dead bytes that pad each scan line to a multiple of 4 bytes are skipped.
 */
                iPelsPerRow = bmpInfoHeader_biWidth;
-               iDeadBytes = (4 - iPelsPerRow % 4) % 4;
                for (int row = 0; row < bmpInfoHeader_biHeight; ++row) // read over the rows
                   {
                   if (topDownDIB) i = row; else i = bmpInfoHeader_biHeight - 1 - row;
+                  p = pixelStart + row * iRowStride;
 
                   for (j = 0; j < iPelsPerRow; ++j)         // j is now just the column counter
                      {
-                     iByteVal = in.readUnsignedByte();
+                     iByteVal = bytes[p++] & 0xFF;
                      pel = colorPallet[iByteVal];
                      imageArray[i][j] = pel;
                      }
 
-                  for (j = 0; j < iDeadBytes; ++j) in.readUnsignedByte(); // Now read in the "dead bytes" to pad to a 4 byte boundary
                   }
                break;
             case 16: // Should work, not tested.
 /*
 * Each two bytes read in is 1 column. Each color is 5 bits in the 2 byte word value, so we shift 5 bits and then mask them
-* off with 0x1F which is %11111 in binary. We then read in the dead bytes so that each scan line is a multiple of 4 bytes.
+* off with 0x1F which is %11111 in binary. The dead bytes that pad each scan line to a multiple of 4 bytes are skipped.
 */
                iPelsPerRow = bmpInfoHeader_biWidth;
-               iDeadBytes = (4 - iPelsPerRow % 4) % 4;
                for (int row = 0; row < bmpInfoHeader_biHeight; ++row) // read over the rows
                   {
                   if (topDownDIB) i = row; else i = bmpInfoHeader_biHeight - 1 - row;
+                  p = pixelStart + row * iRowStride;
 
                   for (j = 0; j < iPelsPerRow; ++j)         // j is now just the column counter
                      {
-                     pel = this.swapShort(in.readUnsignedShort()); // Need to deal with little endian values
+                     pel = this.wordAt(bytes, p); // Need to deal with little endian values
+                     p += 2;
                      rgbQuad_rgbBlue      =  pel        & 0x1F;
                      rgbQuad_rgbGreen     = (pel >> 5)  & 0x1F;   
                      rgbQuad_rgbRed       = (pel >> 10) & 0x1F;
@@ -703,7 +1010,6 @@ typedef RGBQUAD FAR* LPRGBQUAD;
                      imageArray[i][j] = pel;
                      }
 
-                  for (j = 0; j < iDeadBytes; ++j) in.readUnsignedByte(); // Now read in the "dead bytes" to pad to a 4 byte boundary
                   } // for (i = bmpInfoHeader_biHeight - 1; i >= 0; --i)
                break;
             case 24: // Works
@@ -711,21 +1017,20 @@ typedef RGBQUAD FAR* LPRGBQUAD;
 * Each three bytes read in is 1 column. Each scan line is padded to by a multiple of 4 bytes.
 */
                iPelsPerRow = bmpInfoHeader_biWidth;
-               iDeadBytes = (4 - (iPelsPerRow * 3) % 4) % 4;
 
                for (int row = 0; row < bmpInfoHeader_biHeight; ++row) // read over the rows
                   {
                   if (topDownDIB) i = row; else i = bmpInfoHeader_biHeight - 1 - row;
+                  p = pixelStart + row * iRowStride;
 
                   for (j = 0; j < iPelsPerRow; ++j)         // j is now just the column counter
                      {
-                     rgbQuad_rgbBlue      = in.readUnsignedByte();
-                     rgbQuad_rgbGreen     = in.readUnsignedByte();
-                     rgbQuad_rgbRed       = in.readUnsignedByte();
+                     rgbQuad_rgbBlue      = bytes[p++] & 0xFF;
+                     rgbQuad_rgbGreen     = bytes[p++] & 0xFF;
+                     rgbQuad_rgbRed       = bytes[p++] & 0xFF;
                      pel = (rgbQuad_rgbRed << 16) | (rgbQuad_rgbGreen << 8) | rgbQuad_rgbBlue;
                      imageArray[i][j] = pel;
                      }
-                  for (j = 0; j < iDeadBytes; ++j) in.readUnsignedByte(); // Now read in the "dead bytes" to pad to a 4 byte boundary
                   }
                break;
             case 32: // Works
@@ -736,13 +1041,14 @@ typedef RGBQUAD FAR* LPRGBQUAD;
                for (int row = 0; row < bmpInfoHeader_biHeight; ++row) // read over the rows
                   {
                   if (topDownDIB) i = row; else i = bmpInfoHeader_biHeight - 1 - row;
+                  p = pixelStart + row * iRowStride;
 
                   for (j = 0; j < iPelsPerRow; ++j)         // j is now just the column counter
                      {
-                     rgbQuad_rgbBlue      = in.readUnsignedByte();
-                     rgbQuad_rgbGreen     = in.readUnsignedByte();
-                     rgbQuad_rgbRed       = in.readUnsignedByte();
-                     rgbQuad_rgbReserved  = in.readUnsignedByte();
+                     rgbQuad_rgbBlue      = bytes[p++] & 0xFF;
+                     rgbQuad_rgbGreen     = bytes[p++] & 0xFF;
+                     rgbQuad_rgbRed       = bytes[p++] & 0xFF;
+                     rgbQuad_rgbReserved  = bytes[p++] & 0xFF;
                      pel =  (rgbQuad_rgbReserved << 24) |(rgbQuad_rgbRed << 16) | (rgbQuad_rgbGreen << 8) | rgbQuad_rgbBlue;
                      imageArray[i][j] = pel;
                      }
@@ -753,8 +1059,6 @@ typedef RGBQUAD FAR* LPRGBQUAD;
 
             } // switch (bmpInfoHeader_biBitCount)
 
-         in.close();
-         fstream.close();
          } // try
       catch (Exception e)
          {
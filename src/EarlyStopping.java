@@ -0,0 +1,176 @@
+/**
+ * This class decides when training should stop before it gets to OKAY_ERROR
+ *    or MAX_COUNT, because carrying on would not help.
+ *
+ * It stops training for any of three reasons:
+ *
+ *    stalled     the best error has not gone down by minImprovement (a
+ *                fraction of it) in stallPasses passes
+ *    diverged    the error is not a number or infinite, or it is more than
+ *                divergenceFactor times the best error and worse than the
+ *                error of the first pass
+ *    overfit     the error on the test models (the validation error) has not
+ *                gone below its best for patience checks in a row, so the
+ *                network is learning the training models and not the rest
+ *
+ * afterPass(...) is called after every pass with the error of that pass, and
+ *    afterValidation(...) after each time the validation error is found.
+ *    Each returns why training should stop, or null to carry on.
+ *    isBestValidation() tells whether the last validation error was the best
+ *    so far, so the weights can be kept and put back when training stops.
+ *
+ * A stall or a divergence is seen from the training error alone; overfitting
+ *    needs test models with targets.
+ */
+public class EarlyStopping
+{
+   private int stallPasses;            //passes the best error can go without improving, 0 for forever
+   private double minImprovement;      //the fraction of the best error that counts as improving
+   private double divergenceFactor;    //how many times the best error counts as diverging, 0 for never
+   private int patience;               //checks the validation error can go without a new best, 0 for forever
+
+   private double firstError;          //the error of the first pass seen
+   private double bestError;           //the best error that counted as improving
+   private int bestPass;               //the pass of that error
+   private double bestValidation;      //the best validation error
+   private int bestValidationPass;     //the pass of that error
+   private int checksSinceBest;        //validation checks since the best one
+   private boolean started;            //whether a pass has been seen
+   private boolean stalled;            //whether the last reason to stop was a stall
+   private boolean diverged;           //whether the last reason to stop was a divergence
+
+   /**
+    * Constructor for the class EarlyStopping
+    *
+    * @param myStallPasses       passes the best error can go without improving, 0 for forever
+    * @param myMinImprovement    the fraction of the best error that counts as improving
+    * @param myDivergenceFactor  how many times the best error counts as diverging, 0 for never
+    * @param myPatience          validation checks without a new best before stopping, 0 for never
+    */
+   public EarlyStopping(int myStallPasses, double myMinImprovement, double myDivergenceFactor, int myPatience)
+   {
+      this.stallPasses = myStallPasses;
+      this.minImprovement = myMinImprovement;
+      this.divergenceFactor = myDivergenceFactor;
+      this.patience = myPatience;
+      this.bestValidation = Double.POSITIVE_INFINITY;
+      this.bestValidationPass = -1;
+   }//public EarlyStopping(int myStallPasses, double myMinImprovement, double myDivergenceFactor, int myPatience)
+
+   /**
+    * Looks at the error of one more pass
+    *
+    * @param pass    the number of passes made
+    * @param error   the error of the last pass
+    * @return        why training should stop, or null to carry on
+    */
+   public String afterPass(int pass, double error)
+   {
+      if (Double.isNaN(error) || Double.isInfinite(error))
+      {
+         this.diverged = true;
+         return "diverged, the error is " + error;
+      }
+      if (!this.started)
+      {
+         this.started = true;
+         this.firstError = error;
+         this.bestError = error;
+         this.bestPass = pass;
+         return null;
+      }
+      if (this.divergenceFactor > 0 && error > this.divergenceFactor * this.bestError && error > this.firstError)
+      {
+         this.diverged = true;
+         return "diverged, the error " + error + " is more than " + this.divergenceFactor
+                + " times the best, " + this.bestError;
+      }
+      if (error < this.bestError * (1 - this.minImprovement))
+      {
+         this.bestError = error;
+         this.bestPass = pass;
+      }
+      else if (this.stallPasses > 0 && pass - this.bestPass >= this.stallPasses)
+      {
+         this.stalled = true;
+         return "stalled, the error has not gone below " + this.bestError * (1 - this.minImprovement)
+                + " since pass " + this.bestPass;
+      }
+      return null;
+   }//public String afterPass(int pass, double error)
+
+   /**
+    * Looks at one more validation error
+    *
+    * @param pass        the number of passes made
+    * @param validation  the error on the test models
+    * @return            why training should stop, or null to carry on
+    */
+   public String afterValidation(int pass, double validation)
+   {
+      if (validation < this.bestValidation)
+      {
+         this.bestValidation = validation;
+         this.bestValidationPass = pass;
+         this.checksSinceBest = 0;
+         return null;
+      }
+      this.checksSinceBest++;
+      if (this.patience > 0 && this.checksSinceBest >= this.patience)
+         return "overfit, the validation error has not gone below " + this.bestValidation
+                + " since pass " + this.bestValidationPass;
+      return null;
+   }//public String afterValidation(int pass, double validation)
+
+   /**
+    * Tells whether training was stopped because it stalled, when the weights
+    *    are as good as they have been and there is nothing to put back
+    *
+    * @return  true if afterPass(...) gave a stall as the reason to stop
+    */
+   public boolean isStalled()
+   {
+      return this.stalled;
+   }//public boolean isStalled()
+
+   /**
+    * Tells whether training was stopped because it diverged, when the weights
+    *    are worse than they were (or not numbers at all) and should be put back
+    *
+    * @return  true if afterPass(...) gave a divergence as the reason to stop
+    */
+   public boolean isDiverged()
+   {
+      return this.diverged;
+   }//public boolean isDiverged()
+
+   /**
+    * Tells whether the last validation error given was the best so far
+    *
+    * @return  true if it was
+    */
+   public boolean isBestValidation()
+   {
+      return this.bestValidationPass >= 0 && this.checksSinceBest == 0;
+   }//public boolean isBestValidation()
+
+   /**
+    * Getter for the private instance variable double bestValidation
+    *
+    * @return bestValidation the private instance variable
+    */
+   public double getBestValidation()
+   {
+      return this.bestValidation;
+   }//public double getBestValidation()
+
+   /**
+    * Getter for the private instance variable int bestValidationPass
+    *
+    * @return bestValidationPass the private instance variable (-1 before the first check)
+    */
+   public int getBestValidationPass()
+   {
+      return this.bestValidationPass;
+   }//public int getBestValidationPass()
+}//public class EarlyStopping
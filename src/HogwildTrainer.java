@@ -0,0 +1,187 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class trains the network on several threads at once with no locks
+ *    ("Hogwild" training).
+ *
+ * Every thread takes the next model from a shared counter, runs the forward
+ *    and backward pass with its own pair of layers, and changes the shared
+ *    weights straight away, exactly as online training does on one thread.
+ *    Nothing stops two threads from changing the same weight at the same time;
+ *    when that happens one of the two changes may be lost. The inputs from
+ *    DibDump.flattenImageArray() are mostly 0, and a weight whose input is 0 is
+ *    never written (see Layer.updateWeights), so this is rare and training
+ *    still converges.
+ *
+ * The weights are plain double arrays written with plain stores. A thread may
+ *    read a weight a little before or after another thread changes it, which
+ *    is the same as reading it one model earlier or later.
+ *
+ * One call to evaluateAndImproveNetwork(lambda) goes over every model once.
+ */
+public class HogwildTrainer
+{
+   private double[][] inputs;          //the training inputs, [model][node]
+   private double[][] T;               //the training targets, [model][node]
+
+   private ExecutorService pool;       //runs the workers
+   private List<Worker> workers;       //one per thread
+   private AtomicInteger nextModel;    //the next model a worker should take
+
+   /**
+    * Constructor for the class HogwildTrainer
+    *    The weights, inputs, and targets are shared, not copied
+    *
+    * @param weightskj     the weights between input and hidden layer
+    * @param weightsji     the weights between hidden and output layer
+    * @param myInputs      the training inputs, [model][node]
+    * @param myT           the training targets, [model][node]
+    * @param numThreads    the number of threads to use
+    */
+   public HogwildTrainer(WeightMatrix weightskj, WeightMatrix weightsji,
+                         double[][] myInputs, double[][] myT, int numThreads)
+   {
+      this.inputs = myInputs;
+      this.T = myT;
+      this.nextModel = new AtomicInteger();
+
+      int threads = Math.max(1, numThreads);
+      this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory()
+      {
+         public Thread newThread(Runnable task)
+         {
+            Thread thread = new Thread(task, "hogwild trainer");
+            thread.setDaemon(true);                        //lets the program end without shutdown()
+            return thread;
+         }
+      });
+      this.workers = new ArrayList<Worker>();
+      InputRows inputRows = Layer.chooseInputRows(myInputs);
+      for (int t = 0; t < threads; t++)
+         this.workers.add(new Worker(weightskj, weightsji, inputRows));
+   }//public HogwildTrainer(...)
+
+   /**
+    * Goes over every model once on all the threads, changing the weights after
+    *    every model
+    *
+    * @param lambda  the learning factor
+    * @return        double the error of the network (1/2 ∑ (Tmi - Fmi)^2),
+    *                each model measured just before its own change
+    */
+   public double evaluateAndImproveNetwork(double lambda)
+   {
+      this.nextModel.set(0);
+      for (Worker worker : this.workers)
+         worker.lambda = lambda;
+
+      double error = 0;
+      try
+      {
+         List<Future<Double>> results = this.pool.invokeAll(this.workers);
+         for (Future<Double> result : results)
+            error += result.get();
+      }//try
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Interrupted while training", e);
+      }
+      catch (ExecutionException e)
+      {
+         throw new IllegalStateException("A training thread failed", e.getCause());
+      }
+      return error / 2;
+   }//public double evaluateAndImproveNetwork(double lambda)
+
+   /**
+    * Chooses the activation function of each layer of every worker
+    *    (see Layer.setActivation)
+    *
+    * @param hidden  the activation function of the hidden layer
+    * @param output  the activation function of the output layer
+    */
+   public void setActivations(Activation hidden, Activation output)
+   {
+      for (Worker worker : this.workers)
+      {
+         worker.hiddenLayer.setActivation(hidden);
+         worker.outputLayer.setActivation(output);
+      }
+      return;
+   }//public void setActivations(Activation hidden, Activation output)
+
+   /**
+    * Getter for the number of threads in use
+    *
+    * @return  the number of workers
+    */
+   public int getNumThreads()
+   {
+      return this.workers.size();
+   }//public int getNumThreads()
+
+   /**
+    * Stops the threads of the pool. The trainer cannot be used after this.
+    */
+   public void shutdown()
+   {
+      this.pool.shutdown();
+      return;
+   }//public void shutdown()
+
+   /**
+    * The scratch space of one thread
+    */
+   private class Worker implements Callable<Double>
+   {
+      private Layer hiddenLayer;       //this worker's own view of weightskj
+      private Layer outputLayer;       //this worker's own view of weightsji
+      private double lambda;           //the learning factor of this pass
+
+      /**
+       * Constructor for the class Worker
+       *
+       * @param weightskj      the shared weights between input and hidden layer
+       * @param weightsji      the shared weights between hidden and output layer
+       * @param inputRows      the inputs as sparse or packed rows (null to keep them dense)
+       */
+      private Worker(WeightMatrix weightskj, WeightMatrix weightsji, InputRows inputRows)
+      {
+         this.hiddenLayer = new Layer(weightskj);
+         this.outputLayer = new Layer(weightsji);
+         this.hiddenLayer.setInputRows(inputRows);
+      }//private Worker(WeightMatrix weightskj, WeightMatrix weightsji, InputRows inputRows)
+
+      /**
+       * Takes models until there are none left, training on each one
+       *
+       * @return  ∑ (Tmi - Fmi)^2 over the models this worker took
+       */
+      public Double call()
+      {
+         double[][] inputs = HogwildTrainer.this.inputs;
+         double[][] T = HogwildTrainer.this.T;
+         double error = 0;
+         int model = HogwildTrainer.this.nextModel.getAndIncrement();
+         while (model < inputs.length)
+         {
+            this.outputLayer.forward(this.hiddenLayer.forward(inputs, model, 1)[0]);
+            error += this.outputLayer.outputDeltas(T, model, 1);
+            this.hiddenLayer.propagateDeltas(this.outputLayer);
+            this.outputLayer.updateWeights(this.lambda);
+            this.hiddenLayer.updateWeights(this.lambda);
+            model = HogwildTrainer.this.nextModel.getAndIncrement();
+         }
+         return error;
+      }//public Double call()
+   }//private class Worker
+}//public class HogwildTrainer
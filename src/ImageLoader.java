@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class decodes many bitmaps at once on a pool of threads, each one
+ *    straight into its own row of a matrix of inputs (doubles, floats, or BitRows) the
+ *    caller has already made (see DibDump.mapBMPInto).
+ *
+ * The files are split into one run of neighboring files per thread, and each
+ *    thread decodes its run with its own DibDump. No two threads write the
+ *    same row, so nothing is locked. Decoding a file is mostly waiting on the
+ *    disk the first time it is read, so it is worth using more threads than
+ *    cores when the files are not yet in the page cache.
+ *
+ * After each load, getFilesPerSecond() tells how fast it went.
+ */
+public class ImageLoader
+{
+   private ExecutorService pool;       //the threads that decode the files
+   private int numThreads;             //the number of threads in the pool
+
+   private int numFiles;               //the number of files the last load decoded
+   private long nanos;                 //how long the last load took
+
+   /**
+    * Constructor for the class ImageLoader
+    *
+    * @param myNumThreads  the number of threads to decode with
+    */
+   public ImageLoader(int myNumThreads)
+   {
+      if (myNumThreads < 1)
+         throw new IllegalArgumentException("An ImageLoader needs at least one thread, not " + myNumThreads);
+      this.numThreads = myNumThreads;
+      this.pool = Executors.newFixedThreadPool(myNumThreads, new ThreadFactory()
+      {
+         public Thread newThread(Runnable task)
+         {
+            Thread thread = new Thread(task, "image loader");
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+   }//public ImageLoader(int myNumThreads)
+
+   /**
+    * Decodes every file into its row of inputs and waits until all are done
+    *    File m goes into inputs[m], starting at column 0, in the layout of
+    *    DibDump.flattenImageArray(). The rows must already be long enough.
+    *
+    * @param paths   the bitmap files
+    * @param inputs  the rows to decode into, [file][pel] (at least paths.length rows)
+    * @throws IOException  if any file cannot be read (the first such error)
+    */
+   public void load(String[] paths, double[][] inputs) throws IOException
+   {
+      if (inputs.length < paths.length)
+         throw new IllegalArgumentException(paths.length + " files do not fit in " + inputs.length + " rows");
+      this.load(paths, inputs, null, null);
+      return;
+   }//public void load(String[] paths, double[][] inputs)
+
+   /**
+    * Same as load(String[], double[][]), into rows of floats
+    *    (see DibDump.mapBMPInto(String, float[], int)), for training in
+    *    single precision without ever making the doubles
+    *
+    * @param paths   the bitmap files
+    * @param inputs  the rows to decode into, [file][pel] (at least paths.length rows)
+    * @throws IOException  if any file cannot be read (the first such error)
+    */
+   public void load(String[] paths, float[][] inputs) throws IOException
+   {
+      if (inputs.length < paths.length)
+         throw new IllegalArgumentException(paths.length + " files do not fit in " + inputs.length + " rows");
+      this.load(paths, null, inputs, null);
+      return;
+   }//public void load(String[] paths, float[][] inputs)
+
+   /**
+    * Decodes every file into its row of packed bits and waits until all are done
+    *    File m goes into row m of bits (see DibDump.mapBMPInto(String, BitRows, int)),
+    *    so the images never take the memory of doubles.
+    *
+    * @param paths   the bitmap files
+    * @param bits    the rows to decode into (at least paths.length rows)
+    * @throws IOException  if any file cannot be read (the first such error)
+    */
+   public void load(String[] paths, BitRows bits) throws IOException
+   {
+      if (bits.getNumRows() < paths.length)
+         throw new IllegalArgumentException(paths.length + " files do not fit in " + bits.getNumRows() + " rows");
+      this.load(paths, null, null, bits);
+      return;
+   }//public void load(String[] paths, BitRows bits)
+
+   /**
+    * Decodes every file into its row of doubles, of floats, or of bits
+    *
+    * @param paths   the bitmap files
+    * @param inputs  the rows of doubles to decode into (or null)
+    * @param floats  the rows of floats to decode into (or null)
+    * @param bits    the rows of bits to decode into (if inputs and floats are null)
+    * @throws IOException  if any file cannot be read (the first such error)
+    */
+   private void load(final String[] paths, final double[][] inputs, final float[][] floats,
+                     final BitRows bits) throws IOException
+   {
+      long start = System.nanoTime();
+      int numRuns = Math.max(1, Math.min(this.numThreads, paths.length));
+      List<Future<Void>> runs = new ArrayList<Future<Void>>(numRuns);
+      for (int r = 0; r < numRuns; r++)                     //splits the files as evenly as possible
+      {
+         final int first = (int) ((long) paths.length * r / numRuns);
+         final int last = (int) ((long) paths.length * (r + 1) / numRuns);
+         runs.add(this.pool.submit(new Callable<Void>()
+         {
+            public Void call() throws IOException
+            {
+               DibDump decoder = new DibDump();
+               for (int m = first; m < last; m++)
+                  if (inputs != null)
+                     decoder.mapBMPInto(paths[m], inputs[m], 0);
+                  else if (floats != null)
+                     decoder.mapBMPInto(paths[m], floats[m], 0);
+                  else
+                     decoder.mapBMPInto(paths[m], bits, m);
+               return null;
+            }
+         }));
+      }//for (int r = 0; r < numRuns; r++)
+
+      try
+      {
+         for (Future<Void> run : runs)
+            run.get();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Interrupted while loading images", e);
+      }
+      catch (ExecutionException e)
+      {
+         if (e.getCause() instanceof IOException)
+            throw (IOException) e.getCause();
+         throw new IllegalStateException("Loading images failed", e.getCause());
+      }
+      this.numFiles = paths.length;
+      this.nanos = System.nanoTime() - start;
+      return;
+   }//private void load(String[] paths, double[][] inputs, float[][] floats, BitRows bits)
+
+   /**
+    * Finds how fast the last load went
+    *
+    * @return  the files decoded per second by the last load (0 before the first)
+    */
+   public double getFilesPerSecond()
+   {
+      if (this.nanos == 0)
+         return 0;
+      return this.numFiles * 1e9 / this.nanos;
+   }//public double getFilesPerSecond()
+
+   /**
+    * Getter for the private instance variable int numFiles
+    *
+    * @return numFiles the private instance variable
+    */
+   public int getNumFiles()
+   {
+      return this.numFiles;
+   }//public int getNumFiles()
+
+   /**
+    * Getter for the number of threads in use
+    *
+    * @return  the number of threads in the pool
+    */
+   public int getNumThreads()
+   {
+      return this.numThreads;
+   }//public int getNumThreads()
+
+   /**
+    * Stops the threads of the pool. The loader cannot be used after this.
+    */
+   public void shutdown()
+   {
+      this.pool.shutdown();
+      return;
+   }//public void shutdown()
+}//public class ImageLoader
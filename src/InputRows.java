@@ -0,0 +1,39 @@
+/**
+ * This interface is a matrix of inputs, [model][node], kept in some form other
+ *    than double[][] that only touches the inputs that are not 0.
+ *
+ * SparseRows keeps the index and value of every non-zero input, and BitRows
+ *    keeps one bit per input for inputs that are all 0 or 1. A Layer given
+ *    one (Layer.setInputRows, or Layer.forward(InputRows, int, int)) does its
+ *    dot products and its gradient and weight changes through it.
+ */
+public interface InputRows
+{
+   /**
+    * The dot product of one row and a row of weights
+    *
+    * @param row     the row of this matrix
+    * @param w       the weights
+    * @param offset  the index in w of the weight of input 0
+    * @return        ∑k inputs[row][k] * w[offset + k]
+    */
+   double dot(int row, double[] w, int offset);
+
+   /**
+    * Adds alpha times one row to a row of y
+    *
+    * @param alpha   what to multiply the row by
+    * @param row     the row of this matrix
+    * @param y       the array to add to
+    * @param offset  the index in y of element 0
+    */
+   void axpy(double alpha, int row, double[] y, int offset);
+
+   /**
+    * Tells whether this was made from the given matrix
+    *
+    * @param matrix  the matrix
+    * @return        true if the rows of this are the rows of matrix
+    */
+   boolean covers(double[][] matrix);
+}//public interface InputRows
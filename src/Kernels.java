@@ -0,0 +1,599 @@
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class has the few loops that all the network math is made of.
+ *
+ *    dot(a, b)            ∑ a[k] * b[k]
+ *    axpy(alpha, x, y)    y[k] += alpha * x[k]
+ *    addOuterProduct      m[r][c] += alpha * u[r] * v[c]
+ *
+ *    and the same dot and axpy for a sparse x given as the indices and values
+ *    of its non-zero elements (see SparseRows), or as a row of bits that are
+ *    all 0 or 1 (see BitRows), which only touch the elements that are not 0.
+ *
+ * The dot product has two versions:
+ *    scalar   - the plain loop, one element at a time. Every step has to wait
+ *               for the sum of the step before it.
+ *    unrolled - eight elements per step with eight separate sums, so eight
+ *               multiply-adds can be in flight at once. On a 10,000 element
+ *               dot product this is usually 1.2 to 1.6 times as fast as the scalar loop.
+ *
+ * setUnrolled(...) switches between them while the program runs so the two can
+ *    be compared. The unrolled dot product adds in a different order, so it can
+ *    differ from the scalar one in the last few bits; main(...) checks how much.
+ *
+ * axpy has no sum carried from one step to the next, so the JIT already turns
+ *    the plain loop into SIMD instructions. Unrolling it by hand stops the JIT
+ *    from doing that (it was over three times slower), so axpy is the plain
+ *    loop in both versions.
+ *
+ * All arrays are passed with an offset so that a row of a WeightMatrix can be
+ *    used without copying it.
+ */
+public class Kernels
+{
+   private static boolean unrolled = true;   //which version of the loops to use
+
+   /**
+    * Chooses which version of the loops to use from now on
+    *
+    * @param useUnrolled   true for the unrolled loops, false for the scalar loops
+    */
+   public static void setUnrolled(boolean useUnrolled)
+   {
+      Kernels.unrolled = useUnrolled;
+      return;
+   }//public static void setUnrolled(boolean useUnrolled)
+
+   /**
+    * Tells which version of the loops is being used
+    *
+    * @return  true for the unrolled loops, false for the scalar loops
+    */
+   public static boolean isUnrolled()
+   {
+      return Kernels.unrolled;
+   }//public static boolean isUnrolled()
+
+   /**
+    * The dot product of n elements of a and b
+    *    ∑k a[aOffset + k] * b[bOffset + k]
+    *
+    * @param a          the first array
+    * @param aOffset    where to start in a
+    * @param b          the second array
+    * @param bOffset    where to start in b
+    * @param n          the number of elements
+    * @return           the dot product
+    */
+   public static double dot(double[] a, int aOffset, double[] b, int bOffset, int n)
+   {
+      if (!Kernels.unrolled)
+         return Kernels.dotScalar(a, aOffset, b, bOffset, n);
+
+      double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0, sum4 = 0, sum5 = 0, sum6 = 0, sum7 = 0;
+      int k = 0;
+      for (; k + 7 < n; k += 8)                             //eight at a time
+      {
+         sum0 += a[aOffset + k]     * b[bOffset + k];
+         sum1 += a[aOffset + k + 1] * b[bOffset + k + 1];
+         sum2 += a[aOffset + k + 2] * b[bOffset + k + 2];
+         sum3 += a[aOffset + k + 3] * b[bOffset + k + 3];
+         sum4 += a[aOffset + k + 4] * b[bOffset + k + 4];
+         sum5 += a[aOffset + k + 5] * b[bOffset + k + 5];
+         sum6 += a[aOffset + k + 6] * b[bOffset + k + 6];
+         sum7 += a[aOffset + k + 7] * b[bOffset + k + 7];
+      }
+      for (; k < n; k++)                                    //whatever is left over
+         sum0 += a[aOffset + k] * b[bOffset + k];
+      return ((sum0 + sum1) + (sum2 + sum3)) + ((sum4 + sum5) + (sum6 + sum7));
+   }//public static double dot(double[] a, int aOffset, double[] b, int bOffset, int n)
+
+   /**
+    * The dot product, one element at a time (see dot(...))
+    *
+    * @param a          the first array
+    * @param aOffset    where to start in a
+    * @param b          the second array
+    * @param bOffset    where to start in b
+    * @param n          the number of elements
+    * @return           the dot product
+    */
+   public static double dotScalar(double[] a, int aOffset, double[] b, int bOffset, int n)
+   {
+      double sum = 0;
+      for (int k = 0; k < n; k++)
+         sum += a[aOffset + k] * b[bOffset + k];
+      return sum;
+   }//public static double dotScalar(double[] a, int aOffset, double[] b, int bOffset, int n)
+
+   /**
+    * Adds alpha times n elements of x to n elements of y
+    *    y[yOffset + k] += alpha * x[xOffset + k]
+    *
+    * @param alpha      what to multiply x by
+    * @param x          the array to add (not changed)
+    * @param xOffset    where to start in x
+    * @param y          the array to add to
+    * @param yOffset    where to start in y
+    * @param n          the number of elements
+    */
+   public static void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int n)
+   {
+      for (int k = 0; k < n; k++)                           //the JIT makes this SIMD on its own
+         y[yOffset + k] += alpha * x[xOffset + k];
+      return;
+   }//public static void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int n)
+
+   /**
+    * The dot product of n elements of a and b in single precision
+    *    Same as dot(double[], ...), including the unrolled version
+    *
+    * @param a          the first array
+    * @param aOffset    where to start in a
+    * @param b          the second array
+    * @param bOffset    where to start in b
+    * @param n          the number of elements
+    * @return           the dot product
+    */
+   public static float dot(float[] a, int aOffset, float[] b, int bOffset, int n)
+   {
+      if (!Kernels.unrolled)
+      {
+         float sum = 0;
+         for (int k = 0; k < n; k++)
+            sum += a[aOffset + k] * b[bOffset + k];
+         return sum;
+      }
+
+      float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0, sum4 = 0, sum5 = 0, sum6 = 0, sum7 = 0;
+      int k = 0;
+      for (; k + 7 < n; k += 8)                             //eight at a time
+      {
+         sum0 += a[aOffset + k]     * b[bOffset + k];
+         sum1 += a[aOffset + k + 1] * b[bOffset + k + 1];
+         sum2 += a[aOffset + k + 2] * b[bOffset + k + 2];
+         sum3 += a[aOffset + k + 3] * b[bOffset + k + 3];
+         sum4 += a[aOffset + k + 4] * b[bOffset + k + 4];
+         sum5 += a[aOffset + k + 5] * b[bOffset + k + 5];
+         sum6 += a[aOffset + k + 6] * b[bOffset + k + 6];
+         sum7 += a[aOffset + k + 7] * b[bOffset + k + 7];
+      }
+      for (; k < n; k++)                                    //whatever is left over
+         sum0 += a[aOffset + k] * b[bOffset + k];
+      return ((sum0 + sum1) + (sum2 + sum3)) + ((sum4 + sum5) + (sum6 + sum7));
+   }//public static float dot(float[] a, int aOffset, float[] b, int bOffset, int n)
+
+   /**
+    * Adds alpha times n elements of x to n elements of y in single precision
+    *    y[yOffset + k] += alpha * x[xOffset + k]
+    *
+    * @param alpha      what to multiply x by
+    * @param x          the array to add (not changed)
+    * @param xOffset    where to start in x
+    * @param y          the array to add to
+    * @param yOffset    where to start in y
+    * @param n          the number of elements
+    */
+   public static void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int n)
+   {
+      for (int k = 0; k < n; k++)                           //the JIT makes this SIMD on its own
+         y[yOffset + k] += alpha * x[xOffset + k];
+      return;
+   }//public static void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int n)
+
+   /**
+    * The dot product of n elements of a and b in 8-bit integers, added up in an int
+    *    Integer sums come out the same in any order, so there is only one version.
+    *    A sum of up to 133,144 products of two numbers from -127 to 127 fits in an
+    *    int; QuantizedModel refuses longer rows (QuantizedModel.MAX_ROW_LENGTH).
+    *
+    * @param a          the first array
+    * @param aOffset    where to start in a
+    * @param b          the second array
+    * @param bOffset    where to start in b
+    * @param n          the number of elements
+    * @return           the dot product
+    */
+   public static int dot(byte[] a, int aOffset, byte[] b, int bOffset, int n)
+   {
+      int sum = 0;
+      for (int k = 0; k < n; k++)
+         sum += a[aOffset + k] * b[bOffset + k];
+      return sum;
+   }//public static int dot(byte[] a, int aOffset, byte[] b, int bOffset, int n)
+
+   /**
+    * The dot product of n elements of a and n weights read out of a buffer
+    *    (such as a memory-mapped model file) with absolute gets, so the
+    *    buffer's position is never changed and many threads can share it.
+    *    Same order of adding as dot(double[], ...).
+    *
+    * @param a          the array
+    * @param aOffset    where to start in a
+    * @param b          the buffer
+    * @param bOffset    the index in b to start at
+    * @param n          the number of elements
+    * @return           the dot product
+    */
+   public static double dot(double[] a, int aOffset, DoubleBuffer b, int bOffset, int n)
+   {
+      if (!Kernels.unrolled)
+      {
+         double sum = 0;
+         for (int k = 0; k < n; k++)
+            sum += a[aOffset + k] * b.get(bOffset + k);
+         return sum;
+      }
+
+      double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0, sum4 = 0, sum5 = 0, sum6 = 0, sum7 = 0;
+      int k = 0;
+      for (; k + 7 < n; k += 8)                             //eight at a time
+      {
+         sum0 += a[aOffset + k]     * b.get(bOffset + k);
+         sum1 += a[aOffset + k + 1] * b.get(bOffset + k + 1);
+         sum2 += a[aOffset + k + 2] * b.get(bOffset + k + 2);
+         sum3 += a[aOffset + k + 3] * b.get(bOffset + k + 3);
+         sum4 += a[aOffset + k + 4] * b.get(bOffset + k + 4);
+         sum5 += a[aOffset + k + 5] * b.get(bOffset + k + 5);
+         sum6 += a[aOffset + k + 6] * b.get(bOffset + k + 6);
+         sum7 += a[aOffset + k + 7] * b.get(bOffset + k + 7);
+      }
+      for (; k < n; k++)                                    //whatever is left over
+         sum0 += a[aOffset + k] * b.get(bOffset + k);
+      return ((sum0 + sum1) + (sum2 + sum3)) + ((sum4 + sum5) + (sum6 + sum7));
+   }//public static double dot(double[] a, int aOffset, DoubleBuffer b, int bOffset, int n)
+
+   /**
+    * The dot product of n elements of a and n float weights read out of a
+    *    buffer, added up in double (see dot(double[], int, DoubleBuffer, int, int))
+    *
+    * @param a          the array
+    * @param aOffset    where to start in a
+    * @param b          the buffer
+    * @param bOffset    the index in b to start at
+    * @param n          the number of elements
+    * @return           the dot product
+    */
+   public static double dot(double[] a, int aOffset, FloatBuffer b, int bOffset, int n)
+   {
+      double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+      int k = 0;
+      if (Kernels.unrolled)
+         for (; k + 3 < n; k += 4)                          //four at a time
+         {
+            sum0 += a[aOffset + k]     * b.get(bOffset + k);
+            sum1 += a[aOffset + k + 1] * b.get(bOffset + k + 1);
+            sum2 += a[aOffset + k + 2] * b.get(bOffset + k + 2);
+            sum3 += a[aOffset + k + 3] * b.get(bOffset + k + 3);
+         }
+      for (; k < n; k++)                                    //whatever is left over
+         sum0 += a[aOffset + k] * b.get(bOffset + k);
+      return (sum0 + sum1) + (sum2 + sum3);
+   }//public static double dot(double[] a, int aOffset, FloatBuffer b, int bOffset, int n)
+
+   /**
+    * The dot product of a sparse vector and n elements of b
+    *    ∑ values[e] * b[bOffset + indices[e]]  for e = from to to - 1
+    *
+    * @param indices    the index of every non-zero element of the sparse vector
+    * @param values     the value of every non-zero element (same order as indices)
+    * @param from       the first element of the sparse vector in indices and values
+    * @param to         one past its last element
+    * @param b          the dense array
+    * @param bOffset    the index in b of element 0
+    * @return           the dot product
+    */
+   public static double dot(int[] indices, double[] values, int from, int to, double[] b, int bOffset)
+   {
+      double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+      int e = from;
+      if (Kernels.unrolled)
+         for (; e + 3 < to; e += 4)                         //four at a time
+         {
+            sum0 += values[e]     * b[bOffset + indices[e]];
+            sum1 += values[e + 1] * b[bOffset + indices[e + 1]];
+            sum2 += values[e + 2] * b[bOffset + indices[e + 2]];
+            sum3 += values[e + 3] * b[bOffset + indices[e + 3]];
+         }
+      for (; e < to; e++)                                   //whatever is left over
+         sum0 += values[e] * b[bOffset + indices[e]];
+      return (sum0 + sum1) + (sum2 + sum3);
+   }//public static double dot(int[] indices, double[] values, int from, int to, double[] b, int bOffset)
+
+   /**
+    * Adds alpha times a sparse vector to y
+    *    y[yOffset + indices[e]] += alpha * values[e]  for e = from to to - 1
+    *
+    * @param alpha      what to multiply the sparse vector by
+    * @param indices    the index of every non-zero element of the sparse vector
+    * @param values     the value of every non-zero element (same order as indices)
+    * @param from       the first element of the sparse vector in indices and values
+    * @param to         one past its last element
+    * @param y          the array to add to
+    * @param yOffset    the index in y of element 0
+    */
+   public static void axpy(double alpha, int[] indices, double[] values, int from, int to, double[] y, int yOffset)
+   {
+      for (int e = from; e < to; e++)
+         y[yOffset + indices[e]] += alpha * values[e];
+      return;
+   }//public static void axpy(double alpha, int[] indices, double[] values, int from, int to, double[] y, int yOffset)
+
+   /**
+    * The dot product of a row of bits and n elements of b, which is the sum of
+    *    the elements of b whose bit is set
+    *    ∑ b[bOffset + k]  for every k < numBits whose bit is 1
+    *
+    *    Bit k is bit (k % 64) of word k / 64. The words that are 0 are skipped
+    *    whole, and in the others each set bit is found with one
+    *    Long.numberOfTrailingZeros and cleared with set & (set - 1).
+    *
+    * @param bits       the words of bits
+    * @param wordOffset the index in bits of the word of element 0
+    * @param numBits    the number of elements
+    * @param b          the dense array
+    * @param bOffset    the index in b of element 0
+    * @return           the dot product
+    */
+   public static double dot(long[] bits, int wordOffset, int numBits, double[] b, int bOffset)
+   {
+      double sum0 = 0, sum1 = 0;
+      int numWords = (numBits + 63) >>> 6;
+      for (int word = 0; word < numWords; word++)           //loops over the words
+      {
+         long set = bits[wordOffset + word];
+         int base = bOffset + (word << 6);
+         while (set != 0)                                   //two set bits at a time
+         {
+            sum0 += b[base + Long.numberOfTrailingZeros(set)];
+            set &= set - 1;
+            if (set == 0)
+               break;
+            sum1 += b[base + Long.numberOfTrailingZeros(set)];
+            set &= set - 1;
+         }
+      }
+      return sum0 + sum1;
+   }//public static double dot(long[] bits, int wordOffset, int numBits, double[] b, int bOffset)
+
+   /**
+    * Adds alpha to every element of y whose bit is set
+    *    y[yOffset + k] += alpha  for every k < numBits whose bit is 1
+    *
+    * @param alpha      what to add
+    * @param bits       the words of bits (see dot(long[], int, int, double[], int))
+    * @param wordOffset the index in bits of the word of element 0
+    * @param numBits    the number of elements
+    * @param y          the array to add to
+    * @param yOffset    the index in y of element 0
+    */
+   public static void axpy(double alpha, long[] bits, int wordOffset, int numBits, double[] y, int yOffset)
+   {
+      int numWords = (numBits + 63) >>> 6;
+      for (int word = 0; word < numWords; word++)           //loops over the words
+      {
+         long set = bits[wordOffset + word];
+         int base = yOffset + (word << 6);
+         while (set != 0)
+         {
+            y[base + Long.numberOfTrailingZeros(set)] += alpha;
+            set &= set - 1;
+         }
+      }
+      return;
+   }//public static void axpy(double alpha, long[] bits, int wordOffset, int numBits, double[] y, int yOffset)
+
+   /**
+    * Adds alpha times the outer product of u and v to a row-major matrix
+    *    m[r * v.length + c] += alpha * u[r] * v[c]
+    *    one axpy per row
+    *
+    * @param alpha   what to multiply the outer product by
+    * @param u       one value per row of m
+    * @param v       one value per column of m
+    * @param m       the matrix, u.length rows of v.length columns
+    */
+   public static void addOuterProduct(double alpha, double[] u, double[] v, double[] m)
+   {
+      int numCols = v.length;
+      for (int r = 0; r < u.length; r++)
+         if (u[r] != 0)
+            Kernels.axpy(alpha * u[r], v, 0, m, r * numCols, numCols);
+      return;
+   }//public static void addOuterProduct(double alpha, double[] u, double[] v, double[] m)
+
+   /*
+    * How far main(...) lets a kernel be from the plain loop, relative to the sum
+    *    of the magnitudes of the terms (or 1, if that is smaller): a few bits of
+    *    rounding in double, and in single precision the float rounding of every step
+    */
+   final static double TOLERANCE = 1e-12;
+   final static double FLOAT_TOLERANCE = 1e-4;
+
+   /**
+    * Checks every kernel, with both the scalar and the unrolled loops, against
+    *    a plain loop in double on random arrays of many lengths, then prints
+    *    the largest difference of each and how long the two dot products took
+    *    (java Kernels)
+    *
+    * @param args    not used
+    * @throws IllegalStateException  if a kernel is further than TOLERANCE (or
+    *                                FLOAT_TOLERANCE) from the plain loop
+    */
+   public static void main(String[] args)
+   {
+      String[] names = {"dot", "dot (float)", "dot (int8)", "dot (DoubleBuffer)", "dot (FloatBuffer)",
+                        "dot (sparse)", "dot (bits)", "axpy", "axpy (float)", "axpy (sparse)",
+                        "axpy (bits)", "addOuterProduct"};
+      double[] tolerances = {Kernels.TOLERANCE, Kernels.FLOAT_TOLERANCE, 0, Kernels.TOLERANCE,
+                             Kernels.TOLERANCE, Kernels.TOLERANCE, Kernels.TOLERANCE, Kernels.TOLERANCE,
+                             Kernels.FLOAT_TOLERANCE, Kernels.TOLERANCE, Kernels.TOLERANCE, Kernels.TOLERANCE};
+      double[] worst = new double[names.length];
+      Random random = new Random(1);
+      for (int n = 0; n < 1000; n += 7)
+      {
+         double[] a = new double[n + 3];
+         double[] b = new double[n + 3];
+         float[] fa = new float[n + 3];
+         float[] fb = new float[n + 3];
+         byte[] ba = new byte[n + 3];
+         byte[] bb = new byte[n + 3];
+         for (int k = 0; k < a.length; k++)
+         {
+            a[k] = random.nextDouble() * 2 - 1;
+            b[k] = random.nextDouble() * 2 - 1;
+            fa[k] = (float) a[k];
+            fb[k] = (float) b[k];
+            ba[k] = (byte) (random.nextInt(255) - 127);
+            bb[k] = (byte) (random.nextInt(255) - 127);
+         }
+         double alpha = random.nextDouble() * 2 - 1;
+
+         int[] indices = new int[n];                        //about a third of the elements of a
+         double[] values = new double[n];
+         int count = 0;
+         long[] bits = new long[1 + ((n + 63) >>> 6)];      //one word before the row, like in BitRows
+         for (int k = 0; k < n; k++)
+         {
+            if (random.nextInt(3) == 0)
+            {
+               indices[count] = k;
+               values[count++] = a[1 + k];
+            }
+            if (random.nextBoolean())
+               bits[1 + (k >>> 6)] |= 1L << (k & 63);
+         }
+
+         double[] u = new double[5];
+         for (int r = 1; r < u.length; r++)                 //u[0] stays 0, which addOuterProduct skips
+            u[r] = random.nextDouble() * 2 - 1;
+         double[] v = Arrays.copyOfRange(b, 2, 2 + n);
+
+         for (int version = 0; version < 2; version++)
+         {
+            Kernels.setUnrolled(version == 1);
+            double dot = 0, magnitude = 0, floatDot = 0, floatMagnitude = 0, sparseDot = 0, sparseMagnitude = 0;
+            double bitDot = 0, bitMagnitude = 0;
+            long byteDot = 0;
+            for (int k = 0; k < n; k++)
+            {
+               dot += a[1 + k] * b[2 + k];
+               magnitude += Math.abs(a[1 + k] * b[2 + k]);
+               floatDot += (double) fa[1 + k] * fb[2 + k];
+               floatMagnitude += Math.abs((double) fa[1 + k] * fb[2 + k]);
+               byteDot += ba[1 + k] * bb[2 + k];
+               if ((bits[1 + (k >>> 6)] >>> (k & 63) & 1) != 0)
+               {
+                  bitDot += b[2 + k];
+                  bitMagnitude += Math.abs(b[2 + k]);
+               }
+            }
+            for (int e = 0; e < count; e++)
+            {
+               sparseDot += values[e] * b[2 + indices[e]];
+               sparseMagnitude += Math.abs(values[e] * b[2 + indices[e]]);
+            }
+            worst[0] = Math.max(worst[0], Kernels.difference(dot, Kernels.dot(a, 1, b, 2, n), magnitude));
+            worst[1] = Math.max(worst[1], Kernels.difference(floatDot, Kernels.dot(fa, 1, fb, 2, n), floatMagnitude));
+            worst[2] = Math.max(worst[2], Math.abs(byteDot - Kernels.dot(ba, 1, bb, 2, n)));
+            worst[3] = Math.max(worst[3], Kernels.difference(dot,
+                  Kernels.dot(a, 1, DoubleBuffer.wrap(b), 2, n), magnitude));
+            double mixedDot = 0, mixedMagnitude = 0;
+            for (int k = 0; k < n; k++)
+            {
+               mixedDot += a[1 + k] * fb[2 + k];
+               mixedMagnitude += Math.abs(a[1 + k] * fb[2 + k]);
+            }
+            worst[4] = Math.max(worst[4], Kernels.difference(mixedDot,
+                  Kernels.dot(a, 1, FloatBuffer.wrap(fb), 2, n), mixedMagnitude));
+            worst[5] = Math.max(worst[5], Kernels.difference(sparseDot,
+                  Kernels.dot(indices, values, 0, count, b, 2), sparseMagnitude));
+            worst[6] = Math.max(worst[6], Kernels.difference(bitDot, Kernels.dot(bits, 1, n, b, 2), bitMagnitude));
+
+            double[] y = b.clone();
+            Kernels.axpy(alpha, a, 1, y, 2, n);
+            for (int k = 0; k < n; k++)
+               worst[7] = Math.max(worst[7], Kernels.difference(b[2 + k] + alpha * a[1 + k], y[2 + k], 0));
+            float[] fy = fb.clone();
+            Kernels.axpy((float) alpha, fa, 1, fy, 2, n);
+            for (int k = 0; k < n; k++)
+               worst[8] = Math.max(worst[8], Kernels.difference(fb[2 + k] + (float) alpha * (double) fa[1 + k], fy[2 + k], 0));
+            y = b.clone();
+            Kernels.axpy(alpha, indices, values, 0, count, y, 2);
+            double[] expected = b.clone();
+            for (int e = 0; e < count; e++)
+               expected[2 + indices[e]] += alpha * values[e];
+            for (int k = 0; k < y.length; k++)
+               worst[9] = Math.max(worst[9], Kernels.difference(expected[k], y[k], 0));
+            y = b.clone();
+            Kernels.axpy(alpha, bits, 1, n, y, 2);
+            for (int k = 0; k < n; k++)
+            {
+               double bit = bits[1 + (k >>> 6)] >>> (k & 63) & 1;
+               worst[10] = Math.max(worst[10], Kernels.difference(b[2 + k] + alpha * bit, y[2 + k], 0));
+            }
+            double[] m = new double[u.length * n];
+            for (int c = 0; c < m.length; c++)
+               m[c] = a[c % a.length];
+            double[] outer = m.clone();
+            Kernels.addOuterProduct(alpha, u, v, outer);
+            for (int r = 0; r < u.length; r++)
+               for (int c = 0; c < n; c++)
+                  worst[11] = Math.max(worst[11], Kernels.difference(m[r * n + c] + alpha * u[r] * v[c],
+                                                                     outer[r * n + c], 0));
+         }
+      }
+
+      boolean passed = true;
+      for (int kernel = 0; kernel < names.length; kernel++)
+      {
+         System.out.println("Largest relative difference in " + names[kernel] + ":\t" + worst[kernel]
+               + "\t(tolerance " + tolerances[kernel] + ")");
+         passed &= worst[kernel] <= tolerances[kernel];
+      }
+
+      double[] a = new double[10000];
+      double[] b = new double[10000];
+      for (int k = 0; k < a.length; k++)
+      {
+         a[k] = random.nextDouble();
+         b[k] = random.nextDouble();
+      }
+      for (int pass = 0; pass < 3; pass++)                  //the first passes warm up the JIT
+      {
+         for (int version = 0; version < 2; version++)
+         {
+            Kernels.setUnrolled(version == 1);
+            double sum = 0;
+            long start = System.nanoTime();
+            for (int rep = 0; rep < 20000; rep++)
+               sum += Kernels.dot(a, 0, b, 0, a.length);
+            if (pass == 2)
+               System.out.println((version == 1 ? "Unrolled" : "Scalar") + " dot (ms):\t"
+                     + (System.nanoTime() - start) / 1e6 + "\t(" + sum + ")");
+         }
+      }
+      Kernels.setUnrolled(true);
+      if (!passed)
+         throw new IllegalStateException("A kernel is further from the plain loop than its tolerance");
+      return;
+   }//public static void main(String[] args)
+
+   /**
+    * How far a kernel's result is from the plain loop's, relative to the sum of
+    *    the magnitudes of the terms (see TOLERANCE)
+    *
+    * @param expected   what the plain loop got
+    * @param actual     what the kernel got
+    * @param magnitude  the sum of the magnitudes of the terms, or 0 to use |expected|
+    * @return           the relative difference
+    */
+   private static double difference(double expected, double actual, double magnitude)
+   {
+      return Math.abs(expected - actual) / Math.max(1, Math.max(magnitude, Math.abs(expected)));
+   }//private static double difference(double expected, double actual, double magnitude)
+}//public class Kernels
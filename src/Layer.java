@@ -0,0 +1,681 @@
+/**
+ * This class is one fully connected layer of weights in the network, together
+ *    with the nodes that the layer feeds into.
+ *
+ * A forward pass through the layer is:
+ *    theta[j] = ∑k a[k] * w[j][k]
+ *    h[j]     = f(theta[j])
+ *
+ *    where
+ *    a is the activation of the layer before this one (the inputs)
+ *    w is the layer of weights
+ *    h is the activation of this layer
+ *
+ * A backward pass through the layer is:
+ *    psi[j]        = omega[j] * f ' (theta[j])
+ *    gradient[j][k] += a[k] * psi[j]
+ *
+ *    where omega[j] is either (T[j] - F[j]) for the output layer or
+ *    ∑i psi[i] * w[i][j] of the next layer for a hidden layer.
+ *
+ * f is the sigmoid unless the layer is given another Activation
+ *    (setActivation, see Activations): the sigmoid from a table, tanh, ReLU,
+ *    or leaky ReLU. f and f ' are applied to a whole row of nodes at a time,
+ *    and f ' is worked out from the activations the forward pass kept (for
+ *    the sigmoid, f ' (theta) = h * (1 - h)), so backprop never calls Math.exp.
+ *
+ * The weights and the gradient are WeightMatrix objects with one row per node
+ *    of this layer, so every loop below walks a row straight through.
+ *    The gradient is kept as the change we want (the negative derivative of
+ *    the error), so applying it is w += lambda * gradient.
+ *
+ * A layer can evaluate a whole mini-batch of inputs at once. Every node array
+ *    has one row per sample in the batch ([sample][node]), and the batch loops
+ *    are matrix-matrix products: each row of weights is loaded once and used
+ *    for every sample in the batch before moving on to the next row. A single
+ *    input is just a batch of one, kept in row 0.
+ *
+ * Every dot product and every axpy loop goes through Kernels, so switching
+ *    Kernels.setUnrolled(...) changes how all of them run.
+ *
+ * When the layer is given its inputs as SparseRows or BitRows (setInputRows(...),
+ *    or forward(InputRows, int, int)), a forward pass over them, and the
+ *    gradient and weight changes after it, only touch the inputs that are not 0.
+ *    The answers are the same as the dense loops, other than rounding in the
+ *    order of the sums. chooseInputRows(...) picks which one to use.
+ *
+ * The theta, activation, omega, psi, and gradient arrays are allocated once when
+ *    the layer is made and are overwritten by every pass, so training the
+ *    network never creates new arrays.
+ *
+ * XOROptimized chains two of these together (input -> hidden -> output) so that
+ *    each hidden node is calculated once per model instead of once per output.
+ */
+public class Layer
+{
+   /*
+    * The table fastF(...) interpolates in
+    *    f(x) at every step of 1 / FAST_SIGMOID_STEPS from -FAST_SIGMOID_LIMIT
+    *    to FAST_SIGMOID_LIMIT; outside that, fastF gives the value at the end
+    *    of the table. FAST_SIGMOID_MAX_ERROR is the most |fastF(x) - f(x)|
+    *    can be (measured over every x in the table at 1/65536 apart and past
+    *    both ends): the linear interpolation is off by at most
+    *    (1/64)^2 / 8 * max|f''| = 2.9e-6, and past the ends by f(-16) = 1.1e-7.
+    *
+    * Use these variables to change how close and how large the table is
+    */
+   final static int FAST_SIGMOID_LIMIT = 16;
+   final static int FAST_SIGMOID_STEPS = 64;
+   final static double FAST_SIGMOID_MAX_ERROR = 3.0e-6;
+   private final static double[] FAST_SIGMOID_TABLE = new double[2 * FAST_SIGMOID_LIMIT * FAST_SIGMOID_STEPS + 1];
+
+   static
+   {
+      for (int t = 0; t < Layer.FAST_SIGMOID_TABLE.length; t++)
+         Layer.FAST_SIGMOID_TABLE[t] = Layer.f((double) t / Layer.FAST_SIGMOID_STEPS - Layer.FAST_SIGMOID_LIMIT);
+   }
+
+   private static boolean packInputs = false;   //whether chooseInputRows(...) packs 0/1 inputs into bits
+
+   private int numInputs;        //the number of nodes feeding into this layer
+   private int numNodes;         //the number of nodes in this layer
+   private int maxBatchSize;     //the number of samples the node arrays have room for
+   private Activation activation;//f, the activation function of the nodes of this layer
+
+   private WeightMatrix weights; //[node][input node] - the same weights the network trains
+   private WeightMatrix gradient;//[node][input node] - accumulated change for the weights
+
+   private double[][] inputs;    //the rows given to the last forward pass
+   private int firstInput;       //the index in inputs of the first sample of the last pass
+   private double[][] single;    //holds the one row for forward(double[])
+   private InputRows inputRows;  //the training inputs as sparse or packed rows (else null)
+   private InputRows passRows;   //the rows the last forward pass used (null if it used inputs)
+
+   private double[][] theta;       //[sample][node] ∑k ak * wkj
+   private double[][] activations; //[sample][node] f(theta)
+   private double[][] omega;       //[sample][node] error reaching each node in the backward pass
+   private double[][] psi;         //[sample][node] omega * f ' (theta)
+
+   /**
+    * Constructor for the class Layer for one sample at a time
+    *
+    * @param myWeights     the layer of weights, one row per node of this layer
+    */
+   public Layer(WeightMatrix myWeights)
+   {
+      this(myWeights, 1);
+   }//public Layer(WeightMatrix myWeights)
+
+   /**
+    * Constructor for the class Layer
+    *
+    * The weights are not copied, so any change the network makes to them is
+    *    seen by the next forward pass.
+    *
+    * @param myWeights        the layer of weights, one row per node of this layer
+    * @param myMaxBatchSize   the largest number of samples passed at once
+    */
+   public Layer(WeightMatrix myWeights, int myMaxBatchSize)
+   {
+      this.weights = myWeights;
+      this.numInputs = myWeights.getNumCols();
+      this.numNodes = myWeights.getNumRows();
+      this.maxBatchSize = Math.max(myMaxBatchSize, 1);
+      this.activation = Activations.SIGMOID;
+      this.gradient = new WeightMatrix(this.numNodes, this.numInputs);
+      this.single = new double[1][];
+      this.theta = new double[this.maxBatchSize][this.numNodes];
+      this.activations = new double[this.maxBatchSize][this.numNodes];
+      this.omega = new double[this.maxBatchSize][this.numNodes];
+      this.psi = new double[this.maxBatchSize][this.numNodes];
+   }//public Layer(WeightMatrix myWeights, int myMaxBatchSize)
+
+   /**
+    * This is our activation function.
+    *
+    * f(x) = 1 / (1 + e^ (-x))
+    *
+    * @param x    the double we are putting into the function
+    * @return     the value when x is put into the function
+    */
+   public static double f(double x)
+   {
+      return (1 / (1 + Math.exp(-x)));
+   }//public static double f(double x)
+
+   /**
+    * The activation function worked out by linear interpolation in a table
+    *    instead of with Math.exp
+    *    |fastF(x) - f(x)| is at most FAST_SIGMOID_MAX_ERROR for every x.
+    *
+    * @param x    the double we are putting into the function
+    * @return     about 1 / (1 + e^ (-x))
+    */
+   public static double fastF(double x)
+   {
+      double t = (x + Layer.FAST_SIGMOID_LIMIT) * Layer.FAST_SIGMOID_STEPS;
+      int last = Layer.FAST_SIGMOID_TABLE.length - 1;
+      if (!(t > 0))                                      //also catches NaN
+         return Layer.FAST_SIGMOID_TABLE[0];
+      if (t >= last)
+         return Layer.FAST_SIGMOID_TABLE[last];
+      int index = (int) t;
+      double below = Layer.FAST_SIGMOID_TABLE[index];
+      return below + (t - index) * (Layer.FAST_SIGMOID_TABLE[index + 1] - below);
+   }//public static double fastF(double x)
+
+   /**
+    * This is the derivative of the activation function.
+    *    f'(x) = f(x) * (1 - f(x))
+    *
+    * @param x    the double we are putting into the derivative of the activation function
+    * @return     the value when x is put into the derivative of the activation function
+    */
+   public static double fPrime(double x)
+   {
+      double fOfX = Layer.f(x);
+      return fOfX * (1 - fOfX);
+   }//public static double fPrime(double x)
+
+   /**
+    * The derivative of the activation function from the value of the function
+    *    f'(x) = f(x) * (1 - f(x)), so a layer that kept f(theta) in the forward
+    *    pass needs no Math.exp for the backward pass
+    *
+    * @param fOfX the value of the activation function, f(x)
+    * @return     f'(x)
+    */
+   public static double fPrimeOfF(double fOfX)
+   {
+      return fOfX * (1 - fOfX);
+   }//public static double fPrimeOfF(double fOfX)
+
+   /**
+    * Evaluates one layer of weights for one input without using any layer's arrays
+    *    h[j] = f(∑k a[k] * w[j][k])
+    *
+    * Nothing but activations is written, so any number of threads can call this
+    *    with the same weights at once as long as each has its own activations.
+    *
+    * @param weights       the layer of weights, one row per node
+    * @param input         the activations of the layer before
+    * @param activations   where to put the activations of the layer (length = rows)
+    * @return              activations
+    */
+   public static double[] evaluate(WeightMatrix weights, double[] input, double[] activations)
+   {
+      return Layer.evaluate(weights, Activations.SIGMOID, input, activations);
+   }//public static double[] evaluate(WeightMatrix weights, double[] input, double[] activations)
+
+   /**
+    * Evaluates one layer of weights for one input with any activation function
+    *    without using any layer's arrays
+    *    h[j] = f(∑k a[k] * w[j][k])
+    *
+    * @param weights       the layer of weights, one row per node
+    * @param f             the activation function of the layer
+    * @param input         the activations of the layer before
+    * @param activations   where to put the activations of the layer (length = rows)
+    * @return              activations
+    */
+   public static double[] evaluate(WeightMatrix weights, Activation f, double[] input, double[] activations)
+   {
+      double[] w = weights.getData();
+      int numCols = weights.getNumCols();
+      int numRows = weights.getNumRows();
+      for (int j = 0; j < numRows; j++)                  //loops over the nodes
+         activations[j] = Kernels.dot(input, 0, w, weights.rowOffset(j), numCols);
+      f.apply(activations, activations, numRows);
+      return activations;
+   }//public static double[] evaluate(WeightMatrix weights, Activation f, double[] input, double[] activations)
+
+   /**
+    * Evaluates every node in this layer once for one input
+    *    The results go in row 0 (getTheta(), getActivations())
+    *
+    * @param input   the activations of the layer before this one
+    * @return        the activations of this layer (the same array every call)
+    */
+   public double[] forward(double[] input)
+   {
+      this.single[0] = input;
+      this.forward(this.single, 0, 1);
+      return this.activations[0];
+   }//public double[] forward(double[] input)
+
+   /**
+    * Evaluates every node in this layer for count samples at once
+    *    The sample inputs[first + b] goes in row b
+    *
+    *    for j = 0 to numNodes (node loop - one row of weights)
+    *       for b = 0 to count (sample loop)
+    *          theta[b][j] = ∑k a[b][k] * w[j][k]
+    *    for b = 0 to count
+    *       h[b] = f(theta[b])                  (one row at a time, see Activation)
+    *
+    * @param inputs  the rows of activations of the layer before this one
+    * @param first   the index of the first row to use
+    * @param count   the number of rows to use (at most the max batch size)
+    * @return        the [sample][node] activations of this layer
+    */
+   public double[][] forward(double[][] inputs, int first, int count)
+   {
+      this.inputs = inputs;
+      this.firstInput = first;
+      this.passRows = (this.inputRows != null && this.inputRows.covers(inputs)) ? this.inputRows : null;
+      return this.forward(count);
+   }//public double[][] forward(double[][] inputs, int first, int count)
+
+   /**
+    * Evaluates every node in this layer for count samples at once, taking the
+    *    inputs from sparse or packed rows with no double[][] behind them
+    *    The sample rows[first + b] goes in row b
+    *
+    * @param rows    the rows of activations of the layer before this one
+    * @param first   the index of the first row to use
+    * @param count   the number of rows to use (at most the max batch size)
+    * @return        the [sample][node] activations of this layer
+    */
+   public double[][] forward(InputRows rows, int first, int count)
+   {
+      this.inputs = null;
+      this.firstInput = first;
+      this.passRows = rows;
+      return this.forward(count);
+   }//public double[][] forward(InputRows rows, int first, int count)
+
+   /**
+    * The forward pass over the inputs set by forward(double[][], ...) or
+    *    forward(InputRows, ...)
+    *
+    * @param count   the number of samples
+    * @return        the [sample][node] activations of this layer
+    */
+   private double[][] forward(int count)
+   {
+      int first = this.firstInput;
+      double[] w = this.weights.getData();
+      for (int j = 0; j < this.numNodes; j++)            //loops over the nodes
+      {
+         int offset = this.weights.rowOffset(j);
+         for (int b = 0; b < count; b++)                 //loops over the samples
+         {
+            if (this.passRows != null)                   //sum of ak * wjk
+               this.theta[b][j] = this.passRows.dot(first + b, w, offset);
+            else
+               this.theta[b][j] = Kernels.dot(this.inputs[first + b], 0, w, offset, this.numInputs);
+         }
+      }
+      for (int b = 0; b < count; b++)                    //sets the nodes
+         this.activation.apply(this.theta[b], this.activations[b], this.numNodes);
+      return this.activations;
+   }//private double[][] forward(int count)
+
+   /**
+    * Calculates omega and psi for this layer when it is the output layer
+    *    omega[b][i] = T[first + b][i] - F[b][i]
+    *    psi[b][i] = omega[b][i] * f ' (theta[b][i])
+    *
+    * @param targets the rows of target outputs (T)
+    * @param first   the index of the target row of the first sample
+    * @param count   the number of samples in the batch
+    * @return        the ∑ omega * omega over the batch
+    */
+   public double outputDeltas(double[][] targets, int first, int count)
+   {
+      double subError = 0.0;
+      for (int b = 0; b < count; b++)                    //loops over the samples
+      {
+         double[] target = targets[first + b];
+         double[] psib = this.psi[b];
+         this.activation.derivative(this.theta[b], this.activations[b], psib, this.numNodes);
+         for (int i = 0; i < this.numNodes; i++)         //loops over the nodes
+         {
+            double omegai = target[i] - this.activations[b][i];
+            this.omega[b][i] = omegai;
+            psib[i] *= omegai;
+            subError += omegai * omegai;
+         }
+      }
+      return subError;
+   }//public double outputDeltas(double[][] targets, int first, int count)
+
+   /**
+    * Calculates omega and psi for this layer when it is a hidden layer
+    *    for the single sample in row 0
+    *
+    * @param next    the layer this layer feeds into
+    */
+   public void propagateDeltas(Layer next)
+   {
+      this.propagateDeltas(next, 1);
+      return;
+   }//public void propagateDeltas(Layer next)
+
+   /**
+    * Calculates omega and psi for this layer when it is a hidden layer
+    *    Must be called after next has its psi set for the same samples
+    *
+    *    for b = 0 to count (sample loop)
+    *       omega[b] = 0
+    *       for i = 0 to next.numNodes (loops over the rows of next's weights)
+    *          omega[b][j] += psi[b][i] * w[i][j] for every j
+    *       for j = 0 to numNodes (node loop)
+    *          psi[b][j] = omega[b][j] * f ' (theta[b][j])
+    *
+    * @param next    the layer this layer feeds into
+    * @param count   the number of samples in the batch
+    */
+   public void propagateDeltas(Layer next, int count)
+   {
+      double[] w = next.weights.getData();
+      for (int b = 0; b < count; b++)                    //loops over the samples
+      {
+         double[] nextPsi = next.psi[b];
+         double[] omegab = this.omega[b];
+         for (int j = 0; j < this.numNodes; j++)
+            omegab[j] = 0;
+         for (int i = 0; i < next.numNodes; i++)         //loops over the nodes of next
+            Kernels.axpy(nextPsi[i], w, next.weights.rowOffset(i), omegab, 0, this.numNodes);//accumulates omegaj
+         double[] psib = this.psi[b];
+         this.activation.derivative(this.theta[b], this.activations[b], psib, this.numNodes);
+         for (int j = 0; j < this.numNodes; j++)
+            psib[j] *= omegab[j];
+      }
+      return;
+   }//public void propagateDeltas(Layer next, int count)
+
+   /**
+    * Adds the outer product of psi and the last input to the gradient
+    *    for the single sample in row 0
+    */
+   public void accumulateGradient()
+   {
+      this.accumulateGradient(1);
+      return;
+   }//public void accumulateGradient()
+
+   /**
+    * Adds the gradient of every sample in the batch to the gradient
+    *    gradient[j][k] += ∑b psi[b][j] * a[b][k]
+    *
+    *    The row of the gradient stays loaded while every sample adds to it,
+    *    so it is walked once per batch instead of once per sample.
+    *
+    * @precondition  forward(...) and the deltas have been done for the same samples
+    * @param count   the number of samples in the batch
+    */
+   public void accumulateGradient(int count)
+   {
+      double[] g = this.gradient.getData();
+      if (this.passRows != null)                         //only the non-zero inputs change the gradient
+      {
+         for (int j = 0; j < this.numNodes; j++)
+            for (int b = 0; b < count; b++)
+               if (this.psi[b][j] != 0)
+                  this.passRows.axpy(this.psi[b][j], this.firstInput + b, g, this.gradient.rowOffset(j));
+         return;
+      }
+      if (count == 1)                                    //one sample is just an outer product
+      {
+         Kernels.addOuterProduct(1, this.psi[0], this.inputs[this.firstInput], g);
+         return;
+      }
+      for (int j = 0; j < this.numNodes; j++)            //loops over the nodes
+      {
+         int offset = this.gradient.rowOffset(j);
+         for (int b = 0; b < count; b++)                 //loops over the samples
+            Kernels.axpy(this.psi[b][j], this.inputs[this.firstInput + b], 0, g, offset, this.numInputs);
+      }
+      return;
+   }//public void accumulateGradient(int count)
+
+   /**
+    * Moves the weights along the gradient and then clears the gradient
+    *    w[j][k] += lambda * gradient[j][k]
+    *
+    * @param lambda  the learning factor
+    */
+   public void applyGradient(double lambda)
+   {
+      this.weights.addScaled(lambda, this.gradient);
+      this.gradient.clear();
+      return;
+   }//public void applyGradient(double lambda)
+
+   /**
+    * Moves the weights along the gradient with an optimizer and then clears
+    *    the gradient (see Optimizer)
+    *
+    * @precondition  optimizer is attached to the weights of this layer, and
+    *                optimizer.startStep() has been called for this step
+    * @param optimizer  the optimizer
+    */
+   public void applyGradient(Optimizer optimizer)
+   {
+      optimizer.step(this.weights, this.gradient);
+      this.gradient.clear();
+      return;
+   }//public void applyGradient(Optimizer optimizer)
+
+   /**
+    * Changes the weights straight away with the gradient of the single sample
+    *    in row 0, without going through the gradient array
+    *       w[j][k] += lambda * psi[j] * a[k]
+    *
+    * Inputs that are 0 would not change their weights, so they are skipped and
+    *    their weights are never written. This is what the lock-free trainer
+    *    (HogwildTrainer) uses: with sparse inputs, two threads rarely write
+    *    the same weight.
+    *
+    * @param lambda  the learning factor
+    */
+   public void updateWeights(double lambda)
+   {
+      double[] w = this.weights.getData();
+      double[] a = (this.passRows == null) ? this.inputs[this.firstInput] : null;
+      double[] psi0 = this.psi[0];
+      for (int j = 0; j < this.numNodes; j++)            //loops over the nodes
+      {
+         int offset = this.weights.rowOffset(j);
+         double step = lambda * psi0[j];
+         if (this.passRows != null)
+         {
+            this.passRows.axpy(step, this.firstInput, w, offset);
+            continue;
+         }
+         for (int k = 0; k < this.numInputs; k++)        //loops over the inputs
+            if (a[k] != 0)
+               w[offset + k] += step * a[k];
+      }
+      return;
+   }//public void updateWeights(double lambda)
+
+   /**
+    * Chooses the activation function of the nodes of this layer (see Activations)
+    *    The backward pass uses its derivative, so the two always match.
+    *
+    * @param myActivation  the activation function (the sigmoid to begin with)
+    */
+   public void setActivation(Activation myActivation)
+   {
+      this.activation = myActivation;
+      return;
+   }//public void setActivation(Activation myActivation)
+
+   /**
+    * Getter for the private instance variable Activation activation
+    *
+    * @return activation the private instance variable
+    */
+   public Activation getActivation()
+   {
+      return this.activation;
+   }//public Activation getActivation()
+
+   /**
+    * Gives the layer its training inputs as sparse or packed rows (or null for none)
+    *    Every forward pass over the matrix the rows were made from then uses
+    *    them; any other input goes through the dense loops.
+    *
+    * @param myInputRows  the inputs as sparse or packed rows
+    */
+   public void setInputRows(InputRows myInputRows)
+   {
+      this.inputRows = myInputRows;
+      return;
+   }//public void setInputRows(InputRows myInputRows)
+
+   /**
+    * Chooses whether chooseInputRows(...) packs inputs that are all 0 or 1
+    *    into BitRows from now on
+    *
+    *    BitRows take 1/64 of the memory of the doubles and about 1/20 of the
+    *    memory of SparseRows at the density of the characters, and are as
+    *    fast as SparseRows in online training. In batches they are 5 to 20%
+    *    slower, since every sample walks all its words again for every node.
+    *
+    * @param usePackedInputs  true to pack 0/1 inputs into bits
+    */
+   public static void setPackedInputs(boolean usePackedInputs)
+   {
+      Layer.packInputs = usePackedInputs;
+      return;
+   }//public static void setPackedInputs(boolean usePackedInputs)
+
+   /**
+    * Picks how to keep a matrix of training inputs
+    *    If at most SparseRows.MAX_DENSITY of them are non-zero: BitRows when
+    *    packed inputs are chosen (setPackedInputs) and they are all 0 or 1,
+    *    SparseRows otherwise. null (the dense rows) when more are non-zero.
+    *
+    * @param inputs  the training inputs, [model][node]
+    * @return        the rows to give setInputRows(...)
+    */
+   public static InputRows chooseInputRows(double[][] inputs)
+   {
+      SparseRows sparse = SparseRows.ifSparse(inputs, SparseRows.MAX_DENSITY);
+      if (sparse == null)
+         return null;
+      if (Layer.packInputs)
+      {
+         BitRows bits = BitRows.ifBinary(inputs);
+         if (bits != null)
+            return bits;
+      }
+      return sparse;
+   }//public static InputRows chooseInputRows(double[][] inputs)
+
+   /**
+    * Sets the gradient back to 0 without changing the weights
+    */
+   public void clearGradient()
+   {
+      this.gradient.clear();
+      return;
+   }//public void clearGradient()
+
+   /**
+    * Getter for the private instance variable WeightMatrix gradient
+    *
+    * @return gradient the private instance variable
+    */
+   public WeightMatrix getGradient()
+   {
+      return this.gradient;
+   }//public WeightMatrix getGradient()
+
+   /**
+    * Getter for the private instance variable int maxBatchSize
+    *
+    * @return maxBatchSize the private instance variable
+    */
+   public int getMaxBatchSize()
+   {
+      return this.maxBatchSize;
+   }//public int getMaxBatchSize()
+
+   /**
+    * Getter for theta of the single sample (row 0)
+    *
+    * @return theta[0]
+    */
+   public double[] getTheta()
+   {
+      return this.theta[0];
+   }//public double[] getTheta()
+
+   /**
+    * Getter for theta of one sample in the batch
+    *
+    * @param b    the sample
+    * @return     theta[b]
+    */
+   public double[] getTheta(int b)
+   {
+      return this.theta[b];
+   }//public double[] getTheta(int b)
+
+   /**
+    * Getter for the activations of the single sample (row 0)
+    *
+    * @return activations[0]
+    */
+   public double[] getActivations()
+   {
+      return this.activations[0];
+   }//public double[] getActivations()
+
+   /**
+    * Getter for the activations of one sample in the batch
+    *
+    * @param b    the sample
+    * @return     activations[b]
+    */
+   public double[] getActivations(int b)
+   {
+      return this.activations[b];
+   }//public double[] getActivations(int b)
+
+   /**
+    * Getter for the private instance variable double[][] activations
+    *    Row b holds the activations of sample b of the last batch
+    *
+    * @return activations the private instance variable
+    */
+   public double[][] getActivationRows()
+   {
+      return this.activations;
+   }//public double[][] getActivationRows()
+
+   /**
+    * Getter for omega of the single sample (row 0)
+    *
+    * @return omega[0]
+    */
+   public double[] getOmega()
+   {
+      return this.omega[0];
+   }//public double[] getOmega()
+
+   /**
+    * Getter for psi of the single sample (row 0)
+    *
+    * @return psi[0]
+    */
+   public double[] getPsi()
+   {
+      return this.psi[0];
+   }//public double[] getPsi()
+
+   /**
+    * Getter for psi of one sample in the batch
+    *
+    * @param b    the sample
+    * @return     psi[b]
+    */
+   public double[] getPsi(int b)
+   {
+      return this.psi[b];
+   }//public double[] getPsi(int b)
+}//public class Layer
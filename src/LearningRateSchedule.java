@@ -0,0 +1,249 @@
+/**
+ * This class is how the learning factor (lambda) changes from one pass over
+ *    the models to the next, instead of staying LAMBDA for the whole run.
+ *
+ * After every pass, train() gives the schedule the number of passes made and
+ *    the error of that pass, and the lambda it gets back is used for the next
+ *    pass. With lambda0 the starting lambda:
+ *
+ *    name          lambda after pass n
+ *    constant      lambda0
+ *    step          lambda0 * STEP_FACTOR ^ (n / STEP_PASSES), n / STEP_PASSES
+ *                  rounded down, so it drops every STEP_PASSES passes
+ *    cosine        lambda0 * (MIN_FRACTION + (1 - MIN_FRACTION) * (1 + cos(π n / COSINE_PASSES)) / 2)
+ *                  for n up to COSINE_PASSES, lambda0 * MIN_FRACTION after
+ *    plateau       lambda * PLATEAU_FACTOR whenever the best error has not gone
+ *                  down by PLATEAU_IMPROVEMENT (a fraction of it) in
+ *                  PLATEAU_PASSES passes, else unchanged
+ *    bold driver   lambda * BOLD_DRIVER_UP if the error went down in the last
+ *                  pass, lambda * BOLD_DRIVER_DOWN if it went up
+ *
+ *    None of them goes below lambda0 * MIN_FRACTION, and the bold driver
+ *    does not go above lambda0 * BOLD_DRIVER_MAX.
+ *
+ * step and cosine only look at n, which carries on from a checkpoint, so they
+ *    pick up where they were when resuming. plateau and the bold driver go by
+ *    the errors they have seen, which are not saved, so after resuming they
+ *    start again from lambda0.
+ *
+ * The classic bold driver also throws away a pass that made the error go up.
+ *    Here that pass is kept and only lambda is cut, since undoing it would
+ *    mean copying every weight before every pass.
+ */
+public abstract class LearningRateSchedule
+{
+   /*
+    * The values forName(...) uses for the constants of each schedule
+    *
+    * Use these variables to change the defaults
+    */
+   final static int STEP_PASSES = 10000;
+   final static double STEP_FACTOR = 0.5;
+   final static int COSINE_PASSES = 100000;
+   final static int PLATEAU_PASSES = 1000;
+   final static double PLATEAU_FACTOR = 0.5;
+   final static double PLATEAU_IMPROVEMENT = 0.001;
+   final static double BOLD_DRIVER_UP = 1.05;
+   final static double BOLD_DRIVER_DOWN = 0.5;
+   final static double BOLD_DRIVER_MAX = 10;
+   final static double MIN_FRACTION = 0.01;
+
+   private String name;          //what forName(...) calls it
+   protected double lambda0;     //the learning factor it starts from
+
+   /**
+    * Constructor for the class LearningRateSchedule
+    *
+    * @param myName     what forName(...) calls it
+    * @param myLambda0  the learning factor it starts from
+    */
+   protected LearningRateSchedule(String myName, double myLambda0)
+   {
+      this.name = myName;
+      this.lambda0 = myLambda0;
+   }//protected LearningRateSchedule(String myName, double myLambda0)
+
+   /**
+    * Makes a schedule by its name (see the table above), with the default
+    *    values of its constants
+    *
+    * @param name    constant, step, cosine, plateau, or bold driver, in any case
+    * @param lambda  the learning factor it starts from
+    * @return        the schedule
+    * @throws IllegalArgumentException  if there is none by that name
+    */
+   public static LearningRateSchedule forName(String name, double lambda)
+   {
+      String key = name.trim().toLowerCase();
+      if (key.equals("constant"))
+         return new Constant(lambda);
+      if (key.equals("step"))
+         return new Step(lambda, LearningRateSchedule.STEP_PASSES, LearningRateSchedule.STEP_FACTOR);
+      if (key.equals("cosine"))
+         return new Cosine(lambda, LearningRateSchedule.COSINE_PASSES);
+      if (key.equals("plateau"))
+         return new Plateau(lambda, LearningRateSchedule.PLATEAU_PASSES, LearningRateSchedule.PLATEAU_FACTOR,
+                            LearningRateSchedule.PLATEAU_IMPROVEMENT);
+      if (key.equals("bold driver"))
+         return new BoldDriver(lambda, LearningRateSchedule.BOLD_DRIVER_UP, LearningRateSchedule.BOLD_DRIVER_DOWN);
+      throw new IllegalArgumentException("No learning rate schedule named \"" + name + "\"");
+   }//public static LearningRateSchedule forName(String name, double lambda)
+
+   /**
+    * Finds the learning factor for the next pass
+    *
+    * @param pass    the number of passes made so far
+    * @param error   the error of the last pass
+    * @return        lambda for the next pass
+    */
+   public abstract double lambdaAfter(int pass, double error);
+
+   /**
+    * Keeps a learning factor between lambda0 * MIN_FRACTION and lambda0 * max
+    *
+    * @param lambda  the learning factor
+    * @param max     the most it can be, as a multiple of lambda0
+    * @return        lambda, moved into that range
+    */
+   protected double clamp(double lambda, double max)
+   {
+      return Math.max(this.lambda0 * LearningRateSchedule.MIN_FRACTION, Math.min(this.lambda0 * max, lambda));
+   }//protected double clamp(double lambda, double max)
+
+   /**
+    * Getter for the private instance variable String name
+    *
+    * @return name the private instance variable
+    */
+   public String getName()
+   {
+      return this.name;
+   }//public String getName()
+
+   /**
+    * The same lambda for every pass
+    */
+   private static class Constant extends LearningRateSchedule
+   {
+      private Constant(double myLambda0)
+      {
+         super("constant", myLambda0);
+      }
+
+      public double lambdaAfter(int pass, double error)
+      {
+         return this.lambda0;
+      }
+   }//private static class Constant
+
+   /**
+    * lambda cut by the same factor every so many passes
+    */
+   private static class Step extends LearningRateSchedule
+   {
+      private final int passes;        //the passes between drops
+      private final double factor;     //what lambda is multiplied by at each drop
+
+      private Step(double myLambda0, int myPasses, double myFactor)
+      {
+         super("step", myLambda0);
+         this.passes = myPasses;
+         this.factor = myFactor;
+      }
+
+      public double lambdaAfter(int pass, double error)
+      {
+         return this.clamp(this.lambda0 * Math.pow(this.factor, pass / this.passes), 1);
+      }
+   }//private static class Step
+
+   /**
+    * lambda down half a cosine, from lambda0 to its smallest
+    */
+   private static class Cosine extends LearningRateSchedule
+   {
+      private final int passes;        //the passes it takes to get to the smallest lambda
+
+      private Cosine(double myLambda0, int myPasses)
+      {
+         super("cosine", myLambda0);
+         this.passes = myPasses;
+      }
+
+      public double lambdaAfter(int pass, double error)
+      {
+         double least = LearningRateSchedule.MIN_FRACTION;
+         double x = Math.min(1.0, (double) pass / this.passes);
+         return this.lambda0 * (least + (1 - least) * (1 + Math.cos(Math.PI * x)) / 2);
+      }
+   }//private static class Cosine
+
+   /**
+    * lambda cut whenever the error stops going down
+    */
+   private static class Plateau extends LearningRateSchedule
+   {
+      private final int passes;        //the passes it waits for the error to go down
+      private final double factor;     //what lambda is multiplied by when it does not
+      private final double improvement;//the fraction of the best error it has to go down by
+      private double lambda;           //the learning factor now
+      private double best;             //the best error since lambda last changed
+      private int bestPass;            //the pass of that error
+
+      private Plateau(double myLambda0, int myPasses, double myFactor, double myImprovement)
+      {
+         super("plateau", myLambda0);
+         this.passes = myPasses;
+         this.factor = myFactor;
+         this.improvement = myImprovement;
+         this.lambda = myLambda0;
+         this.best = Double.POSITIVE_INFINITY;
+         this.bestPass = -1;
+      }
+
+      public double lambdaAfter(int pass, double error)
+      {
+         if (this.bestPass < 0 || error < this.best * (1 - this.improvement))
+         {
+            this.best = error;
+            this.bestPass = pass;
+         }
+         else if (pass - this.bestPass >= this.passes)
+         {
+            this.lambda = this.clamp(this.lambda * this.factor, 1);
+            this.bestPass = pass;                  //gives the new lambda its own passes
+         }
+         return this.lambda;
+      }
+   }//private static class Plateau
+
+   /**
+    * lambda up a little while the error goes down, cut hard when it goes up
+    */
+   private static class BoldDriver extends LearningRateSchedule
+   {
+      private final double up;         //what lambda is multiplied by when the error went down
+      private final double down;       //what lambda is multiplied by when the error went up
+      private double lambda;           //the learning factor now
+      private double lastError;        //the error of the pass before
+
+      private BoldDriver(double myLambda0, double myUp, double myDown)
+      {
+         super("bold driver", myLambda0);
+         this.up = myUp;
+         this.down = myDown;
+         this.lambda = myLambda0;
+         this.lastError = Double.NaN;
+      }
+
+      public double lambdaAfter(int pass, double error)
+      {
+         if (error < this.lastError)
+            this.lambda = this.clamp(this.lambda * this.up, LearningRateSchedule.BOLD_DRIVER_MAX);
+         else if (error > this.lastError || Double.isNaN(error))
+            this.lambda = this.clamp(this.lambda * this.down, LearningRateSchedule.BOLD_DRIVER_MAX);
+         this.lastError = error;
+         return this.lambda;
+      }
+   }//private static class BoldDriver
+}//public abstract class LearningRateSchedule
@@ -0,0 +1,216 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * This class is a trained network for inference only that reads its weights
+ *    straight out of a model file (see ModelFile) mapped into memory.
+ *
+ * Opening one maps the file with FileChannel.map and reads the 32-byte header,
+ *    which also says the activation function of each layer; no weight is
+ *    read or copied. The operating system brings in the pages of
+ *    weights the first time predict(...) touches them, and every process that
+ *    maps the same file shares the same copy in the page cache. So the time to
+ *    open a model does not grow with the size of the model, and ten scoring
+ *    processes on one host hold the weights in memory once, not ten times.
+ *
+ * The weights are read with absolute gets on a read-only little-endian view
+ *    (Kernels.dot(double[], int, DoubleBuffer, int, int)), in the same row
+ *    order as WeightMatrix, so the outputs are the same as TrainedModel's.
+ *    Files saved as floats are read as floats and added up in double.
+ *
+ * The checksum is not checked when the file is opened, since that would read
+ *    every weight; call verify() for that. The mapping stays valid after the
+ *    file is closed and goes away when the MappedModel is garbage collected.
+ *    One mapping can hold at most 2 GB (about 268 million double weights).
+ *
+ * Like TrainedModel, it is immutable and any number of threads can call
+ *    predict(...) at the same time.
+ */
+public final class MappedModel implements Predictor
+{
+   private final File file;               //the model file
+   private final int numInputs;           //the number of inputs in the network
+   private final int numHiddens;          //the number of hidden layer nodes in the network
+   private final int numOutputs;          //the number of outputs in the network
+   private final int checksum;            //the CRC32 in the header
+   private final long numWeightBytes;     //the number of bytes of weights after the header
+
+   private final MappedByteBuffer map;    //the whole file
+   private final DoubleBuffer doubles;    //the weights, when saved as doubles (else null)
+   private final FloatBuffer floats;      //the weights, when saved as floats (else null)
+   private final int offsetji;            //the index of the first weight of weightsji
+   private final Activation hiddenActivation;   //the activation function of the hidden layer
+   private final Activation outputActivation;   //the activation function of the output layer
+
+   /*
+    * The hidden layer of each thread, made the first time that thread calls
+    *    predict(...) and reused after that
+    */
+   private final ThreadLocal<double[]> hidden;
+
+   /**
+    * Constructor for the class MappedModel
+    *    Maps the file and checks its header
+    *
+    * @param myFile  the model file
+    * @throws IOException  if the file cannot be mapped (or is larger than one
+    *                      mapping can hold) or is not a model file
+    */
+   public MappedModel(File myFile) throws IOException
+   {
+      this.file = myFile;
+      RandomAccessFile in = new RandomAccessFile(myFile, "r");
+      try
+      {
+         if (in.length() > Integer.MAX_VALUE)    //map(...) cannot map more than this at once
+            throw new IOException(myFile + " is too large to map (" + in.length() + " bytes)");
+         this.map = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+      }
+      finally
+      {
+         in.close();
+      }
+      this.map.order(ByteOrder.LITTLE_ENDIAN);
+      if (this.map.capacity() < ModelFile.HEADER_BYTES)
+         throw new IOException(myFile + " is not a model file");
+      ModelFile.checkHeader(this.map, myFile);
+
+      this.numInputs = this.map.getInt(8);
+      this.numHiddens = this.map.getInt(12);
+      this.numOutputs = this.map.getInt(16);
+      this.checksum = this.map.getInt(24);
+      this.hiddenActivation = Activations.forCode(this.map.getShort(28));
+      this.outputActivation = Activations.forCode(this.map.getShort(30));
+      int bytesPerWeight = this.map.getInt(20);
+      long offset = (long) this.numHiddens * this.numInputs;    //in long, so a damaged header cannot overflow it
+      if (offset > Integer.MAX_VALUE)
+         throw new IOException(myFile + " has a bad header (" + offset + " weights in the first layer)");
+      this.offsetji = (int) offset;
+      this.numWeightBytes = ModelFile.weightBytes(this.map);
+      if (this.map.capacity() - ModelFile.HEADER_BYTES < this.numWeightBytes)
+         throw new IOException(myFile + " is shorter than its header says");
+
+      this.map.position(ModelFile.HEADER_BYTES);
+      ByteBuffer weights = this.map.slice().order(ByteOrder.LITTLE_ENDIAN);
+      this.map.position(0);
+      this.doubles = bytesPerWeight == 8 ? weights.asDoubleBuffer() : null;
+      this.floats = bytesPerWeight == 4 ? weights.asFloatBuffer() : null;
+
+      this.hidden = new ThreadLocal<double[]>()
+      {
+         protected double[] initialValue()
+         {
+            return new double[MappedModel.this.numHiddens];
+         }
+      };
+   }//public MappedModel(File myFile)
+
+   /**
+    * The dot product of an activation array and one row of weights in the file
+    *
+    * @param a       the activations
+    * @param offset  the index of the first weight of the row
+    * @param n       the length of the row
+    * @return        the dot product
+    */
+   private double dot(double[] a, int offset, int n)
+   {
+      if (this.doubles != null)
+         return Kernels.dot(a, 0, this.doubles, offset, n);
+      return Kernels.dot(a, 0, this.floats, offset, n);
+   }//private double dot(double[] a, int offset, int n)
+
+   /**
+    * Evaluates the network for one input
+    *
+    * @param input   the activations of the input layer (length numInputs)
+    * @return        a new array with the outputs
+    */
+   public double[] predict(double[] input)
+   {
+      return this.predict(input, new double[this.numOutputs]);
+   }//public double[] predict(double[] input)
+
+   /**
+    * Evaluates the network for one input, putting the outputs in out
+    *    Nothing is allocated once the calling thread has been here before.
+    *
+    * @param input   the activations of the input layer (length numInputs)
+    * @param out     where to put the outputs (length numOutputs)
+    * @return        out
+    */
+   public double[] predict(double[] input, double[] out)
+   {
+      if (input.length != this.numInputs || out.length != this.numOutputs)
+         throw new IllegalArgumentException("Expected " + this.numInputs + " inputs and "
+               + this.numOutputs + " outputs, got " + input.length + " and " + out.length);
+      double[] h = this.hidden.get();
+      for (int j = 0; j < this.numHiddens; j++)             //loops over the hidden nodes
+         h[j] = this.hiddenActivation.apply(this.dot(input, j * this.numInputs, this.numInputs));
+      for (int i = 0; i < this.numOutputs; i++)             //loops over the outputs
+         out[i] = this.outputActivation.apply(this.dot(h, this.offsetji + i * this.numHiddens, this.numHiddens));
+      return out;
+   }//public double[] predict(double[] input, double[] out)
+
+   /**
+    * Checks the weights against the checksum in the header
+    *    This reads every page of the file.
+    *
+    * @throws IOException  if the checksum does not match
+    */
+   public void verify() throws IOException
+   {
+      ByteBuffer weights = this.map.duplicate();
+      weights.limit((int) (ModelFile.HEADER_BYTES + this.numWeightBytes));
+      weights.position(ModelFile.HEADER_BYTES);
+      byte[] chunk = new byte[64 * 1024];
+      CRC32 crc = new CRC32();
+      while (weights.hasRemaining())
+      {
+         int length = Math.min(chunk.length, weights.remaining());
+         weights.get(chunk, 0, length);
+         crc.update(chunk, 0, length);
+      }
+      if ((int) crc.getValue() != this.checksum)
+         throw new IOException(this.file + " is damaged (the checksum does not match)");
+      return;
+   }//public void verify()
+
+   /**
+    * Getter for the private instance variable int numInputs
+    *
+    * @return numInputs the private instance variable
+    */
+   public int getNumInputs()
+   {
+      return this.numInputs;
+   }//public int getNumInputs()
+
+   /**
+    * Getter for the private instance variable int numHiddens
+    *
+    * @return numHiddens the private instance variable
+    */
+   public int getNumHiddens()
+   {
+      return this.numHiddens;
+   }//public int getNumHiddens()
+
+   /**
+    * Getter for the private instance variable int numOutputs
+    *
+    * @return numOutputs the private instance variable
+    */
+   public int getNumOutputs()
+   {
+      return this.numOutputs;
+   }//public int getNumOutputs()
+}//public final class MappedModel
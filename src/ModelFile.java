@@ -0,0 +1,544 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * This class reads and writes the two layers of weights of a network.
+ *
+ * The model file is binary and describes itself, so nothing has to be typed
+ *    in to read it back. Every number is little-endian:
+ *
+ *    offset   size   what
+ *     0       4      MAGIC, the bytes "XORW"
+ *     4       4      VERSION
+ *     8       4      numInputs
+ *    12       4      numHiddens
+ *    16       4      numOutputs
+ *    20       4      bytes per weight: 8 (double) or 4 (float)
+ *    24       4      CRC32 of everything after the header
+ *    28       2      the activation function of the hidden layer (Activations.codeOf)
+ *    30       2      the activation function of the output layer
+ *    32              weightskj, row after row (numHiddens rows of numInputs)
+ *                    weightsji, row after row (numOutputs rows of numHiddens)
+ *
+ *    Version 1 had 0 in bytes 28 to 31, which is the code of the sigmoid,
+ *    the only activation function there was then, so it is read the same way.
+ *
+ *    The rows are in the same order as WeightMatrix.getData(), so each layer is
+ *    one bulk copy between the array and a ByteBuffer.
+ *
+ * The text format (one weight per line, wkj with k on the outside, then wji
+ *    with j on the outside, as in weights.txt) can still be read and written
+ *    with readText(...) and writeText(...). The number of hidden nodes is
+ *    worked out from the number of weights in the file. It does not say what
+ *    the activation functions are.
+ */
+public class ModelFile
+{
+   /*
+    * The first four bytes of every model file ("XORW" when read as text)
+    */
+   final static int MAGIC = 0x57524F58;
+
+   /*
+    * The version of the layout above
+    */
+   final static int VERSION = 2;
+
+   /*
+    * The oldest version that can still be read
+    */
+   final static int OLDEST_VERSION = 1;
+
+   /*
+    * The number of bytes before the first weight
+    */
+   final static int HEADER_BYTES = 32;
+
+   private int numInputs;              //the number of inputs in the network
+   private int numHiddens;             //the number of hidden layer nodes in the network
+   private int numOutputs;             //the number of outputs in the network
+   private boolean floatPrecision;     //whether the weights were saved as floats
+   private WeightMatrix weightskj;     //weights between input and hidden layer (hidden x input)
+   private WeightMatrix weightsji;     //weights between hidden and output layer (output x hidden)
+   private Activation hiddenActivation;//the activation function of the hidden layer, null if not known
+   private Activation outputActivation;//the activation function of the output layer, null if not known
+
+   /**
+    * Constructor for the class ModelFile with the sigmoid in both layers
+    *
+    * @param myWeightskj      the weights between input and hidden layer (hidden x input)
+    * @param myWeightsji      the weights between hidden and output layer (output x hidden)
+    * @param myFloatPrecision whether the weights are (to be) saved as floats
+    */
+   public ModelFile(WeightMatrix myWeightskj, WeightMatrix myWeightsji, boolean myFloatPrecision)
+   {
+      this(myWeightskj, myWeightsji, myFloatPrecision, Activations.SIGMOID, Activations.SIGMOID);
+   }//public ModelFile(WeightMatrix myWeightskj, WeightMatrix myWeightsji, boolean myFloatPrecision)
+
+   /**
+    * Constructor for the class ModelFile
+    *
+    * @param myWeightskj         the weights between input and hidden layer (hidden x input)
+    * @param myWeightsji         the weights between hidden and output layer (output x hidden)
+    * @param myFloatPrecision    whether the weights are (to be) saved as floats
+    * @param myHiddenActivation  the activation function of the hidden layer (null if not known)
+    * @param myOutputActivation  the activation function of the output layer (null if not known)
+    */
+   public ModelFile(WeightMatrix myWeightskj, WeightMatrix myWeightsji, boolean myFloatPrecision,
+                    Activation myHiddenActivation, Activation myOutputActivation)
+   {
+      this.weightskj = myWeightskj;
+      this.weightsji = myWeightsji;
+      this.floatPrecision = myFloatPrecision;
+      this.hiddenActivation = myHiddenActivation;
+      this.outputActivation = myOutputActivation;
+      this.numInputs = myWeightskj.getNumCols();
+      this.numHiddens = myWeightskj.getNumRows();
+      this.numOutputs = myWeightsji.getNumRows();
+   }//public ModelFile(...)
+
+   /**
+    * Finds the number of bytes of the weights after the header
+    *
+    * @return  (numHiddens * numInputs + numOutputs * numHiddens) * bytes per weight
+    */
+   private int weightBytes()
+   {
+      int numWeights = this.numHiddens * this.numInputs + this.numOutputs * this.numHiddens;
+      return numWeights * (this.floatPrecision ? 4 : 8);
+   }//private int weightBytes()
+
+   /**
+    * Finds the size of the model file
+    *
+    * @return  the number of bytes of the header and the weights
+    */
+   int numBytes()
+   {
+      return ModelFile.HEADER_BYTES + this.weightBytes();
+   }//int numBytes()
+
+   /**
+    * Writes the model file
+    *
+    * @param file    where to write it
+    * @throws IOException  if the file cannot be written
+    */
+   public void write(File file) throws IOException
+   {
+      ByteBuffer buffer = ByteBuffer.allocate(this.numBytes()).order(ByteOrder.LITTLE_ENDIAN);
+      this.writeTo(buffer);
+      buffer.flip();
+
+      FileOutputStream out = new FileOutputStream(file);
+      try
+      {
+         FileChannel channel = out.getChannel();
+         while (buffer.hasRemaining())
+            channel.write(buffer);
+      }
+      finally
+      {
+         out.close();
+      }
+      return;
+   }//public void write(File file)
+
+   /**
+    * Puts the whole model file (header and weights) into a buffer, starting at
+    *    its position and moving the position past the end
+    *
+    * @param buffer  a little-endian buffer on the heap with numBytes() bytes remaining
+    */
+   void writeTo(ByteBuffer buffer)
+   {
+      int start = buffer.position();
+      buffer.position(start + ModelFile.HEADER_BYTES);
+      ByteBuffer weights = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+      if (this.floatPrecision)
+      {
+         weights.asFloatBuffer().put(FloatNetwork.toFloats(this.weightskj.getData()))
+                                .put(FloatNetwork.toFloats(this.weightsji.getData()));
+      }
+      else
+      {
+         weights.asDoubleBuffer().put(this.weightskj.getData()).put(this.weightsji.getData());
+      }
+      CRC32 crc = new CRC32();
+      crc.update(buffer.array(), buffer.arrayOffset() + start + ModelFile.HEADER_BYTES, this.weightBytes());
+
+      buffer.putInt(start, ModelFile.MAGIC);
+      buffer.putInt(start + 4, ModelFile.VERSION);
+      buffer.putInt(start + 8, this.numInputs);
+      buffer.putInt(start + 12, this.numHiddens);
+      buffer.putInt(start + 16, this.numOutputs);
+      buffer.putInt(start + 20, this.floatPrecision ? 4 : 8);
+      buffer.putInt(start + 24, (int) crc.getValue());
+      buffer.putShort(start + 28, (short) Activations.codeOf(this.hiddenActivation != null ?
+                                                             this.hiddenActivation : Activations.SIGMOID));
+      buffer.putShort(start + 30, (short) Activations.codeOf(this.outputActivation != null ?
+                                                             this.outputActivation : Activations.SIGMOID));
+      buffer.position(start + this.numBytes());
+      return;
+   }//void writeTo(ByteBuffer buffer)
+
+   /**
+    * Reads a model file written by write(...)
+    *
+    * @param file    the file
+    * @return        the weights in the file
+    * @throws IOException  if the file cannot be read, is not a model file, is
+    *                      a newer version, does not match its checksum, or is
+    *                      larger than one buffer can hold
+    */
+   public static ModelFile read(File file) throws IOException
+   {
+      FileInputStream in = new FileInputStream(file);
+      try
+      {
+         FileChannel channel = in.getChannel();
+         if (channel.size() > Integer.MAX_VALUE)
+            throw new IOException(file + " is too large to read (" + channel.size() + " bytes)");
+         ByteBuffer buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+         ModelFile.readFully(channel, buffer);
+         buffer.flip();
+         return ModelFile.readFrom(buffer, file);
+      }
+      finally
+      {
+         in.close();
+      }
+   }//public static ModelFile read(File file)
+
+   /**
+    * Reads a whole model file (header and weights) out of a buffer, starting at
+    *    its position and moving the position past the end
+    *
+    * @param buffer  a little-endian buffer on the heap
+    * @param file    where the buffer came from (for the error messages)
+    * @return        the weights
+    * @throws IOException  if the buffer does not hold a whole model file that
+    *                      matches its checksum
+    */
+   static ModelFile readFrom(ByteBuffer buffer, File file) throws IOException
+   {
+      if (buffer.remaining() < ModelFile.HEADER_BYTES)
+         throw new EOFException(file + " ends too soon");
+      ByteBuffer header = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+      ModelFile model = ModelFile.fromHeader(header, file);
+      if (buffer.remaining() < model.numBytes())
+         throw new EOFException(file + " ends too soon");
+
+      int start = buffer.position() + ModelFile.HEADER_BYTES;
+      CRC32 crc = new CRC32();
+      crc.update(buffer.array(), buffer.arrayOffset() + start, model.weightBytes());
+      if ((int) crc.getValue() != header.getInt(24))
+         throw new IOException(file + " is damaged (the checksum does not match)");
+
+      buffer.position(start);
+      ByteBuffer weights = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+      if (model.floatPrecision)
+      {
+         float[] floats = new float[model.weightBytes() / 4];
+         weights.asFloatBuffer().get(floats);
+         double[] kj = model.weightskj.getData();
+         double[] ji = model.weightsji.getData();
+         for (int x = 0; x < kj.length; x++)
+            kj[x] = floats[x];
+         for (int x = 0; x < ji.length; x++)
+            ji[x] = floats[kj.length + x];
+      }
+      else
+      {
+         weights.asDoubleBuffer().get(model.weightskj.getData()).get(model.weightsji.getData());
+      }
+      buffer.position(start + model.weightBytes());
+      return model;
+   }//static ModelFile readFrom(ByteBuffer buffer, File file)
+
+   /**
+    * Checks the header of a model file and makes empty weight matrices of the
+    *    sizes it gives
+    *    Nothing is made until the weights the header asks for are known to fit
+    *    in what is left of the buffer, so a damaged header cannot make it run
+    *    out of memory.
+    *
+    * @param header  the file from its header on, little-endian
+    * @param file    the file (for the error messages)
+    * @return        a ModelFile with the dimensions, precision, and activation
+    *                functions of the file
+    * @throws IOException  if the header is not one this class wrote, or the
+    *                      weights it gives do not fit in the buffer
+    */
+   static ModelFile fromHeader(ByteBuffer header, File file) throws IOException
+   {
+      ModelFile.checkHeader(header, file);
+      if (ModelFile.weightBytes(header) > header.remaining() - ModelFile.HEADER_BYTES)
+         throw new EOFException(file + " ends too soon");
+      int inputs = header.getInt(8);
+      int hiddens = header.getInt(12);
+      int outputs = header.getInt(16);
+      return new ModelFile(new WeightMatrix(hiddens, inputs), new WeightMatrix(outputs, hiddens), header.getInt(20) == 4,
+                           Activations.forCode(header.getShort(28)), Activations.forCode(header.getShort(30)));
+   }//static ModelFile fromHeader(ByteBuffer header, File file)
+
+   /**
+    * Works out the bytes of weights a header gives, in long so that no
+    *    header can make it overflow
+    *
+    * @param header  the header, already checked by checkHeader(...)
+    * @return        the number of bytes of weightskj and weightsji, or
+    *                Long.MAX_VALUE if either layer has more weights than an
+    *                array can hold
+    */
+   static long weightBytes(ByteBuffer header)
+   {
+      long inputs = header.getInt(8);
+      long hiddens = header.getInt(12);
+      long outputs = header.getInt(16);
+      if (hiddens * inputs > Integer.MAX_VALUE || outputs * hiddens > Integer.MAX_VALUE)
+         return Long.MAX_VALUE;
+      return (hiddens * inputs + outputs * hiddens) * header.getInt(20);
+   }//static long weightBytes(ByteBuffer header)
+
+   /**
+    * Checks the magic, the version, and that the dimensions, precision, and
+    *    activation functions make sense
+    *
+    * @param header  the first HEADER_BYTES bytes of the file, little-endian
+    * @param file    the file (for the error messages)
+    * @throws IOException  if the header is not one this class wrote
+    */
+   static void checkHeader(ByteBuffer header, File file) throws IOException
+   {
+      if (header.getInt(0) != ModelFile.MAGIC)
+         throw new IOException(file + " is not a model file");
+      if (header.getInt(4) < ModelFile.OLDEST_VERSION || header.getInt(4) > ModelFile.VERSION)
+         throw new IOException(file + " is version " + header.getInt(4) + " but only versions "
+               + ModelFile.OLDEST_VERSION + " to " + ModelFile.VERSION + " can be read");
+      int precision = header.getInt(20);
+      if (header.getInt(8) <= 0 || header.getInt(12) <= 0 || header.getInt(16) <= 0
+            || (precision != 4 && precision != 8))
+         throw new IOException(file + " has a bad header");
+      try
+      {
+         Activations.forCode(header.getShort(28));
+         Activations.forCode(header.getShort(30));
+      }
+      catch (IllegalArgumentException e)
+      {
+         throw new IOException(file + " has a bad header (" + e.getMessage() + ")");
+      }
+      return;
+   }//static void checkHeader(ByteBuffer header, File file)
+
+   /**
+    * Reads from a channel until the buffer is full
+    *
+    * @param channel the channel
+    * @param buffer  the buffer to fill
+    * @throws IOException  if the channel ends first
+    */
+   static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException
+   {
+      while (buffer.hasRemaining())
+         if (channel.read(buffer) < 0)
+            throw new EOFException("The file ends too soon");
+      return;
+   }//static void readFully(FileChannel channel, ByteBuffer buffer)
+
+   /**
+    * Writes the weights as text, one per line, in the order of weights.txt
+    *    (wkj with k on the outside, then wji with j on the outside)
+    *
+    * @param file    where to write it
+    * @throws IOException  if the file cannot be written
+    */
+   public void writeText(File file) throws IOException
+   {
+      BufferedWriter out = new BufferedWriter(new FileWriter(file));
+      try
+      {
+         for (int k = 0; k < this.numInputs; k++)
+            for (int j = 0; j < this.numHiddens; j++)
+            {
+               out.write(this.weightText(this.weightskj.get(j, k)));
+               out.newLine();
+            }
+         for (int j = 0; j < this.numHiddens; j++)
+            for (int i = 0; i < this.numOutputs; i++)
+            {
+               out.write(this.weightText(this.weightsji.get(i, j)));
+               out.newLine();
+            }
+      }//try
+      finally
+      {
+         out.close();
+      }
+      return;
+   }//public void writeText(File file)
+
+   /**
+    * Turns one weight into text
+    *    A float when saving in single precision, so the file is no more
+    *    precise than the weights were
+    *
+    * @param weight  the weight
+    * @return        the weight as text
+    */
+   private String weightText(double weight)
+   {
+      if (this.floatPrecision)
+         return Float.toString((float) weight);
+      return Double.toString(weight);
+   }//private String weightText(double weight)
+
+   /**
+    * Reads a text file of weights in the order of weights.txt
+    *    The number of hidden nodes is the number of weights divided by
+    *    (numInputs + numOutputs). Anything on a line that is not a number
+    *    (such as the header old versions wrote) is skipped.
+    *
+    * @param file          the file
+    * @param numInputs     the number of inputs in the network
+    * @param numOutputs    the number of outputs in the network
+    * @return              the weights in the file (with no activation functions)
+    * @throws IOException  if the file cannot be read or has the wrong number of weights
+    */
+   public static ModelFile readText(File file, int numInputs, int numOutputs) throws IOException
+   {
+      List<Double> values = new ArrayList<Double>();
+      BufferedReader in = new BufferedReader(new FileReader(file));
+      try
+      {
+         String line = in.readLine();
+         while (line != null)
+         {
+            for (String token : line.trim().split("\\s+"))
+               try
+               {
+                  if (token.length() > 0)
+                     values.add(Double.parseDouble(token));
+               }
+               catch (NumberFormatException e)
+               {
+                  //not a weight
+               }
+            line = in.readLine();
+         }
+      }//try
+      finally
+      {
+         in.close();
+      }
+
+      int numHiddens = values.size() / (numInputs + numOutputs);
+      if (numHiddens == 0 || numHiddens * (numInputs + numOutputs) != values.size())
+         throw new IOException(file + " has " + values.size() + " weights, which is not a whole number of hidden nodes for "
+               + numInputs + " inputs and " + numOutputs + " outputs");
+
+      ModelFile model = new ModelFile(new WeightMatrix(numHiddens, numInputs),
+                                      new WeightMatrix(numOutputs, numHiddens), false, null, null);
+      for (int k = 0; k < numInputs; k++)
+         for (int j = 0; j < numHiddens; j++)
+            model.weightskj.set(j, k, values.get(k * numHiddens + j));
+      for (int j = 0; j < numHiddens; j++)
+         for (int i = 0; i < numOutputs; i++)
+            model.weightsji.set(i, j, values.get(numInputs * numHiddens + j * numOutputs + i));
+      return model;
+   }//public static ModelFile readText(File file, int numInputs, int numOutputs)
+
+   /**
+    * Getter for the private instance variable int numInputs
+    *
+    * @return numInputs the private instance variable
+    */
+   public int getNumInputs()
+   {
+      return this.numInputs;
+   }//public int getNumInputs()
+
+   /**
+    * Getter for the private instance variable int numHiddens
+    *
+    * @return numHiddens the private instance variable
+    */
+   public int getNumHiddens()
+   {
+      return this.numHiddens;
+   }//public int getNumHiddens()
+
+   /**
+    * Getter for the private instance variable int numOutputs
+    *
+    * @return numOutputs the private instance variable
+    */
+   public int getNumOutputs()
+   {
+      return this.numOutputs;
+   }//public int getNumOutputs()
+
+   /**
+    * Getter for the private instance variable boolean floatPrecision
+    *
+    * @return floatPrecision the private instance variable
+    */
+   public boolean isFloatPrecision()
+   {
+      return this.floatPrecision;
+   }//public boolean isFloatPrecision()
+
+   /**
+    * Getter for the private instance variable WeightMatrix weightskj
+    *
+    * @return weightskj the private instance variable
+    */
+   public WeightMatrix getWeightskj()
+   {
+      return this.weightskj;
+   }//public WeightMatrix getWeightskj()
+
+   /**
+    * Getter for the private instance variable WeightMatrix weightsji
+    *
+    * @return weightsji the private instance variable
+    */
+   public WeightMatrix getWeightsji()
+   {
+      return this.weightsji;
+   }//public WeightMatrix getWeightsji()
+
+   /**
+    * Getter for the private instance variable Activation hiddenActivation
+    *
+    * @return hiddenActivation the private instance variable (null if the file did not say)
+    */
+   public Activation getHiddenActivation()
+   {
+      return this.hiddenActivation;
+   }//public Activation getHiddenActivation()
+
+   /**
+    * Getter for the private instance variable Activation outputActivation
+    *
+    * @return outputActivation the private instance variable (null if the file did not say)
+    */
+   public Activation getOutputActivation()
+   {
+      return this.outputActivation;
+   }//public Activation getOutputActivation()
+}//public class ModelFile
@@ -0,0 +1,464 @@
+/**
+ * This class is the way the weights are changed once a gradient has been
+ *    found: plain gradient descent, or one of the methods that keep some state
+ *    for every weight from one step to the next.
+ *
+ * The gradient g is the change we want (the negative derivative of the error),
+ *    as Layer keeps it. For each weight w, with lambda the learning factor:
+ *
+ *    name        state per weight    the step
+ *    sgd         none                w += lambda * g
+ *    momentum    v                   v = mu * v + g;  w += lambda * v
+ *    nesterov    v                   v = mu * v + g;  w += lambda * (g + mu * v)
+ *    rmsprop     s                   s = rho * s + (1 - rho) * g^2
+ *                                    w += lambda * g / (√s + epsilon)
+ *    adam        m, v                m = beta1 * m + (1 - beta1) * g
+ *                                    v = beta2 * v + (1 - beta2) * g^2
+ *                                    w += lambda * m^ / (√v^ + epsilon)
+ *                                    (m^ and v^ corrected for starting at 0,
+ *                                    m / (1 - beta1^t) and v / (1 - beta2^t))
+ *
+ * The optimizer is attached to the weight matrices it changes (attach(...)),
+ *    and keeps the state of all of them in one flat array:
+ *
+ *    index    what
+ *      0      the kind of optimizer (KIND_...)
+ *      1      t, the number of steps taken
+ *      2      every slot of matrix 0, slot after slot, each as long as the
+ *             matrix; then every slot of matrix 1; and so on
+ *
+ *    getState() hands out that array as it is, which is what a Checkpoint
+ *    saves, and setState(...) puts a saved one back. Plain gradient descent
+ *    keeps no state, so its array is empty.
+ *
+ * One step of the network is startStep() and then step(weights, gradient) for
+ *    every matrix. Every weight moves on every step, even where g is 0, since
+ *    the state keeps moving it, so an optimizer with state cannot skip the
+ *    inputs that are 0 the way plain gradient descent can.
+ *
+ * Passes to reach an error of 1e-9 (XOROptimized.OKAY_ERROR), each line from
+ *    the same random starting weights ("-" means it was not reached):
+ *
+ *                               lambda   characters (400 in,    patterns (2 in,
+ *                                        20 hidden, 25 models)  5 hidden)
+ *    online (batch size 1)
+ *       sgd                      0.1     7,595                  - in 2,000,000 (2.5e-6)
+ *       momentum                 0.1       861                  - in 2,000,000 (2.5e-7)
+ *       nesterov                 0.1       868                  - in 2,000,000 (2.5e-7)
+ *       rmsprop                  0.01    - in 20,000                828
+ *       adam                     0.1     - in 20,000             10,131
+ *    one batch of every model
+ *       sgd                      0.1     9,326                  - in 1,000,000 (4.9e-6)
+ *       sgd                      1       1,297
+ *       momentum                 0.1     1,073                  - in 1,000,000 (4.4e-7)
+ *       rmsprop                  0.01    - in 20,000              1,034
+ *       adam                     0.01      953                   24,248
+ *       adam                     0.1     - in 20,000             17,697
+ *
+ *    rmsprop and adam divide by the size of each weight's own gradient.
+ *    Online on the characters, most weights see a gradient of 0 on most
+ *    steps (their input is 0), that size shrinks toward 0, and the rare real
+ *    gradient then takes a huge step; they need batches there. On a pass over
+ *    every weight (the characters in batches) momentum and adam take about
+ *    the same time per pass as sgd; online, their every-weight steps make a
+ *    pass 4 to 6 times as slow.
+ */
+public abstract class Optimizer
+{
+   /*
+    * The first element of the state of each kind of optimizer
+    */
+   final static int KIND_MOMENTUM = 1;
+   final static int KIND_NESTEROV = 2;
+   final static int KIND_RMSPROP = 3;
+   final static int KIND_ADAM = 4;
+
+   /*
+    * The elements of the state before the first slot
+    */
+   final static int STATE_HEADER = 2;
+
+   /*
+    * The values forName(...) uses for the other constants
+    *
+    * Use these variables to change the defaults
+    */
+   final static double MOMENTUM = 0.9;
+   final static double RMSPROP_DECAY = 0.9;
+   final static double ADAM_BETA1 = 0.9;
+   final static double ADAM_BETA2 = 0.999;
+   final static double EPSILON = 1e-8;
+
+   private String name;          //what forName(...) calls it
+   private int kind;             //KIND_..., or 0 for plain gradient descent
+   private int slotsPerWeight;   //the number of doubles of state kept for each weight
+   protected double lambda;      //the learning factor
+
+   private double[] state;       //the kind, t, then the slots of every matrix
+   private int[] offsets;        //where the slots of each matrix start in state
+   private WeightMatrix[] weights;//the matrices this changes
+
+   /**
+    * Constructor for the class Optimizer
+    *
+    * @param myName            what forName(...) calls it
+    * @param myKind            KIND_..., or 0 for plain gradient descent
+    * @param mySlotsPerWeight  the number of doubles of state for each weight
+    * @param myLambda          the learning factor
+    */
+   protected Optimizer(String myName, int myKind, int mySlotsPerWeight, double myLambda)
+   {
+      this.name = myName;
+      this.kind = myKind;
+      this.slotsPerWeight = mySlotsPerWeight;
+      this.lambda = myLambda;
+      this.state = new double[0];
+      this.offsets = new int[0];
+      this.weights = new WeightMatrix[0];
+   }//protected Optimizer(String myName, int myKind, int mySlotsPerWeight, double myLambda)
+
+   /**
+    * Makes plain gradient descent
+    *
+    * @param lambda  the learning factor
+    * @return        the optimizer
+    */
+   public static Optimizer sgd(double lambda)
+   {
+      return new Sgd(lambda);
+   }//public static Optimizer sgd(double lambda)
+
+   /**
+    * Makes gradient descent with momentum
+    *
+    * @param lambda     the learning factor
+    * @param mu         how much of the last step is kept (0 to 1)
+    * @param nesterov   true to look ahead along the momentum (Nesterov)
+    * @return           the optimizer
+    */
+   public static Optimizer momentum(double lambda, double mu, boolean nesterov)
+   {
+      return new Momentum(lambda, mu, nesterov);
+   }//public static Optimizer momentum(double lambda, double mu, boolean nesterov)
+
+   /**
+    * Makes RMSProp
+    *
+    * @param lambda     the learning factor
+    * @param rho        how much of the average of g^2 is kept each step (0 to 1)
+    * @param epsilon    keeps the step finite where g has always been 0
+    * @return           the optimizer
+    */
+   public static Optimizer rmsProp(double lambda, double rho, double epsilon)
+   {
+      return new RmsProp(lambda, rho, epsilon);
+   }//public static Optimizer rmsProp(double lambda, double rho, double epsilon)
+
+   /**
+    * Makes Adam
+    *
+    * @param lambda     the learning factor
+    * @param beta1      how much of the average of g is kept each step (0 to 1)
+    * @param beta2      how much of the average of g^2 is kept each step (0 to 1)
+    * @param epsilon    keeps the step finite where g has always been 0
+    * @return           the optimizer
+    */
+   public static Optimizer adam(double lambda, double beta1, double beta2, double epsilon)
+   {
+      return new Adam(lambda, beta1, beta2, epsilon);
+   }//public static Optimizer adam(double lambda, double beta1, double beta2, double epsilon)
+
+   /**
+    * Makes an optimizer by its name (see the table above), with the default
+    *    values of its other constants
+    *
+    * @param name    sgd, momentum, nesterov, rmsprop, or adam, in any case
+    * @param lambda  the learning factor
+    * @return        the optimizer
+    * @throws IllegalArgumentException  if there is none by that name
+    */
+   public static Optimizer forName(String name, double lambda)
+   {
+      String key = name.trim().toLowerCase();
+      if (key.equals("sgd"))
+         return Optimizer.sgd(lambda);
+      if (key.equals("momentum"))
+         return Optimizer.momentum(lambda, Optimizer.MOMENTUM, false);
+      if (key.equals("nesterov"))
+         return Optimizer.momentum(lambda, Optimizer.MOMENTUM, true);
+      if (key.equals("rmsprop"))
+         return Optimizer.rmsProp(lambda, Optimizer.RMSPROP_DECAY, Optimizer.EPSILON);
+      if (key.equals("adam"))
+         return Optimizer.adam(lambda, Optimizer.ADAM_BETA1, Optimizer.ADAM_BETA2, Optimizer.EPSILON);
+      throw new IllegalArgumentException("No optimizer named \"" + name + "\"");
+   }//public static Optimizer forName(String name, double lambda)
+
+   /**
+    * Gives the optimizer the matrices it changes, and starts their state at 0
+    *
+    * @param myWeights  the weight matrices
+    */
+   public void attach(WeightMatrix[] myWeights)
+   {
+      this.weights = myWeights.clone();
+      this.offsets = new int[myWeights.length];
+      if (this.slotsPerWeight == 0)
+         return;
+      long size = Optimizer.STATE_HEADER;
+      for (int m = 0; m < myWeights.length; m++)
+      {
+         this.offsets[m] = (int) size;
+         size += (long) this.slotsPerWeight * myWeights[m].getData().length;
+      }
+      if (size > Integer.MAX_VALUE)
+         throw new IllegalArgumentException("The optimizer state of " + size + " doubles is too big for one array");
+      this.state = new double[(int) size];
+      this.state[0] = this.kind;
+      return;
+   }//public void attach(WeightMatrix[] myWeights)
+
+   /**
+    * Starts one step of the whole network; call before the step(...) of each matrix
+    */
+   public void startStep()
+   {
+      if (this.state.length > 0)
+         this.state[1]++;
+      return;
+   }//public void startStep()
+
+   /**
+    * Changes one of the attached matrices by its gradient
+    *
+    * @param matrix     the matrix (one of those given to attach(...))
+    * @param gradient   the change we want, laid out like the matrix
+    */
+   public void step(WeightMatrix matrix, WeightMatrix gradient)
+   {
+      int m = 0;
+      while (m < this.weights.length && this.weights[m] != matrix)
+         m++;
+      if (m == this.weights.length)
+         throw new IllegalArgumentException("The optimizer is not attached to this matrix");
+      double[] w = matrix.getData();
+      double t = this.state.length > 0 ? this.state[1] : 0;
+      this.update(w, gradient.getData(), this.state, this.offsets[m], w.length, t);
+      return;
+   }//public void step(WeightMatrix matrix, WeightMatrix gradient)
+
+   /**
+    * Changes count weights by their gradient
+    *
+    * @param w       the weights
+    * @param g       the gradient
+    * @param state   the state of every matrix
+    * @param offset  where the first slot of these weights starts in state
+    * @param count   the number of weights
+    * @param t       the number of steps taken, counting this one
+    */
+   protected abstract void update(double[] w, double[] g, double[] state, int offset, int count, double t);
+
+   /**
+    * Tells whether this optimizer is plain gradient descent, which keeps no
+    *    state and so can change the weights straight from one sample,
+    *    skipping the inputs that are 0 (Layer.updateWeights)
+    *
+    * @return  true if this keeps no state
+    */
+   public boolean isStateless()
+   {
+      return this.slotsPerWeight == 0;
+   }//public boolean isStateless()
+
+   /**
+    * Getter for the state of every attached matrix, laid out as in the class comment
+    *    This is the array itself, not a copy.
+    *
+    * @return state the private instance variable
+    */
+   public double[] getState()
+   {
+      return this.state;
+   }//public double[] getState()
+
+   /**
+    * Puts back a state from getState(), for instance one saved in a Checkpoint
+    *
+    * @param saved   the state
+    * @return        true if it was put back; false if it is from another kind
+    *                of optimizer or other matrices (the state is then unchanged)
+    */
+   public boolean setState(double[] saved)
+   {
+      if (this.slotsPerWeight == 0)
+         return true;
+      if (saved.length != this.state.length || saved[0] != this.kind)
+         return false;
+      System.arraycopy(saved, 0, this.state, 0, saved.length);
+      return true;
+   }//public boolean setState(double[] saved)
+
+   /**
+    * Getter for the private instance variable double lambda
+    *
+    * @return lambda the private instance variable
+    */
+   public double getLambda()
+   {
+      return this.lambda;
+   }//public double getLambda()
+
+   /**
+    * Changes the learning factor of every step from now on (see LearningRateSchedule)
+    *    The state is kept.
+    *
+    * @param myLambda  the learning factor
+    */
+   public void setLambda(double myLambda)
+   {
+      this.lambda = myLambda;
+      return;
+   }//public void setLambda(double myLambda)
+
+   /**
+    * Getter for the private instance variable String name
+    *
+    * @return name the private instance variable
+    */
+   public String getName()
+   {
+      return this.name;
+   }//public String getName()
+
+   /**
+    * Plain gradient descent
+    */
+   private static class Sgd extends Optimizer
+   {
+      private Sgd(double myLambda)
+      {
+         super("sgd", 0, 0, myLambda);
+      }
+
+      protected void update(double[] w, double[] g, double[] state, int offset, int count, double t)
+      {
+         Kernels.axpy(this.lambda, g, 0, w, 0, count);
+         return;
+      }
+   }//private static class Sgd
+
+   /**
+    * Gradient descent with momentum, or with Nesterov's look-ahead
+    */
+   private static class Momentum extends Optimizer
+   {
+      private double mu;            //how much of the last step is kept
+      private boolean nesterov;     //whether to look ahead along the momentum
+
+      private Momentum(double myLambda, double myMu, boolean myNesterov)
+      {
+         super(myNesterov ? "nesterov" : "momentum",
+               myNesterov ? Optimizer.KIND_NESTEROV : Optimizer.KIND_MOMENTUM, 1, myLambda);
+         this.mu = myMu;
+         this.nesterov = myNesterov;
+      }
+
+      protected void update(double[] w, double[] g, double[] state, int offset, int count, double t)
+      {
+         double mu = this.mu;
+         double lambda = this.lambda;
+         if (this.nesterov)
+         {
+            for (int k = 0; k < count; k++)
+            {
+               double v = mu * state[offset + k] + g[k];
+               state[offset + k] = v;
+               w[k] += lambda * (g[k] + mu * v);
+            }
+         }
+         else
+         {
+            for (int k = 0; k < count; k++)
+            {
+               double v = mu * state[offset + k] + g[k];
+               state[offset + k] = v;
+               w[k] += lambda * v;
+            }
+         }
+         return;
+      }
+   }//private static class Momentum
+
+   /**
+    * RMSProp: each weight's step is divided by the root mean square of its gradient
+    */
+   private static class RmsProp extends Optimizer
+   {
+      private double rho;           //how much of the average of g^2 is kept
+      private double epsilon;       //keeps the step finite
+
+      private RmsProp(double myLambda, double myRho, double myEpsilon)
+      {
+         super("rmsprop", Optimizer.KIND_RMSPROP, 1, myLambda);
+         this.rho = myRho;
+         this.epsilon = myEpsilon;
+      }
+
+      protected void update(double[] w, double[] g, double[] state, int offset, int count, double t)
+      {
+         double rho = this.rho;
+         double lambda = this.lambda;
+         for (int k = 0; k < count; k++)
+         {
+            double s = rho * state[offset + k] + (1 - rho) * g[k] * g[k];
+            state[offset + k] = s;
+            w[k] += lambda * g[k] / (Math.sqrt(s) + this.epsilon);
+         }
+         return;
+      }
+   }//private static class RmsProp
+
+   /**
+    * Adam: momentum and RMSProp together, corrected for starting at 0
+    */
+   private static class Adam extends Optimizer
+   {
+      private double beta1;         //how much of the average of g is kept
+      private double beta2;         //how much of the average of g^2 is kept
+      private double epsilon;       //keeps the step finite
+
+      private Adam(double myLambda, double myBeta1, double myBeta2, double myEpsilon)
+      {
+         super("adam", Optimizer.KIND_ADAM, 2, myLambda);
+         this.beta1 = myBeta1;
+         this.beta2 = myBeta2;
+         this.epsilon = myEpsilon;
+      }
+
+      /*
+       * The slots are m then v, each count long
+       *    lambda * m^ / (√v^ + epsilon) is worked out as
+       *    step * m / (√v + epsilon * √(1 - beta2^t)), with
+       *    step = lambda * √(1 - beta2^t) / (1 - beta1^t), so the loop has
+       *    no powers in it
+       */
+      protected void update(double[] w, double[] g, double[] state, int offset, int count, double t)
+      {
+         double beta1 = this.beta1;
+         double beta2 = this.beta2;
+         double root = Math.sqrt(1 - Math.pow(beta2, t));
+         double step = this.lambda * root / (1 - Math.pow(beta1, t));
+         double epsilon = this.epsilon * root;
+         int vOffset = offset + count;
+         for (int k = 0; k < count; k++)
+         {
+            double m = beta1 * state[offset + k] + (1 - beta1) * g[k];
+            double v = beta2 * state[vOffset + k] + (1 - beta2) * g[k] * g[k];
+            state[offset + k] = m;
+            state[vOffset + k] = v;
+            w[k] += step * m / (Math.sqrt(v) + epsilon);
+         }
+         return;
+      }
+   }//private static class Adam
+}//public abstract class Optimizer
@@ -0,0 +1,311 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class trains the network on several cores at once (data-parallel training).
+ *
+ * The training set (inputs and T) is split into one shard per thread. Each shard
+ *    has a Worker with its own pair of layers, so every worker has its own
+ *    theta, activation, omega, psi, and gradient arrays and only reads the
+ *    shared weights.
+ *
+ * One call to evaluateAndImproveNetwork(lambda) is one step of full-batch
+ *    gradient descent:
+ *
+ *    1) every worker runs the forward and backward pass over its shard in a
+ *       ForkJoinPool and adds up the gradient of its models
+ *    2) the gradients are added together pairwise as the fork/join tasks are
+ *       joined (a tree reduction, so no single thread adds up every gradient)
+ *    3) the weights are changed once with the total gradient (or by an
+ *       Optimizer, with evaluateAndImproveNetwork(optimizer))
+ *
+ * Because the weights only change in step 3, the answer is the same no matter
+ *    how many threads are used (other than rounding in the order of the sums).
+ */
+public class ParallelTrainer
+{
+   /*
+    * The most models a worker pushes through its layers at once
+    *    The worker goes through its shard this many models at a time
+    */
+   final static int WORKER_BATCH_SIZE = 64;
+
+   private WeightMatrix weightskj;     //the shared weights between input and hidden layer
+   private WeightMatrix weightsji;     //the shared weights between hidden and output layer
+   private double[][] inputs;          //the training inputs, [model][node]
+   private double[][] T;               //the training targets, [model][node]
+
+   private ForkJoinPool pool;          //runs the workers
+   private Worker[] workers;           //one per shard
+
+   /**
+    * Constructor for the class ParallelTrainer
+    *    The weights, inputs, and targets are shared, not copied
+    *
+    * @param myWeightskj   the weights between input and hidden layer
+    * @param myWeightsji   the weights between hidden and output layer
+    * @param myInputs      the training inputs, [model][node]
+    * @param myT           the training targets, [model][node]
+    * @param numThreads    the number of threads (and shards) to use
+    */
+   public ParallelTrainer(WeightMatrix myWeightskj, WeightMatrix myWeightsji,
+                          double[][] myInputs, double[][] myT, int numThreads)
+   {
+      this.weightskj = myWeightskj;
+      this.weightsji = myWeightsji;
+      this.inputs = myInputs;
+      this.T = myT;
+
+      int numModels = myInputs.length;
+      int numShards = Math.max(1, Math.min(numThreads, numModels));
+      this.pool = new ForkJoinPool(numShards);
+      this.workers = new Worker[numShards];
+      InputRows inputRows = Layer.chooseInputRows(myInputs);
+      for (int s = 0; s < numShards; s++)                   //splits the models as evenly as possible
+      {
+         int first = (int) ((long) numModels * s / numShards);
+         int last = (int) ((long) numModels * (s + 1) / numShards);
+         this.workers[s] = new Worker(first, last);
+         this.workers[s].hiddenLayer.setInputRows(inputRows);
+      }
+   }//public ParallelTrainer(...)
+
+   /**
+    * Evaluates the network under every model on all the threads, then changes
+    *    the weights once with the sum of all the gradients
+    *
+    * @param lambda  the learning factor
+    * @return        double the error of the network (1/2 ∑ (Tmi - Fmi)^2) before the change
+    */
+   public double evaluateAndImproveNetwork(double lambda)
+   {
+      Worker total = this.pool.invoke(new ShardTask(0, this.workers.length));
+      this.weightsji.addScaled(lambda, total.outputLayer.getGradient());
+      this.weightskj.addScaled(lambda, total.hiddenLayer.getGradient());
+      return total.error / 2;
+   }//public double evaluateAndImproveNetwork(double lambda)
+
+   /**
+    * Evaluates the network under every model on all the threads, then changes
+    *    the weights once with the sum of all the gradients through an optimizer
+    *
+    * @param optimizer  the optimizer, attached to the shared weights
+    * @return           double the error of the network (1/2 ∑ (Tmi - Fmi)^2) before the change
+    */
+   public double evaluateAndImproveNetwork(Optimizer optimizer)
+   {
+      Worker total = this.pool.invoke(new ShardTask(0, this.workers.length));
+      optimizer.startStep();
+      optimizer.step(this.weightsji, total.outputLayer.getGradient());
+      optimizer.step(this.weightskj, total.hiddenLayer.getGradient());
+      return total.error / 2;
+   }//public double evaluateAndImproveNetwork(Optimizer optimizer)
+
+   /**
+    * Chooses the activation function of each layer of every worker
+    *    (see Layer.setActivation)
+    *
+    * @param hidden  the activation function of the hidden layer
+    * @param output  the activation function of the output layer
+    */
+   public void setActivations(Activation hidden, Activation output)
+   {
+      for (Worker worker : this.workers)
+      {
+         worker.hiddenLayer.setActivation(hidden);
+         worker.outputLayer.setActivation(output);
+      }
+      return;
+   }//public void setActivations(Activation hidden, Activation output)
+
+   /**
+    * Getter for the number of threads (shards) in use
+    *
+    * @return  the number of workers
+    */
+   public int getNumThreads()
+   {
+      return this.workers.length;
+   }//public int getNumThreads()
+
+   /**
+    * Stops the threads of the pool. The trainer cannot be used after this.
+    */
+   public void shutdown()
+   {
+      this.pool.shutdown();
+      return;
+   }//public void shutdown()
+
+   /**
+    * Times the same training on 1, 2, 4, ... threads up to the number of cores
+    *    and prints the time per pass and the speedup over one thread
+    *
+    * Each run starts from its own copy of the weights, so the weights given
+    *    here are not changed.
+    *
+    * @param weightskj   the weights between input and hidden layer
+    * @param weightsji   the weights between hidden and output layer
+    * @param inputs      the training inputs, [model][node]
+    * @param T           the training targets, [model][node]
+    * @param lambda      the learning factor
+    * @param numPasses   the number of passes over the training set to time
+    */
+   public static void reportScaling(WeightMatrix weightskj, WeightMatrix weightsji,
+                                    double[][] inputs, double[][] T, double lambda, int numPasses)
+   {
+      int cores = Runtime.getRuntime().availableProcessors();
+      System.out.println("Threads\tms/pass\t\tspeedup\t\terror");
+      double oneThread = 0;
+      for (int threads = 1; threads < cores; threads *= 2)
+      {
+         double msPerPass = ParallelTrainer.timeScaling(weightskj, weightsji, inputs, T, lambda, numPasses,
+                                                        threads, oneThread);
+         if (threads == 1)
+            oneThread = msPerPass;
+      }
+      ParallelTrainer.timeScaling(weightskj, weightsji, inputs, T, lambda, numPasses,
+                                  cores, oneThread);                         //always finish with every core
+      return;
+   }//public static void reportScaling(...)
+
+   /**
+    * Times the training on one number of threads and prints one line of
+    *    reportScaling(...)
+    *
+    * @param weightskj   the weights between input and hidden layer (not changed)
+    * @param weightsji   the weights between hidden and output layer (not changed)
+    * @param inputs      the training inputs, [model][node]
+    * @param T           the training targets, [model][node]
+    * @param lambda      the learning factor
+    * @param numPasses   the number of passes over the training set to time
+    * @param threads     the number of threads
+    * @param oneThread   the ms per pass on one thread, 0 if this is that run
+    * @return            the ms per pass
+    */
+   private static double timeScaling(WeightMatrix weightskj, WeightMatrix weightsji, double[][] inputs,
+                                     double[][] T, double lambda, int numPasses, int threads, double oneThread)
+   {
+      ParallelTrainer trainer = new ParallelTrainer(weightskj.copy(), weightsji.copy(),
+                                                    inputs, T, threads);
+      trainer.evaluateAndImproveNetwork(lambda);             //warms up the threads and the JIT
+      double error = 0;
+      long start = System.nanoTime();
+      for (int pass = 0; pass < numPasses; pass++)
+         error = trainer.evaluateAndImproveNetwork(lambda);
+      double msPerPass = (System.nanoTime() - start) / 1e6 / numPasses;
+      trainer.shutdown();
+
+      if (oneThread == 0)
+         oneThread = msPerPass;
+      System.out.printf("%d\t%.4f\t\t%.2f\t\t%g\n", trainer.getNumThreads(), msPerPass,
+                        oneThread / msPerPass, error);
+      return msPerPass;
+   }//private static double timeScaling(...)
+
+   /**
+    * The scratch space and shard of one thread
+    */
+   private class Worker
+   {
+      private int firstModel;          //the first model in the shard
+      private int lastModel;           //one past the last model in the shard
+      private Layer hiddenLayer;       //this worker's own view of weightskj
+      private Layer outputLayer;       //this worker's own view of weightsji
+      private double error;            //∑ (Tmi - Fmi)^2 over the shard
+
+      /**
+       * Constructor for the class Worker
+       *
+       * @param myFirstModel  the first model in the shard
+       * @param myLastModel   one past the last model in the shard
+       */
+      private Worker(int myFirstModel, int myLastModel)
+      {
+         this.firstModel = myFirstModel;
+         this.lastModel = myLastModel;
+         int batchSize = Math.min(ParallelTrainer.WORKER_BATCH_SIZE, myLastModel - myFirstModel);
+         this.hiddenLayer = new Layer(ParallelTrainer.this.weightskj, batchSize);
+         this.outputLayer = new Layer(ParallelTrainer.this.weightsji, batchSize);
+      }//private Worker(int myFirstModel, int myLastModel)
+
+      /**
+       * Runs the forward and backward pass over the whole shard, adding up the
+       *    gradient without changing the weights
+       */
+      private void computeGradient()
+      {
+         this.hiddenLayer.clearGradient();
+         this.outputLayer.clearGradient();
+         this.error = 0;
+         int batchSize = this.hiddenLayer.getMaxBatchSize();
+         for (int first = this.firstModel; first < this.lastModel; first += batchSize)
+         {
+            int count = Math.min(batchSize, this.lastModel - first);
+            this.hiddenLayer.forward(ParallelTrainer.this.inputs, first, count);
+            this.outputLayer.forward(this.hiddenLayer.getActivationRows(), 0, count);
+            this.error += this.outputLayer.outputDeltas(ParallelTrainer.this.T, first, count);
+            this.hiddenLayer.propagateDeltas(this.outputLayer, count);
+            this.outputLayer.accumulateGradient(count);
+            this.hiddenLayer.accumulateGradient(count);
+         }
+         return;
+      }//private void computeGradient()
+
+      /**
+       * Adds the gradient and error of another worker to this one
+       *
+       * @param other   the worker to add (not changed)
+       */
+      private void add(Worker other)
+      {
+         this.hiddenLayer.getGradient().addScaled(1, other.hiddenLayer.getGradient());
+         this.outputLayer.getGradient().addScaled(1, other.outputLayer.getGradient());
+         this.error += other.error;
+         return;
+      }//private void add(Worker other)
+   }//private class Worker
+
+   /**
+    * Runs the workers numbered low (inclusive) to high (exclusive)
+    *    Splits in half until there is one worker, and adds the halves together
+    *    on the way back up, so the gradients are reduced as a tree.
+    */
+   @SuppressWarnings("serial")
+   private class ShardTask extends RecursiveTask<Worker>
+   {
+      private int low;     //the first worker
+      private int high;    //one past the last worker
+
+      /**
+       * Constructor for the class ShardTask
+       *
+       * @param myLow   the first worker
+       * @param myHigh  one past the last worker
+       */
+      private ShardTask(int myLow, int myHigh)
+      {
+         this.low = myLow;
+         this.high = myHigh;
+      }//private ShardTask(int myLow, int myHigh)
+
+      /**
+       * @return  the worker now holding the total of the workers low to high
+       */
+      protected Worker compute()
+      {
+         if (this.high - this.low == 1)
+         {
+            Worker worker = ParallelTrainer.this.workers[this.low];
+            worker.computeGradient();
+            return worker;
+         }
+         int middle = (this.low + this.high) / 2;
+         ShardTask right = new ShardTask(middle, this.high);
+         right.fork();
+         Worker total = new ShardTask(this.low, middle).compute();
+         total.add(right.join());
+         return total;
+      }//protected Worker compute()
+   }//private class ShardTask
+}//public class ParallelTrainer
@@ -0,0 +1,49 @@
+/**
+ * This interface is anything that can evaluate a trained network for inference.
+ *
+ * TrainedModel keeps its weights in arrays on the heap, QuantizedModel keeps
+ *    them as 8-bit integers, and MappedModel reads them straight out of a model
+ *    file mapped into memory. BatchScorer can score with any of them.
+ *
+ * Every Predictor can be used by any number of threads at the same time.
+ */
+public interface Predictor
+{
+   /**
+    * Evaluates the network for one input
+    *
+    * @param input   the activations of the input layer (length getNumInputs())
+    * @return        a new array with the outputs
+    */
+   double[] predict(double[] input);
+
+   /**
+    * Evaluates the network for one input, putting the outputs in out
+    *
+    * @param input   the activations of the input layer (length getNumInputs())
+    * @param out     where to put the outputs (length getNumOutputs())
+    * @return        out
+    */
+   double[] predict(double[] input, double[] out);
+
+   /**
+    * Finds the number of inputs in the network
+    *
+    * @return  the number of inputs
+    */
+   int getNumInputs();
+
+   /**
+    * Finds the number of hidden layer nodes in the network
+    *
+    * @return  the number of hidden nodes
+    */
+   int getNumHiddens();
+
+   /**
+    * Finds the number of outputs in the network
+    *
+    * @return  the number of outputs
+    */
+   int getNumOutputs();
+}//public interface Predictor
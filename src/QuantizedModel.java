@@ -0,0 +1,249 @@
+/**
+ * This class is a trained network for inference only, with its weights rounded
+ *    to 8-bit integers (int8).
+ *
+ * Every row of weights (all the weights feeding one node) gets its own scale:
+ *
+ *    scale[j] = (largest |wkj| over k) / 127
+ *    q[j][k]  = round(wkj / scale[j])          (from -127 to 127)
+ *
+ *    so the biggest weight of every node uses the whole range no matter how big
+ *    the weights of the other nodes are. The activations going into a layer are
+ *    rounded the same way with one scale for the whole input, and then
+ *
+ *    thetaj = scale[j] * inputScale * ∑k q[j][k] * qa[k]
+ *
+ *    where the sum is all in ints (Kernels.dot(byte[], ...)), and only the one
+ *    multiplication by the two scales and f(thetaj) are in double.
+ *
+ * A weight is 1 byte instead of the 8 bytes of a double, so the model takes
+ *    about 1/8 of the memory (plus one double scale per node).
+ *
+ * Accuracy against the double network (XOROptimized.reportQuantization()):
+ *
+ *                                   largest output difference   mean output difference
+ *    PATTERNS, 5 hidden                     3e-4                      2e-4
+ *    TEST_PATTERNS, 5 hidden                2e-3 to 8e-3              1e-3 to 2e-3
+ *    Characters, 20 hidden                  4e-3                      1.6e-3
+ *
+ *    (trained 20,000 and 2,000 passes from random weights; the ranges are
+ *    over different random starts). The box/cross
+ *    patterns pick the same largest output as the double network every time,
+ *    and the character outputs move far less than the 0.0375 between the
+ *    targets of two neighboring characters.
+ *
+ * Like TrainedModel, it is immutable and any number of threads can call
+ *    predict(...) at the same time; the scratch space belongs to the calling thread.
+ */
+public final class QuantizedModel implements Predictor
+{
+   /*
+    * The largest magnitude of a rounded weight or activation
+    */
+   final static int MAX_LEVEL = 127;
+
+   /*
+    * The most nodes that can feed one node: a sum of this many products of two
+    *    rounded numbers (each up to MAX_LEVEL * MAX_LEVEL) still fits in the int
+    *    of Kernels.dot(byte[], ...). It is 133,144.
+    */
+   final static int MAX_ROW_LENGTH = Integer.MAX_VALUE / (QuantizedModel.MAX_LEVEL * QuantizedModel.MAX_LEVEL);
+
+   private final int numInputs;        //the number of inputs in the network
+   private final int numHiddens;       //the number of hidden layer nodes in the network
+   private final int numOutputs;       //the number of outputs in the network
+
+   private final byte[] weightskj;     //numHiddens rows of numInputs rounded weights
+   private final byte[] weightsji;     //numOutputs rows of numHiddens rounded weights
+   private final double[] scaleskj;    //one scale per hidden node
+   private final double[] scalesji;    //one scale per output
+
+   /*
+    * The rounded input, rounded hidden layer, and hidden layer of each thread,
+    *    made the first time that thread calls predict(...) and reused after that
+    */
+   private final ThreadLocal<Scratch> scratch;
+
+   /**
+    * Constructor for the class QuantizedModel
+    *    Rounds the weights; the matrices given are not changed or kept
+    *
+    * @param myWeightskj   the weights between input and hidden layer (hidden x input)
+    * @param myWeightsji   the weights between hidden and output layer (output x hidden)
+    * @throws IllegalArgumentException  if there are more than MAX_ROW_LENGTH
+    *                                   inputs or hidden nodes, so a sum could
+    *                                   overflow its int
+    */
+   public QuantizedModel(WeightMatrix myWeightskj, WeightMatrix myWeightsji)
+   {
+      if (myWeightskj.getNumCols() > QuantizedModel.MAX_ROW_LENGTH
+            || myWeightsji.getNumCols() > QuantizedModel.MAX_ROW_LENGTH)
+         throw new IllegalArgumentException("A quantized model can have at most "
+               + QuantizedModel.MAX_ROW_LENGTH + " inputs and hidden nodes, not "
+               + myWeightskj.getNumCols() + " and " + myWeightsji.getNumCols());
+      this.numInputs = myWeightskj.getNumCols();
+      this.numHiddens = myWeightskj.getNumRows();
+      this.numOutputs = myWeightsji.getNumRows();
+      this.weightskj = new byte[this.numHiddens * this.numInputs];
+      this.weightsji = new byte[this.numOutputs * this.numHiddens];
+      this.scaleskj = QuantizedModel.quantizeRows(myWeightskj, this.weightskj);
+      this.scalesji = QuantizedModel.quantizeRows(myWeightsji, this.weightsji);
+      this.scratch = new ThreadLocal<Scratch>()
+      {
+         protected Scratch initialValue()
+         {
+            return new Scratch();
+         }
+      };
+   }//public QuantizedModel(WeightMatrix myWeightskj, WeightMatrix myWeightsji)
+
+   /**
+    * Rounds every row of a matrix to int8 with its own scale
+    *
+    * @param weights    the weights
+    * @param quantized  where to put the rounded weights (same layout as weights)
+    * @return           the scale of each row
+    */
+   private static double[] quantizeRows(WeightMatrix weights, byte[] quantized)
+   {
+      double[] w = weights.getData();
+      int numCols = weights.getNumCols();
+      double[] scales = new double[weights.getNumRows()];
+      for (int r = 0; r < scales.length; r++)               //loops over the rows
+         scales[r] = QuantizedModel.quantize(w, weights.rowOffset(r), quantized, weights.rowOffset(r), numCols);
+      return scales;
+   }//private static double[] quantizeRows(WeightMatrix weights, byte[] quantized)
+
+   /**
+    * Rounds n numbers to int8 with one scale, chosen so that the largest
+    *    magnitude becomes MAX_LEVEL
+    *
+    * @param values        the numbers
+    * @param valueOffset   where to start in values
+    * @param quantized     where to put the rounded numbers
+    * @param qOffset       where to start in quantized
+    * @param n             how many numbers
+    * @return              the scale (values[k] is about scale * quantized[k]); 0 if all are 0
+    */
+   private static double quantize(double[] values, int valueOffset, byte[] quantized, int qOffset, int n)
+   {
+      double largest = 0;
+      for (int k = 0; k < n; k++)
+         largest = Math.max(largest, Math.abs(values[valueOffset + k]));
+      if (largest == 0)
+      {
+         for (int k = 0; k < n; k++)
+            quantized[qOffset + k] = 0;
+         return 0;
+      }
+      double scale = largest / QuantizedModel.MAX_LEVEL;
+      double inverse = 1 / scale;
+      for (int k = 0; k < n; k++)
+         quantized[qOffset + k] = (byte) Math.round(values[valueOffset + k] * inverse);
+      return scale;
+   }//private static double quantize(double[] values, int valueOffset, byte[] quantized, int qOffset, int n)
+
+   /**
+    * Evaluates one layer from rounded activations
+    *
+    * @param weights       the rounded weights of the layer
+    * @param scales        the scale of each row of weights
+    * @param numCols       the number of nodes feeding the layer
+    * @param input         the rounded activations feeding the layer
+    * @param inputScale    the scale of input
+    * @param activations   where to put f(theta) of each node
+    */
+   private static void evaluate(byte[] weights, double[] scales, int numCols,
+                                byte[] input, double inputScale, double[] activations)
+   {
+      for (int j = 0; j < activations.length; j++)          //loops over the nodes
+      {
+         int sum = Kernels.dot(input, 0, weights, j * numCols, numCols);
+         activations[j] = Layer.f(sum * scales[j] * inputScale);
+      }
+      return;
+   }//private static void evaluate(...)
+
+   /**
+    * Evaluates the network for one input
+    *
+    * @param input   the activations of the input layer (length numInputs)
+    * @return        a new array with the outputs
+    */
+   public double[] predict(double[] input)
+   {
+      return this.predict(input, new double[this.numOutputs]);
+   }//public double[] predict(double[] input)
+
+   /**
+    * Evaluates the network for one input, putting the outputs in out
+    *    Nothing is allocated once the calling thread has been here before.
+    *
+    * @param input   the activations of the input layer (length numInputs)
+    * @param out     where to put the outputs (length numOutputs)
+    * @return        out
+    */
+   public double[] predict(double[] input, double[] out)
+   {
+      if (input.length != this.numInputs || out.length != this.numOutputs)
+         throw new IllegalArgumentException("Expected " + this.numInputs + " inputs and "
+               + this.numOutputs + " outputs, got " + input.length + " and " + out.length);
+      Scratch s = this.scratch.get();
+      double inputScale = QuantizedModel.quantize(input, 0, s.input, 0, this.numInputs);
+      QuantizedModel.evaluate(this.weightskj, this.scaleskj, this.numInputs, s.input, inputScale, s.hidden);
+      double hiddenScale = QuantizedModel.quantize(s.hidden, 0, s.quantizedHidden, 0, this.numHiddens);
+      QuantizedModel.evaluate(this.weightsji, this.scalesji, this.numHiddens, s.quantizedHidden, hiddenScale, out);
+      return out;
+   }//public double[] predict(double[] input, double[] out)
+
+   /**
+    * Finds how much memory the weights and scales take
+    *
+    * @return  the number of bytes in the weight and scale arrays
+    */
+   public long getNumBytes()
+   {
+      return this.weightskj.length + this.weightsji.length
+            + 8L * (this.scaleskj.length + this.scalesji.length);
+   }//public long getNumBytes()
+
+   /**
+    * Getter for the private instance variable int numInputs
+    *
+    * @return numInputs the private instance variable
+    */
+   public int getNumInputs()
+   {
+      return this.numInputs;
+   }//public int getNumInputs()
+
+   /**
+    * Getter for the private instance variable int numHiddens
+    *
+    * @return numHiddens the private instance variable
+    */
+   public int getNumHiddens()
+   {
+      return this.numHiddens;
+   }//public int getNumHiddens()
+
+   /**
+    * Getter for the private instance variable int numOutputs
+    *
+    * @return numOutputs the private instance variable
+    */
+   public int getNumOutputs()
+   {
+      return this.numOutputs;
+   }//public int getNumOutputs()
+
+   /**
+    * The scratch space of one thread
+    */
+   private class Scratch
+   {
+      private byte[] input = new byte[QuantizedModel.this.numInputs];               //the rounded input
+      private double[] hidden = new double[QuantizedModel.this.numHiddens];         //the hidden layer
+      private byte[] quantizedHidden = new byte[QuantizedModel.this.numHiddens];    //the rounded hidden layer
+   }//private class Scratch
+}//public final class QuantizedModel
@@ -0,0 +1,127 @@
+/**
+ * This class is a trained network that can only be evaluated (inference).
+ *
+ * It keeps its own copy of the two layers of weights and never changes them,
+ *    so once it is made it is immutable. Unlike XOROptimized, it has no
+ *    shared theta, hidden, or psi arrays: the hidden layer of each call goes
+ *    in space that belongs to the calling thread. Any number of threads can
+ *    call predict(...) on the same TrainedModel at the same time.
+ *
+ * Use XOROptimized.toTrainedModel() to make one from a network that is done training.
+ *    It keeps the activation function of each layer of that network (see Activations).
+ */
+public final class TrainedModel implements Predictor
+{
+   private final int numInputs;           //the number of inputs in the network
+   private final int numHiddens;          //the number of hidden layer nodes in the network
+   private final int numOutputs;          //the number of outputs in the network
+
+   private final WeightMatrix weightskj;  //weights between input and hidden layer (hidden x input)
+   private final WeightMatrix weightsji;  //weights between hidden and output layer (output x hidden)
+   private final Activation hiddenActivation;   //the activation function of the hidden layer
+   private final Activation outputActivation;   //the activation function of the output layer
+
+   /*
+    * The hidden layer of each thread, made the first time that thread calls
+    *    predict(...) and reused after that
+    */
+   private final ThreadLocal<double[]> hidden;
+
+   /**
+    * Constructor for the class TrainedModel with the sigmoid in both layers
+    *    The weights are copied, so the network they came from can keep training
+    *
+    * @param myWeightskj   the weights between input and hidden layer (hidden x input)
+    * @param myWeightsji   the weights between hidden and output layer (output x hidden)
+    */
+   public TrainedModel(WeightMatrix myWeightskj, WeightMatrix myWeightsji)
+   {
+      this(myWeightskj, myWeightsji, Activations.SIGMOID, Activations.SIGMOID);
+   }//public TrainedModel(WeightMatrix myWeightskj, WeightMatrix myWeightsji)
+
+   /**
+    * Constructor for the class TrainedModel
+    *    The weights are copied, so the network they came from can keep training
+    *
+    * @param myWeightskj         the weights between input and hidden layer (hidden x input)
+    * @param myWeightsji         the weights between hidden and output layer (output x hidden)
+    * @param myHiddenActivation  the activation function of the hidden layer
+    * @param myOutputActivation  the activation function of the output layer
+    */
+   public TrainedModel(WeightMatrix myWeightskj, WeightMatrix myWeightsji,
+                       Activation myHiddenActivation, Activation myOutputActivation)
+   {
+      this.hiddenActivation = myHiddenActivation;
+      this.outputActivation = myOutputActivation;
+      this.weightskj = myWeightskj.copy();
+      this.weightsji = myWeightsji.copy();
+      this.numInputs = myWeightskj.getNumCols();
+      this.numHiddens = myWeightskj.getNumRows();
+      this.numOutputs = myWeightsji.getNumRows();
+      this.hidden = new ThreadLocal<double[]>()
+      {
+         protected double[] initialValue()
+         {
+            return new double[TrainedModel.this.numHiddens];
+         }
+      };
+   }//public TrainedModel(...)
+
+   /**
+    * Evaluates the network for one input
+    *
+    * @param input   the activations of the input layer (length numInputs)
+    * @return        a new array with the outputs
+    */
+   public double[] predict(double[] input)
+   {
+      return this.predict(input, new double[this.numOutputs]);
+   }//public double[] predict(double[] input)
+
+   /**
+    * Evaluates the network for one input, putting the outputs in out
+    *    Nothing is allocated once the calling thread has been here before.
+    *
+    * @param input   the activations of the input layer (length numInputs)
+    * @param out     where to put the outputs (length numOutputs)
+    * @return        out
+    */
+   public double[] predict(double[] input, double[] out)
+   {
+      if (input.length != this.numInputs || out.length != this.numOutputs)
+         throw new IllegalArgumentException("Expected " + this.numInputs + " inputs and "
+               + this.numOutputs + " outputs, got " + input.length + " and " + out.length);
+      double[] h = Layer.evaluate(this.weightskj, this.hiddenActivation, input, this.hidden.get());
+      return Layer.evaluate(this.weightsji, this.outputActivation, h, out);
+   }//public double[] predict(double[] input, double[] out)
+
+   /**
+    * Getter for the private instance variable int numInputs
+    *
+    * @return numInputs the private instance variable
+    */
+   public int getNumInputs()
+   {
+      return this.numInputs;
+   }//public int getNumInputs()
+
+   /**
+    * Getter for the private instance variable int numHiddens
+    *
+    * @return numHiddens the private instance variable
+    */
+   public int getNumHiddens()
+   {
+      return this.numHiddens;
+   }//public int getNumHiddens()
+
+   /**
+    * Getter for the private instance variable int numOutputs
+    *
+    * @return numOutputs the private instance variable
+    */
+   public int getNumOutputs()
+   {
+      return this.numOutputs;
+   }//public int getNumOutputs()
+}//public final class TrainedModel
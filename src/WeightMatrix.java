@@ -0,0 +1,150 @@
+import java.util.Arrays;
+
+/**
+ * This class is one layer of weights kept in a single flat array of doubles.
+ *
+ * The weights are stored row-major: row r starts at data[r * numCols], and the
+ *    whole row sits next to itself in memory. The network stores every layer
+ *    with one row per node it feeds (that is, transposed from w[k][j]):
+ *
+ *    weightskj   ->   rows = numHiddens,   cols = numInputs    (row j is all wkj)
+ *    weightsji   ->   rows = numOutputs,   cols = numHiddens   (row i is all wji)
+ *
+ *    so the dot product thetaj = ∑k ak * wkj walks one row straight through.
+ *
+ * The tight loops (Layer) read getData() directly with a row offset from
+ *    rowOffset(...) so that there is one array and one bounds check per loop
+ *    instead of one array per row. get(...) and set(...) are for everything else.
+ */
+public class WeightMatrix
+{
+   private int numRows;   //the number of nodes the weights feed into
+   private int numCols;   //the number of nodes the weights come from
+   private double[] data; //numRows * numCols weights, row after row
+
+   /**
+    * Constructor for the class WeightMatrix
+    *    All the weights start at 0
+    *
+    * @param myNumRows  the number of rows (nodes the weights feed into)
+    * @param myNumCols  the number of columns (nodes the weights come from)
+    */
+   public WeightMatrix(int myNumRows, int myNumCols)
+   {
+      this.numRows = myNumRows;
+      this.numCols = myNumCols;
+      this.data = new double[myNumRows * myNumCols];
+   }//public WeightMatrix(int myNumRows, int myNumCols)
+
+   /**
+    * Finds where a row starts in the flat array
+    *
+    * @param row  the row
+    * @return     the index of (row, 0) in getData()
+    */
+   public int rowOffset(int row)
+   {
+      return row * this.numCols;
+   }//public int rowOffset(int row)
+
+   /**
+    * Gets one weight
+    *
+    * @param row  the node the weight feeds into
+    * @param col  the node the weight comes from
+    * @return     the weight
+    */
+   public double get(int row, int col)
+   {
+      return this.data[row * this.numCols + col];
+   }//public double get(int row, int col)
+
+   /**
+    * Sets one weight
+    *
+    * @param row     the node the weight feeds into
+    * @param col     the node the weight comes from
+    * @param value   the new weight
+    */
+   public void set(int row, int col, double value)
+   {
+      this.data[row * this.numCols + col] = value;
+      return;
+   }//public void set(int row, int col, double value)
+
+   /**
+    * Sets every weight to 0
+    */
+   public void clear()
+   {
+      Arrays.fill(this.data, 0);
+      return;
+   }//public void clear()
+
+   /**
+    * Adds factor times another matrix of the same size to this one
+    *    this += factor * other
+    *
+    * @param factor  what to multiply other by
+    * @param other   the matrix to add (not changed)
+    */
+   public void addScaled(double factor, WeightMatrix other)
+   {
+      Kernels.axpy(factor, other.data, 0, this.data, 0, this.data.length);
+      return;
+   }//public void addScaled(double factor, WeightMatrix other)
+
+   /**
+    * Sets every weight to the weight in the same place in another matrix
+    *
+    * @param other   a matrix of the same size (not changed)
+    */
+   public void copyFrom(WeightMatrix other)
+   {
+      System.arraycopy(other.data, 0, this.data, 0, this.data.length);
+      return;
+   }//public void copyFrom(WeightMatrix other)
+
+   /**
+    * Makes a new matrix with the same weights as this one
+    *
+    * @return  the copy
+    */
+   public WeightMatrix copy()
+   {
+      WeightMatrix copy = new WeightMatrix(this.numRows, this.numCols);
+      System.arraycopy(this.data, 0, copy.data, 0, this.data.length);
+      return copy;
+   }//public WeightMatrix copy()
+
+   /**
+    * Getter for the private instance variable int numRows
+    *
+    * @return numRows the private instance variable
+    */
+   public int getNumRows()
+   {
+      return this.numRows;
+   }//public int getNumRows()
+
+   /**
+    * Getter for the private instance variable int numCols
+    *
+    * @return numCols the private instance variable
+    */
+   public int getNumCols()
+   {
+      return this.numCols;
+   }//public int getNumCols()
+
+   /**
+    * Getter for the private instance variable double[] data
+    *    This is not a copy; changing it changes the weights
+    *
+    * @return data the private instance variable
+    */
+   public double[] getData()
+   {
+      return this.data;
+   }//public double[] getData()
+}//public class WeightMatrix
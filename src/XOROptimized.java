@@ -1,6 +1,4 @@
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Scanner;
 
@@ -22,6 +20,9 @@ import java.util.Scanner;
  *       hidden nodes
  *       outputs
  *
+ *    Each layer can be given another one instead (setActivations): tanh,
+ *    ReLU, leaky ReLU, or the sigmoid from a table (see Activations).
+ *
  *Given the error function:
  *    E = 1/2 * ∑ (Tmi - Fmi)^2
  *    
@@ -84,6 +85,37 @@ public class XOROptimized
    final static Integer MAX_COUNT = 100000000;
    final static double OKAY_ERROR = 0.000000001;
 
+   /*
+    * Below are the ways train() stops early, when carrying on would not help
+    *    (see EarlyStopping). 0 turns each one off.
+    * 
+    * STALL_PASSES is the number of passes the error can go without going
+    *    down by MIN_IMPROVEMENT (a fraction of its best) before we give up
+    * DIVERGENCE_FACTOR is how many times its best the error can get (once it
+    *    is also worse than where it started) before we call it diverged; an
+    *    error that is not a number always stops training
+    * VALIDATION_EVERY_PASSES is how often the error on the test models that
+    *    have targets (the validation error) is found; when it has not gone
+    *    below its best for VALIDATION_PATIENCE of those checks in a row, the
+    *    network is fitting the training models and not the rest
+    * 
+    *    Every STABLE_EVERY_PASSES passes (and after the first), the weights are
+    *    copied when the training error is the lowest so far, and stopping on
+    *    a divergence puts those back. Stopping on the validation error puts
+    *    back the weights of the best validation error. With the
+    *    patterns, the test "boxcross" is a mix of the two training patterns
+    *    that the network is not trained on, and its error goes up as the
+    *    training error goes down, so VALIDATION_PATIENCE is off by default.
+    * 
+    * Use these variables (or setEarlyStopping) to change the defaults
+    */
+   final static Integer STALL_PASSES = 10000;
+   final static double MIN_IMPROVEMENT = 0.01;
+   final static double DIVERGENCE_FACTOR = 10;
+   final static Integer VALIDATION_EVERY_PASSES = 1000;
+   final static Integer VALIDATION_PATIENCE = 0;
+   final static Integer STABLE_EVERY_PASSES = 100;
+
    /*
     * learning factor - used to change the amount by which we will train the weights
     * 
@@ -91,6 +123,120 @@ public class XOROptimized
     */
    final double LAMBDA = 0.1; 
 
+   /*
+    * How the weights are changed by their gradient (see Optimizer)
+    *    "sgd"        plain gradient descent, w += LAMBDA * gradient
+    *    "momentum"   or "nesterov", which add up the steps so far
+    *    "rmsprop"    which divides each weight's step by the size of its gradient
+    *    "adam"       momentum and rmsprop together
+    * 
+    *    rmsprop and adam work best with a LAMBDA near 0.01 and, on the images,
+    *    with batches (see the table in Optimizer).
+    *    All but sgd keep some numbers for every weight, which are saved in
+    *    the checkpoints. They also change every weight on every step, so with
+    *    them online training no longer skips the inputs that are 0. The float
+    *    network (FloatNetwork) and the lock-free trainer (HogwildTrainer) only
+    *    do sgd, so choosing any other with them throws an IllegalStateException.
+    * 
+    * Use this variable (or setOptimizer) to change the default
+    */
+   final static String OPTIMIZER = "sgd";
+
+   /*
+    * How LAMBDA changes from one pass to the next (see LearningRateSchedule)
+    *    "constant"      LAMBDA for every pass
+    *    "step"          halved every 10,000 passes
+    *    "cosine"        down half a cosine to LAMBDA / 100 over 100,000 passes
+    *    "plateau"       halved whenever the error stops going down
+    *    "bold driver"   up 5% after each pass that lowers the error, halved
+    *                    after each that raises it
+    * 
+    * Use this variable (or setSchedule) to change the default
+    */
+   final static String LR_SCHEDULE = "constant";
+
+   /*
+    * The number of models evaluated together before the weights are changed
+    *    1 is plain online training: change the weights after every model
+    *    n > 1 pushes n models through the network as one matrix-matrix product,
+    *       adds up their gradients, and changes the weights once per n models
+    * 
+    * Use this variable (or setBatchSize) to change the default batch size
+    */
+   final static Integer BATCH_SIZE = 1;
+
+   /*
+    * The number of threads used to train
+    *    1 trains on this thread, as above
+    *    n > 1 splits the models across n threads (see ParallelTrainer); every
+    *       pass adds up the gradient of all the models and changes the weights once
+    * 
+    * Use this variable (or setTrainingThreads) to change the default
+    */
+   final static Integer TRAINING_THREADS = 1;
+
+   /*
+    * How the training threads share the weights when TRAINING_THREADS > 1
+    *    false - all threads add up one gradient and the weights change once per pass
+    *    true  - every thread changes the weights after each model with no locks
+    *            (see HogwildTrainer)
+    */
+   final static boolean HOGWILD = false;
+
+   /*
+    * The number of threads assignInputsAndTargetsFromImages() decodes the
+    *    images with (see ImageLoader)
+    *    Reading the files is mostly waiting on the disk, so this can be more
+    *    than the number of cores.
+    */
+   final static Integer IMAGE_LOADING_THREADS = 4;
+
+   /*
+    * The file assignInputsAndTargetsFromImages() keeps the decoded images in
+    *    (see DatasetCache), so only new or changed images are decoded again
+    */
+   final static String IMAGE_CACHE_FILE_NAME = "images.cache";
+
+   /*
+    * Whether to train and evaluate in single precision (float) instead of double
+    *    true trains with FloatNetwork, which keeps the inputs, targets, and
+    *    weights as floats, with no double copy of them (see setFloatPrecision);
+    *    the images are then loaded straight into floats, and the weights are
+    *    only made in double to be saved (as floats), exported, or checkpointed
+    * 
+    * Use this variable (or setFloatPrecision) to change the default
+    */
+   final static boolean FLOAT_PRECISION = false;
+
+   /*
+    * Whether training keeps inputs that are all 0 or 1 (like the images) as
+    *    packed bits instead of sparse rows when most of them are 0
+    *    (see BitRows and Layer.setPackedInputs)
+    *    The images are then decoded straight into bits and never kept as
+    *    doubles, which takes 1/64 of the memory, but training has to be in
+    *    double precision on one thread (see requireDenseInputs).
+    */
+   final static boolean PACKED_INPUTS = false;
+
+   /*
+    * The activation function of each layer (see Activations)
+    *    Activations.SIGMOID        1 / (1 + e^ (-x))
+    *    Activations.FAST_SIGMOID   the same from a table, never more than
+    *                               Layer.FAST_SIGMOID_MAX_ERROR off, about
+    *                               3 times as fast
+    *    Activations.TANH, Activations.RELU, Activations.LEAKY_RELU
+    *       train the hidden layer in fewer passes than the sigmoid
+    * 
+    *    Training in float (FloatNetwork) and QuantizedModel only work out the
+    *    sigmoid, so they throw an IllegalStateException with any other. The
+    *    model file records both, and weights read back from it (including
+    *    MappedModel and the checkpoints) use the ones it records.
+    * 
+    * Use these variables (or setActivations) to change the defaults
+    */
+   final static Activation HIDDEN_ACTIVATION = Activations.SIGMOID;
+   final static Activation OUTPUT_ACTIVATION = Activations.SIGMOID;
+
    /*
     * Use these variables to set constraints on assigning random weights in the method
     *    assignWeightsRandomly()
@@ -101,8 +247,29 @@ public class XOROptimized
    final static Integer RANDOM_MULTIPLIER = 2;
    final static Integer RANDOM_ADDER = -1;
 
+   /*
+    * MODEL_FILE_NAME is the binary model file saveWeights() writes and
+    *    assignWeightsFromFile() reads (see ModelFile)
+    * WEIGHTS_FILE_NAME is the text file of weights, one per line, that
+    *    assignWeightsFromTextFile() reads; exportWeights() writes the same
+    *    format to WEIGHTS_FILE_NAME + "1"
+    */
+   final static String MODEL_FILE_NAME = "weights.bin";
    final static String WEIGHTS_FILE_NAME = "weights.txt";
 
+   /*
+    * How often train() saves a checkpoint (see Checkpointer), 0 for never
+    *    CHECKPOINT_EVERY_PASSES   - after this many passes over the models
+    *    CHECKPOINT_EVERY_SECONDS  - after this many seconds
+    *    whichever comes first. The checkpoints go in CHECKPOINT_DIRECTORY, and
+    *    assigning the weights "from the latest checkpoint" resumes from there.
+    * 
+    * Use these variables (or setCheckpointing) to change the defaults
+    */
+   final static Integer CHECKPOINT_EVERY_PASSES = 100000;
+   final static Integer CHECKPOINT_EVERY_SECONDS = 600;
+   final static String CHECKPOINT_DIRECTORY = "checkpoints";
+
    private Scanner in;        //used to read in user input
 
    private int numInputs;     //the number of inputs in the perceptron
@@ -129,8 +296,13 @@ public class XOROptimized
    private double[][] inputs;          //what we are given
    private double[][] outputs;         //the results we arrive at after evaluating the network
    private double[][] T;               //the results we want (target outputs)
+   private float[][] floatInputs;      //the inputs while training in float (inputs is then null)
+   private float[][] floatT;           //the targets while training in float (T is then null)
 
    private double[][] testInputs;      //inputs used to test the network once it is done running
+   private BitRows packedInputs;       //the training images as bits when PACKED_INPUTS (inputs is then null)
+   private BitRows packedTestInputs;   //the test images as bits when PACKED_INPUTS (testInputs is then null)
+   private double[][] testT;           //the targets of the test inputs (a row is null when there is none)
 
    /*
     * 1-D array of the hidden nodes
@@ -149,8 +321,59 @@ public class XOROptimized
     */
    private double[] hidden;
 
-   private double[][] weightskj;       //layer of weights between input layer and hidden layer
-   private double[][] weightsji;       //layer of weights between hidden layer and output layer
+   /*
+    * The two layers of weights, each kept in one flat array (see WeightMatrix)
+    * 
+    * They are stored with one row per node they feed into, so weightskj holds
+    *    wkj at (j, k) and weightsji holds wji at (i, j). The dot products in
+    *    the forward pass then walk each row straight through.
+    * 
+    * Both are null while training in float; the float weights are in
+    *    floatNetwork then (see setFloatPrecision and doubleWeights()).
+    */
+   private WeightMatrix weightskj;     //layer of weights between input layer and hidden layer
+   private WeightMatrix weightsji;     //layer of weights between hidden layer and output layer
+
+   /*
+    * The forward engine
+    *    hiddenLayer evaluates input -> hidden using weightskj
+    *    outputLayer evaluates hidden -> output using weightsji
+    * 
+    * Each layer keeps its own theta, activation, omega, and psi arrays, so
+    *    hidden, thetaj, thetai, psii, omegaj, and psij below are the very same
+    *    arrays the layers fill in. There are no layers (and all of these are
+    *    null) while training in float.
+    */
+   private Layer hiddenLayer;
+   private Layer outputLayer;
+   private int batchSize;              //the number of models per change of the weights
+   private Activation hiddenActivation;//the activation function of the hidden layer
+   private Activation outputActivation;//the activation function of the output layer
+   private ParallelTrainer parallelTrainer;//trains on several threads, null when training on one
+   private HogwildTrainer hogwildTrainer;  //trains on several threads with no locks, null when not
+   private double testRowsPerSecond;       //how fast the last call to scoreTests() went
+   private BatchScorer scorer;             //scores the test inputs (made the first time it is needed)
+   private FloatNetwork floatNetwork;      //trains in single precision, null when training in double
+   private Checkpointer checkpointer;      //saves checkpoints while training, null when not
+   private Optimizer optimizer;            //changes the weights by their gradient
+   private double[] savedOptimizerState;   //the optimizer state of the checkpoint resumed from, else null
+   private int iteration;                  //the passes train() has made (kept when resuming)
+   private LearningRateSchedule schedule;  //changes lambda from one pass to the next
+   private EarlyStopping earlyStopping;    //decides when train() stops early, new for each call
+   private int stallPasses;                //see STALL_PASSES
+   private double minImprovement;          //see MIN_IMPROVEMENT
+   private int validationEveryPasses;      //see VALIDATION_EVERY_PASSES
+   private int validationPatience;         //see VALIDATION_PATIENCE
+   private WeightMatrix bestkj;            //weightskj at the best validation error, else null
+   private WeightMatrix bestji;            //weightsji at the best validation error, else null
+   private double[] bestState;             //the optimizer state at the same pass
+   private WeightMatrix stablekj;          //weightskj at the lowest training error copied (see STABLE_EVERY_PASSES)
+   private WeightMatrix stableji;          //weightsji at the same pass
+   private double[] stableState;           //the optimizer state at the same pass
+   private float[] bestFloats;             //the float weights at the best validation error, when training in float
+   private float[] stableFloats;           //the float weights at the stable pass, when training in float
+   private double stableError;             //the training error of the pass stablekj and stableji were copied at
+   private int stablePass;                 //that pass
 
    /*
     * Defining these collections makes coding the back propagation algorithm
@@ -191,14 +414,429 @@ public class XOROptimized
       this.assignWeights();
 
       this.outputs = new double[this.numModels][this.numOutputs];
-      this.hidden = new double[this.numHiddens];
-      this.psii = new double[this.numOutputs];
-      this.thetai = new double[this.numOutputs];
-      this.thetaj = new double[this.numHiddens];
-      this.omegaj = new double[this.numHiddens];
-      this.psij = new double[this.numHiddens];
+      Layer.setPackedInputs(XOROptimized.PACKED_INPUTS);
+      if (this.hiddenActivation == null)                                      //else the weights file said
+         this.hiddenActivation = XOROptimized.HIDDEN_ACTIVATION;
+      if (this.outputActivation == null)
+         this.outputActivation = XOROptimized.OUTPUT_ACTIVATION;
+      this.setFloatPrecision(XOROptimized.FLOAT_PRECISION);                  //first, so float never makes the layers
+      this.setBatchSize(XOROptimized.BATCH_SIZE);
+      this.setTrainingThreads(XOROptimized.TRAINING_THREADS, XOROptimized.HOGWILD);
+      this.setCheckpointing(XOROptimized.CHECKPOINT_EVERY_PASSES, XOROptimized.CHECKPOINT_EVERY_SECONDS);
+      this.setOptimizer(Optimizer.forName(XOROptimized.OPTIMIZER, this.LAMBDA));
+      this.setSchedule(LearningRateSchedule.forName(XOROptimized.LR_SCHEDULE, this.LAMBDA));
+      this.setEarlyStopping(XOROptimized.STALL_PASSES, XOROptimized.MIN_IMPROVEMENT,
+                            XOROptimized.VALIDATION_EVERY_PASSES, XOROptimized.VALIDATION_PATIENCE);
+      if (this.savedOptimizerState != null && !this.optimizer.setState(this.savedOptimizerState))
+         System.out.println("The checkpoint has no " + this.optimizer.getName() + " state to resume; starting it from 0.");
+      this.savedOptimizerState = null;
    }//public XOROptimized()
 
+   /**
+    * Chooses how the weights are changed by their gradient from now on
+    *    The optimizer is attached to weightskj and weightsji, so any state it
+    *    had starts again from 0. (While training in float those are null, which
+    *    is fine for sgd, the only optimizer float allows; it is attached again
+    *    when float is turned off.)
+    * 
+    * @param myOptimizer   the optimizer (see Optimizer.forName)
+    * @throws IllegalStateException  if it is not sgd and training is in float or lock-free
+    */
+   public void setOptimizer(Optimizer myOptimizer)
+   {
+      if (this.floatNetwork != null)
+         XOROptimized.requireSgd(myOptimizer, "Training in float");
+      if (this.hogwildTrainer != null)
+         XOROptimized.requireSgd(myOptimizer, "Lock-free (Hogwild) training");
+      this.optimizer = myOptimizer;
+      this.optimizer.attach(new WeightMatrix[] {this.weightskj, this.weightsji});
+      return;
+   }//public void setOptimizer(Optimizer myOptimizer)
+
+   /**
+    * Makes sure an optimizer is plain gradient descent, for the ways of
+    *    training that only do that (FloatNetwork and HogwildTrainer)
+    * 
+    * @param myOptimizer   the optimizer (or null if there is none yet)
+    * @param what          the way of training, for the message
+    * @throws IllegalStateException  if the optimizer keeps state (is not sgd)
+    */
+   private static void requireSgd(Optimizer myOptimizer, String what)
+   {
+      if (myOptimizer != null && !myOptimizer.isStateless())
+         throw new IllegalStateException(what + " only works with sgd, not " + myOptimizer.getName());
+      return;
+   }//private static void requireSgd(Optimizer myOptimizer, String what)
+
+   /**
+    * Chooses how lambda changes from one pass of train() to the next
+    * 
+    * @param mySchedule    the schedule (see LearningRateSchedule.forName)
+    */
+   public void setSchedule(LearningRateSchedule mySchedule)
+   {
+      this.schedule = mySchedule;
+      return;
+   }//public void setSchedule(LearningRateSchedule mySchedule)
+
+   /**
+    * Sets when train() stops early (see EarlyStopping); 0 turns each one off
+    *    Divergence is always checked, with DIVERGENCE_FACTOR.
+    * 
+    * @param myStallPasses          passes the error can go without going down by myMinImprovement
+    * @param myMinImprovement       the fraction of its best the error has to go down by
+    * @param myValidationEvery      passes between finding the validation error
+    * @param myValidationPatience   checks without a better validation error before stopping
+    */
+   public void setEarlyStopping(int myStallPasses, double myMinImprovement,
+                                int myValidationEvery, int myValidationPatience)
+   {
+      this.stallPasses = myStallPasses;
+      this.minImprovement = myMinImprovement;
+      this.validationEveryPasses = myValidationEvery;
+      this.validationPatience = myValidationPatience;
+      return;
+   }//public void setEarlyStopping(int myStallPasses, double myMinImprovement, ...)
+
+   /**
+    * Chooses the activation function of each layer of this network, including
+    *    the layers of the training threads (see Activations)
+    * 
+    * @param hidden  the activation function of the hidden layer
+    * @param output  the activation function of the output layer
+    */
+   public void setActivations(Activation hidden, Activation output)
+   {
+      if (this.floatNetwork != null && (!Activations.isSigmoid(hidden) || !Activations.isSigmoid(output)))
+         throw new IllegalStateException("Training in float only works with the sigmoid, not "
+               + hidden.getName() + " / " + output.getName());
+      this.hiddenActivation = hidden;
+      this.outputActivation = output;
+      if (this.hiddenLayer != null)                                           //there are none while training in float
+      {
+         this.hiddenLayer.setActivation(hidden);
+         this.outputLayer.setActivation(output);
+      }
+      if (this.parallelTrainer != null)
+         this.parallelTrainer.setActivations(hidden, output);
+      if (this.hogwildTrainer != null)
+         this.hogwildTrainer.setActivations(hidden, output);
+      return;
+   }//public void setActivations(Activation hidden, Activation output)
+
+   /**
+    * Sets how often train() saves a checkpoint to CHECKPOINT_DIRECTORY
+    *    The checkpoints are written on another thread (see Checkpointer)
+    * 
+    * @param everyPasses   passes between checkpoints, 0 for never
+    * @param everySeconds  seconds between checkpoints, 0 for never
+    */
+   public void setCheckpointing(int everyPasses, int everySeconds)
+   {
+      if (this.checkpointer != null)
+         this.checkpointer.finish();
+      this.checkpointer = null;
+      if (everyPasses > 0 || everySeconds > 0)
+         this.checkpointer = new Checkpointer(new File(XOROptimized.CHECKPOINT_DIRECTORY),
+                                              everyPasses, everySeconds, this.iteration);
+      return;
+   }//public void setCheckpointing(int everyPasses, int everySeconds)
+
+   /**
+    * Finds the state the way of changing the weights keeps from one pass to
+    *    the next, for the checkpoints (see Optimizer.getState)
+    *    Plain gradient descent keeps none.
+    * 
+    * @return  the state as one flat array
+    */
+   private double[] getOptimizerState()
+   {
+      return this.optimizer.getState();
+   }//private double[] getOptimizerState()
+
+   /**
+    * Chooses between double and single precision (float) for training
+    * 
+    * Switching to float rounds the current weights, training inputs, and
+    *    targets into a FloatNetwork, which evaluateAndImproveNetwork() and
+    *    getError() use from then on, and drops the double ones: no double
+    *    weights, training set, or layers (with their gradients) are kept while
+    *    training in float, so the training set and the weights take half the
+    *    memory. With FLOAT_PRECISION the images are loaded straight into
+    *    floats and are never doubles. The weights are only made in double
+    *    again to be saved, exported, or checkpointed (see doubleWeights()).
+    *    Switching back widens the float weights, inputs, and targets into
+    *    doubles and makes the layers again.
+    * 
+    * FloatNetwork only does online training on this thread, so float is
+    *    refused with a batch size above 1 or more than one training thread.
+    * 
+    * @param useFloats  true for single precision, false for double
+    * @throws IllegalStateException  if useFloats and the activations are not the sigmoid,
+    *                                the optimizer is not sgd, the batch size is not 1,
+    *                                there is more than one training thread, or the
+    *                                inputs are packed
+    */
+   public void setFloatPrecision(boolean useFloats)
+   {
+      if (useFloats == (this.floatNetwork != null))
+         return;
+      if (useFloats)
+      {
+         this.requireSigmoid("Training in float");
+         XOROptimized.requireSgd(this.optimizer, "Training in float");
+         if (this.batchSize > 1)
+            throw new IllegalStateException("Training in float only works with a batch size of 1, not "
+                  + this.batchSize);
+         if (this.parallelTrainer != null || this.hogwildTrainer != null)
+            throw new IllegalStateException("Training in float only works on one thread");
+         this.requireDenseInputs("Training in float");
+         if (this.inputs != null)                                             //else the images were loaded as floats
+            this.floatInputs = FloatNetwork.toFloats(this.inputs);
+         this.floatT = FloatNetwork.toFloats(this.T);
+         this.floatNetwork = new FloatNetwork(this.weightskj, this.weightsji, this.floatInputs, this.floatT);
+         this.inputs = null;
+         this.T = null;
+         this.weightskj = null;
+         this.weightsji = null;
+         this.hiddenLayer = null;
+         this.outputLayer = null;
+         this.hidden = null;
+         this.psii = null;
+         this.thetai = null;
+         this.thetaj = null;
+         this.omegaj = null;
+         this.psij = null;
+         return;
+      }
+      this.inputs = FloatNetwork.toDoubles(this.floatInputs);
+      this.T = FloatNetwork.toDoubles(this.floatT);
+      WeightMatrix[] weights = this.floatNetwork.toWeightMatrices();
+      this.weightskj = weights[0];
+      this.weightsji = weights[1];
+      this.floatInputs = null;
+      this.floatT = null;
+      this.floatNetwork = null;
+      this.setBatchSize(this.batchSize);                                     //makes the layers again
+      if (this.optimizer != null)
+         this.optimizer.attach(new WeightMatrix[] {this.weightskj, this.weightsji});
+      return;
+   }//public void setFloatPrecision(boolean useFloats)
+
+   /**
+    * Trains numPasses times in double precision and numPasses times in single
+    *    precision, both from the current weights (the float ones, when training
+    *    in float), then prints the error of each
+    *    and the largest difference between their outputs on the training and
+    *    test inputs.
+    * 
+    * When training in float, this switches to double for the time it takes
+    *    (which widens the float values exactly). The weights and the precision
+    *    are put back the way they were when this is done.
+    * 
+    * @param numPasses  the number of passes over the models for each
+    */
+   public void compareFloatPrecision(int numPasses)
+   {
+      this.requireSigmoid("Training in float");
+      this.requireDenseInputs("Training in float");
+      boolean wasFloat = this.floatNetwork != null;
+      this.setFloatPrecision(false);                                          //trains the double weights below
+      WeightMatrix startkj = this.weightskj.copy();
+      WeightMatrix startji = this.weightsji.copy();
+      FloatNetwork floats = new FloatNetwork(startkj, startji, FloatNetwork.toFloats(this.inputs),
+                                             FloatNetwork.toFloats(this.T));
+
+      double doubleError = 0;
+      for (int pass = 0; pass < numPasses; pass++)
+         doubleError = this.evaluateAndImproveNetwork();
+      double floatError = 0;
+      for (int pass = 0; pass < numPasses; pass++)
+         floatError = floats.evaluateAndImproveNetwork((float) this.LAMBDA);
+
+      double worst = 0;
+      double[] floatOutputs = new double[this.numOutputs];
+      double[][][] sets = {this.inputs, this.testInputs};
+      for (double[][] set : sets)
+         for (double[] input : set)
+         {
+            double[] doubleOutputs = this.forward(input);
+            floats.predict(input, floatOutputs);
+            for (int i = 0; i < this.numOutputs; i++)
+               worst = Math.max(worst, Math.abs(doubleOutputs[i] - floatOutputs[i]));
+         }
+      System.out.println("Error (double):\t" + doubleError);
+      System.out.println("Error (float):\t" + floatError);
+      System.out.println("Largest output difference:\t" + worst);
+
+      this.weightskj.copyFrom(startkj);                                       //puts the weights back
+      this.weightsji.copyFrom(startji);
+      this.setFloatPrecision(wasFloat);
+      return;
+   }//public void compareFloatPrecision(int numPasses)
+
+   /**
+    * Sets the number of threads used by evaluateAndImproveNetwork()
+    * 
+    * With more than one thread, every pass is one step of full-batch gradient
+    *    descent split across the threads (see ParallelTrainer). Since the
+    *    gradients of all models are added, LAMBDA may need to be smaller.
+    * 
+    * With hogwild, every thread instead changes the weights after each of its
+    *    models with no locks (see HogwildTrainer), which is online training
+    *    spread over the threads.
+    * 
+    * @param numThreads the number of threads (1 to train on this thread)
+    * @param hogwild    true to train without locks, false to add up one gradient
+    * @throws IllegalStateException  if hogwild with more than one thread and the optimizer is not sgd,
+    *                                or more than one thread while training in float or
+    *                                with packed inputs
+    */
+   public void setTrainingThreads(int numThreads, boolean hogwild)
+   {
+      if (numThreads > 1 && this.floatNetwork != null)
+         throw new IllegalStateException("Training in float only works on one thread");
+      if (numThreads > 1)
+         this.requireDenseInputs("Training on more than one thread");
+      if (numThreads > 1 && hogwild)
+         XOROptimized.requireSgd(this.optimizer, "Lock-free (Hogwild) training");
+      if (this.parallelTrainer != null)
+         this.parallelTrainer.shutdown();
+      if (this.hogwildTrainer != null)
+         this.hogwildTrainer.shutdown();
+      this.parallelTrainer = null;
+      this.hogwildTrainer = null;
+      if (numThreads > 1 && hogwild)
+         this.hogwildTrainer = new HogwildTrainer(this.weightskj, this.weightsji,
+                                                  this.inputs, this.T, numThreads);
+      else if (numThreads > 1)
+         this.parallelTrainer = new ParallelTrainer(this.weightskj, this.weightsji,
+                                                    this.inputs, this.T, numThreads);
+      if (this.hogwildTrainer != null)
+         this.hogwildTrainer.setActivations(this.hiddenActivation, this.outputActivation);
+      if (this.parallelTrainer != null)
+         this.parallelTrainer.setActivations(this.hiddenActivation, this.outputActivation);
+      return;
+   }//public void setTrainingThreads(int numThreads, boolean hogwild)
+
+   /**
+    * Trains numPasses times with lock-free training on numThreads threads and
+    *    numPasses times with online training on this thread, both from the
+    *    current weights, and prints the error of both after every pass.
+    *    Both sides are plain gradient descent in double precision with LAMBDA,
+    *    whatever optimizer and precision this network is set to.
+    * 
+    * When training in float, this switches to double for the time it takes
+    *    (see compareFloatPrecision). The weights, the optimizer and its state,
+    *    and the precision are put back the way they were when this is done.
+    * 
+    * @param numThreads the number of threads for the lock-free training
+    * @param numPasses  the number of passes over the models for each
+    */
+   public void compareHogwild(int numThreads, int numPasses)
+   {
+      this.requireDenseInputs("Lock-free (Hogwild) training");
+      boolean wasFloat = this.floatNetwork != null;
+      this.setFloatPrecision(false);                                          //starts from the float weights
+      WeightMatrix startkj = this.weightskj.copy();
+      WeightMatrix startji = this.weightsji.copy();
+      ParallelTrainer savedParallel = this.parallelTrainer;
+      HogwildTrainer savedHogwild = this.hogwildTrainer;
+      Optimizer savedOptimizer = this.optimizer;
+      int savedBatchSize = this.batchSize;
+      this.parallelTrainer = null;
+      this.hogwildTrainer = null;
+      this.optimizer = Optimizer.sgd(this.LAMBDA);                            //the same updates as the Hogwild side
+      this.optimizer.attach(new WeightMatrix[] {this.weightskj, this.weightsji});
+      this.setBatchSize(1);
+
+      double[] serialErrors = new double[numPasses];
+      long start = System.nanoTime();
+      for (int pass = 0; pass < numPasses; pass++)
+         serialErrors[pass] = this.evaluateAndImproveNetwork();
+      double serialMs = (System.nanoTime() - start) / 1e6;
+
+      HogwildTrainer hogwild = new HogwildTrainer(startkj.copy(), startji.copy(),
+                                                  this.inputs, this.T, numThreads);
+      hogwild.setActivations(this.hiddenActivation, this.outputActivation);
+      double[] hogwildErrors = new double[numPasses];
+      start = System.nanoTime();
+      for (int pass = 0; pass < numPasses; pass++)
+         hogwildErrors[pass] = hogwild.evaluateAndImproveNetwork(this.LAMBDA);
+      double hogwildMs = (System.nanoTime() - start) / 1e6;
+      hogwild.shutdown();
+
+      System.out.println("Pass\tOne thread\t\tHogwild (" + hogwild.getNumThreads() + " threads)");
+      for (int pass = 0; pass < numPasses; pass++)
+         System.out.println(pass + "\t" + serialErrors[pass] + "\t" + hogwildErrors[pass]);
+      System.out.println("Time (ms):\t" + serialMs + "\t" + hogwildMs);
+
+      this.weightskj.copyFrom(startkj);                                       //puts the weights back
+      this.weightsji.copyFrom(startji);
+      this.setBatchSize(savedBatchSize);
+      this.parallelTrainer = savedParallel;
+      this.hogwildTrainer = savedHogwild;
+      this.optimizer = savedOptimizer;                                        //its state was not touched
+      this.setFloatPrecision(wasFloat);
+      return;
+   }//public void compareHogwild(int numThreads, int numPasses)
+
+   /**
+    * Prints how long a pass of data-parallel training takes on 1, 2, 4, ...
+    *    threads, up to the number of cores (see ParallelTrainer.reportScaling)
+    *    The weights of this network are not changed.
+    * 
+    * @param numPasses  the number of passes to time for each number of threads
+    */
+   public void reportParallelScaling(int numPasses)
+   {
+      this.requireDenseInputs("Training on more than one thread");
+      this.requireDouble("Training on more than one thread");
+      ParallelTrainer.reportScaling(this.weightskj, this.weightsji, this.inputs, this.T,
+                                    this.LAMBDA, numPasses);
+      return;
+   }//public void reportParallelScaling(int numPasses)
+
+   /**
+    * Sets the number of models evaluated together before the weights are changed
+    *    and makes the layers of the forward engine with room for that many models
+    * 
+    * hidden, thetaj, thetai, psii, omegaj, and psij are pointed at the first
+    *    row of the new layers
+    * 
+    * If the inputs are mostly 0, the hidden layer is given them as SparseRows
+    *    or BitRows (see Layer.chooseInputRows), so training only touches the
+    *    inputs that are not 0
+    * 
+    * While training in float there are no layers, so only the size is kept.
+    * 
+    * @param mySize  the batch size (1 for online training)
+    * @throws IllegalStateException  if it is more than 1 while training in float
+    */
+   public void setBatchSize(int mySize)
+   {
+      int size = Math.max(1, Math.min(mySize, this.numModels));
+      if (size > 1 && this.floatNetwork != null)
+         throw new IllegalStateException("Training in float only works with a batch size of 1, not " + size);
+      this.batchSize = size;
+      if (this.floatNetwork != null)                                          //float has no layers (see setFloatPrecision)
+         return;
+      this.hiddenLayer = new Layer(this.weightskj, this.batchSize);
+      this.outputLayer = new Layer(this.weightsji, this.batchSize);
+      this.hiddenLayer.setInputRows(this.packedInputs != null ? this.packedInputs
+                                                              : Layer.chooseInputRows(this.inputs));
+      this.hiddenLayer.setActivation(this.hiddenActivation);
+      this.outputLayer.setActivation(this.outputActivation);
+
+      this.hidden = this.hiddenLayer.getActivations();
+      this.psii = this.outputLayer.getPsi();
+      this.thetai = this.outputLayer.getTheta();
+      this.thetaj = this.hiddenLayer.getTheta();
+      this.omegaj = this.hiddenLayer.getOmega();
+      this.psij = this.hiddenLayer.getPsi();
+      return;
+   }//public void setBatchSize(int mySize)
+
    /**
     * Prints out the values in a 2D array of doubles
     * 
@@ -264,6 +902,8 @@ public class XOROptimized
    /**
     * Assigns the inputs from a file
     *    File must be the .bmp file that DibDump can understand;
+    *    When PACKED_INPUTS, the images go into packedInputs and packedTestInputs
+    *    instead, and inputs and testInputs stay null.
     *             
     * @Postcondition numModels, numInputs, numOutputs, numTestModels,
     *                inputs[][], T[][], testInputs[][], and testTargets[][] must be assigned
@@ -282,40 +922,82 @@ public class XOROptimized
       this.numTestModels = testFiles.length - 1;
       
       DibDump temp = new DibDump();
-      temp.readInBMP(inFilePathCharacters + characterFiles[1]);
-      double[] flattened = temp.flattenImageArray();
-      
-      this.numInputs = flattened.length;
-      this.numOutputs = 1;
-      this.inputs = new double[this.numModels][this.numInputs];
-      this.outputs = new double[this.numModels][this.numOutputs];
-      this.T = new double[this.numModels][this.numOutputs];
-      
-      this.testInputs = new double[this.numTestModels][this.numInputs];
+      try
+      {
+         this.numInputs = temp.readPelCount(inFilePathCharacters + characterFiles[1]);
+         this.numOutputs = 1;
+         if (XOROptimized.PACKED_INPUTS)                                      //the images only ever go into bits
+         {
+            this.packedInputs = new BitRows(this.numModels, this.numInputs);
+            this.packedTestInputs = new BitRows(this.numTestModels, this.numInputs);
+         }
+         else if (XOROptimized.FLOAT_PRECISION)                               //the training images only ever go into floats
+         {
+            this.floatInputs = new float[this.numModels][this.numInputs];
+            this.testInputs = new double[this.numTestModels][this.numInputs];
+         }
+         else
+         {
+            this.inputs = new double[this.numModels][this.numInputs];
+            this.testInputs = new double[this.numTestModels][this.numInputs];
+         }
+         this.outputs = new double[this.numModels][this.numOutputs];
+         this.T = new double[this.numModels][this.numOutputs];
+         this.testT = new double[this.numTestModels][];
 
-      double space = (.9)/(this.numModels - 1);
+         double space = (.9)/(this.numModels - 1);
 
-      for (int m = 0; m < this.numModels; m++)
-      {
-         temp = new DibDump();
-         temp.readInBMP(inFilePathCharacters + characterFiles[m+1]);
-         flattened = temp.flattenImageArray();
-         for (int k = 0; k < this.numInputs; k++)
+         String[] characterPaths = new String[this.numModels];
+         for (int m = 0; m < this.numModels; m++)
          {
-            this.inputs[m][k] = flattened[k];
+            characterPaths[m] = inFilePathCharacters + characterFiles[m+1];
+            this.T[m][0] = space*(m+1);
+         }//for (int m = 0; m < this.numModels; m++)
+         String[] testPaths = new String[this.numTestModels];
+         for (int m = 0; m < this.numTestModels; m++)
+         {
+            testPaths[m] = inFilePathTestCharacters + testFiles[m+1];
+            for (int c = 0; c < this.numModels; c++)                 //a test file named like a character has its target
+               if (testFiles[m+1].equals(characterFiles[c+1]))
+                  this.testT[m] = this.T[c];
          }
-         this.T[m][0] = space*(m+1);
-      }//for (int m = 0; m < this.numModels; m++)
-      for (int m = 0; m < this.numTestModels; m++)
-      {
-         temp = new DibDump();
-         temp.readInBMP(inFilePathTestCharacters + testFiles[m+1]);
-         flattened = temp.flattenImageArray();
-         for (int k = 0; k < this.numInputs; k++)
+
+         DatasetCache cache = new DatasetCache(new File(XOROptimized.IMAGE_CACHE_FILE_NAME));
+         ImageLoader loader = new ImageLoader(XOROptimized.IMAGE_LOADING_THREADS);
+         try
          {
-            this.testInputs[m][k] = flattened[k];
+            long start = System.nanoTime();
+            if (XOROptimized.PACKED_INPUTS)
+            {
+               cache.load(characterPaths, this.packedInputs, loader);  //each image goes straight into its row of bits
+               cache.load(testPaths, this.packedTestInputs, loader);
+            }
+            else if (XOROptimized.FLOAT_PRECISION)
+            {
+               cache.load(characterPaths, this.floatInputs, loader);  //each image goes straight into its row of floats
+               cache.load(testPaths, this.testInputs, loader);
+            }
+            else
+            {
+               cache.load(characterPaths, this.inputs, loader);  //each image goes straight into its row of inputs
+               cache.load(testPaths, this.testInputs, loader);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            cache.save();
+            System.out.printf("Loaded %d images in %.3f s (%.0f files/s): %d from %s, %d decoded on %d threads\n",
+                              this.numModels + this.numTestModels, seconds,
+                              (this.numModels + this.numTestModels) / seconds, cache.getNumHits(),
+                              XOROptimized.IMAGE_CACHE_FILE_NAME, cache.getNumMisses(), loader.getNumThreads());
+         }
+         finally
+         {
+            loader.shutdown();
          }
       }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
       //this.print2DDoubleArray(this.inputs);
       return;
    }//public void assignInputsAndTargetsFromFile()
@@ -349,21 +1031,28 @@ public class XOROptimized
       {
          this.testInputs[m] = InputPatterns.TEST_PATTERNS[m].getInputs();
       }
+      this.testT = new double[this.numTestModels][];                         //initializes test targets
+      for (int m = 0; m < this.numTestModels; m++)
+      {
+         this.testT[m] = InputPatterns.TEST_PATTERNS[m].getExpectedOutputs();
+      }
       return;
    }//public void assignPatternedInputsAndTargets()
 
    /**
-    * Assigns the weights in one of two ways:
-    *    randomly=
-    *    from a file
-    * Will assign weights in one of the above three ways, depending on user's answer
+    * Assigns the weights in one of four ways:
+    *    from the model file
+    *    randomly
+    *    from a text file
+    *    from the latest checkpoint (to resume training)
+    * Will assign weights in one of the above four ways, depending on user's answer
     * 
-    * @Postcondition numHiddens, weightskj[][], weightsjk[][] must be assigned
+    * @Postcondition numHiddens, weightskj, weightsji must be assigned
     */
    public void assignWeights()
    {
       System.out.println("How would you like to assign weights:");
-      System.out.println("(1)\tfromfile\n(2)\trandomly\n");
+      System.out.println("(1)\tfromfile\n(2)\trandomly\n(3)\tfrom text file\n(4)\tfrom the latest checkpoint\n");
 
       int reply = in.nextInt();
       switch (reply)
@@ -374,6 +1063,12 @@ public class XOROptimized
       case 2:
          this.assignWeightsRandomly();
          break;
+      case 3:
+         this.assignWeightsFromTextFile();
+         break;
+      case 4:
+         this.assignWeightsFromCheckpoint();
+         break;
       default:
          System.out.println("You must choose a way to assign the weights."
                + "Please restart the program.");
@@ -383,60 +1078,107 @@ public class XOROptimized
    }//public void assignWeights()
 
    /**
-    * Method assignWeightsFromFile() assigns the weights from a file
+    * Method assignWeightsFromFile() assigns the weights from the model file
+    *    The file says how many hidden nodes there are (see ModelFile)
     * 
-    * File is called whatever is saved to XOROptimized.WEIGHTS_FILE_NAME
+    * File is called whatever is saved to XOROptimized.MODEL_FILE_NAME
+    * Assigns random weights if the file cannot be read or is for another network
     */
    public void assignWeightsFromFile()
    {
       try
       {
-         System.out.println("How many hidden nodes were these inputs trained with?");
-         this.numHiddens = in.nextInt();
-         
-         File file = new File(XOROptimized.WEIGHTS_FILE_NAME);
-         Scanner inFile = new Scanner(file);
-         
-         /*
-          * Creating a one-dimensional array of doubles to collect all the weights in the file
-          *    Do this before setting private instance variables weightskj and weightsji
-          *    It's easier to do this because there are no errors when using
-          *       while (inFile.hasNextDouble()) but there are a couple of errors when using
-          *       if (inFile.hasNextDouble())
-          * It's worth not having to deal with the hassle of so many errors.
-          *    After all, it's only an extra couple thousand calculations that we only do once.
-          */
-         double [] allWeights = new double[this.numInputs*this.numHiddens + this.numHiddens*this.numOutputs];
-         int count = 0;
-         while (inFile.hasNextDouble())
-         {
-            allWeights[count] = inFile.nextDouble();                       //collects the list of weights from file
-            count++;
-         }
-         
-         this.weightskj = new double[this.numInputs][this.numHiddens];     //initializes the weights
-         this.weightsji = new double[this.numHiddens][this.numOutputs];
-         
-         /*
-          * Sets the weightskj and weightsji using the collection of weights allWeights
-          */
-         for (int k = 0; k < this.numInputs; k++)
-            for (int j = 0; j < this.numHiddens; j++)
-               this.weightskj[k][j] = allWeights[k*this.numHiddens + j];
-         
-         for (int j = 0; j < this.numHiddens; j++)
-            for (int i = 0; i < this.numOutputs; i++)
-               this.weightsji[j][i] = allWeights[this.numInputs*this.numHiddens + j*this.numOutputs + i];
-          
-      }//try
-      catch (FileNotFoundException e)
+         this.useModelFile(ModelFile.read(new File(XOROptimized.MODEL_FILE_NAME)));
+      }
+      catch (IOException e)
       {
-         // TODO Auto-generated catch block
-         e.printStackTrace();
+         System.out.println("Could not use " + XOROptimized.MODEL_FILE_NAME + ": " + e.getMessage());
+         this.assignWeightsRandomly();
       }
       return;
    }//public void assignWeightsFromFile()
 
+   /**
+    * Assigns the weights from a text file with one weight per line
+    *    wkj with k on the outside, then wji with j on the outside
+    *    The number of hidden nodes is worked out from the number of weights
+    * 
+    * File is called whatever is saved to XOROptimized.WEIGHTS_FILE_NAME
+    * Assigns random weights if the file cannot be read or is for another network
+    */
+   public void assignWeightsFromTextFile()
+   {
+      try
+      {
+         this.useModelFile(ModelFile.readText(new File(XOROptimized.WEIGHTS_FILE_NAME),
+                                              this.numInputs, this.numOutputs));
+      }
+      catch (IOException e)
+      {
+         System.out.println("Could not use " + XOROptimized.WEIGHTS_FILE_NAME + ": " + e.getMessage());
+         this.assignWeightsRandomly();
+      }
+      return;
+   }//public void assignWeightsFromTextFile()
+
+   /**
+    * Assigns the weights from the newest checkpoint in CHECKPOINT_DIRECTORY
+    *    that reads back correctly and has this network's number of inputs
+    *    and outputs, and carries on counting passes from it
+    *    Assigns random weights if there is no such checkpoint
+    */
+   public void assignWeightsFromCheckpoint()
+   {
+      Checkpoint checkpoint = Checkpointer.latest(new File(XOROptimized.CHECKPOINT_DIRECTORY),
+                                                  this.numInputs, this.numOutputs);
+      if (checkpoint == null)
+      {
+         System.out.println("There is no checkpoint to resume from.");
+         this.assignWeightsRandomly();
+         return;
+      }
+      try
+      {
+         this.useModelFile(checkpoint.getModel());
+         this.iteration = (int) checkpoint.getIteration();
+         this.savedOptimizerState = checkpoint.getOptimizerState();           //put back once the optimizer is made
+         System.out.println("Resuming from pass " + this.iteration + " with error " + checkpoint.getError());
+      }
+      catch (IOException e)
+      {
+         System.out.println("Could not resume from the checkpoint: " + e.getMessage());
+         this.assignWeightsRandomly();
+      }
+      return;
+   }//public void assignWeightsFromCheckpoint()
+
+   /**
+    * Takes numHiddens, weightskj, weightsji, and (if the file says) the
+    *    activation functions from a file that was read
+    * 
+    * @param model   the weights that were read
+    * @throws IOException  if the file was made for a different number of inputs or outputs
+    */
+   private void useModelFile(ModelFile model) throws IOException
+   {
+      if (model.getNumInputs() != this.numInputs || model.getNumOutputs() != this.numOutputs)
+         throw new IOException("The weights are for " + model.getNumInputs() + " inputs and "
+               + model.getNumOutputs() + " outputs, but there are " + this.numInputs
+               + " inputs and " + this.numOutputs + " outputs");
+      this.numHiddens = model.getNumHiddens();
+      this.weightskj = model.getWeightskj();
+      this.weightsji = model.getWeightsji();
+      if (model.getHiddenActivation() != null)                                //text files do not say
+      {
+         this.hiddenActivation = model.getHiddenActivation();
+         this.outputActivation = model.getOutputActivation();
+         if (this.hiddenActivation != XOROptimized.HIDDEN_ACTIVATION || this.outputActivation != XOROptimized.OUTPUT_ACTIVATION)
+            System.out.println("The weights were trained with " + this.hiddenActivation.getName() + " / "
+                               + this.outputActivation.getName() + "; using those.");
+      }
+      return;
+   }//private void useModelFile(ModelFile model)
+
    /**
     * Assigns random weights to each of the weights
     * 
@@ -444,23 +1186,23 @@ public class XOROptimized
     *    RANDOM_ADDER         and         (RANDOM_MULTIPLER - 1) + RANDOM_ADDER
     *    
     * @Precondition  numInputs and numOutputs have been assigned
-    * @Postcondition numHiddens, weightskj[][], weightsjk[][] must be assigned
+    * @Postcondition numHiddens, weightskj, weightsji must be assigned
     */
    public void assignWeightsRandomly()
    {
       System.out.println("How many hidden nodes should there be per model?");
       this.numHiddens = in.nextInt();
-      this.weightskj = new double[this.numInputs][this.numHiddens];
-      for (int k = 0; k < this.numInputs; k++)              //loops through outer loop of weightskj (size is numInputs)
-         for (int j = 0; j < this.numHiddens; j++)          //loops through the inner loop of weightskj (size is numHiddens)
+      this.weightskj = new WeightMatrix(this.numHiddens, this.numInputs);
+      for (int k = 0; k < this.numInputs; k++)              //loops through the inputs (columns of weightskj)
+         for (int j = 0; j < this.numHiddens; j++)          //loops through the hidden nodes (rows of weightskj)
          {
-            weightskj[k][j] = Math.random()*RANDOM_MULTIPLIER + RANDOM_ADDER;
+            weightskj.set(j, k, Math.random()*RANDOM_MULTIPLIER + RANDOM_ADDER);
          }
-      this.weightsji = new double[this.numHiddens][this.numOutputs];
-      for (int j = 0; j < this.numHiddens; j++)             //loops through outer loop of weightsji (size is numHiddens)
-         for (int i = 0; i < this.numOutputs; i++)          //loops through inner loop of weightsji (size is numOutputs)
+      this.weightsji = new WeightMatrix(this.numOutputs, this.numHiddens);
+      for (int j = 0; j < this.numHiddens; j++)             //loops through the hidden nodes (columns of weightsji)
+         for (int i = 0; i < this.numOutputs; i++)          //loops through the outputs (rows of weightsji)
          {
-            weightsji[j][i] = Math.random()*RANDOM_MULTIPLIER + RANDOM_ADDER;
+            weightsji.set(i, j, Math.random()*RANDOM_MULTIPLIER + RANDOM_ADDER);
          }
       return;
    }//public void assignRandomWeights()
@@ -473,12 +1215,15 @@ public class XOROptimized
     * 
     * f(x) = 1 / (1 + e^ (-x))
     * 
+    * The layers of the forward engine use the same function (Layer.f) unless
+    *    they are given another one (setActivations)
+    * 
     * @param x    the double we are putting into the function
     * @return     the value when x is put into the function
     */
    public double f(double x)
    {
-      return (1 / (1 + Math.exp(-x)));
+      return Layer.f(x);
    }
 
    /**
@@ -495,8 +1240,7 @@ public class XOROptimized
     */
    public double fPrime(double x)
    {
-      double fOfX = this.f(x);
-      return fOfX * (1 - fOfX);
+      return Layer.fPrime(x);
    }
 
    /**
@@ -508,11 +1252,17 @@ public class XOROptimized
     *       MAX_COUNT + 1 iterations or
     *          MAX_COUNT + 1 because we evaluate and improve the network under each model once before the for loop starts
     *       the error is equal to or below what we want it to be (OKAY_ERROR)
+    *       or training stops early (see afterPass(...) and setEarlyStopping)
     * And then prints out the error and the weights
+    * 
+    * lambda changes after every pass as the schedule says (see setSchedule)
+    * 
+    * Saves checkpoints as it goes (see setCheckpointing) and one more at the end
+    *    When resuming from a checkpoint, the count carries on from there.
     */
    public void train()
    {
-      int count = 0;
+      int count = this.iteration;
       /*
        * check if the error is less than the okay error
        *    if it is, then we exit the for loop
@@ -520,28 +1270,217 @@ public class XOROptimized
        *       and improve the weights
        * iterate MAX_COUNT times so we don't get caught in an infinite loop
        */
-      while (this.evaluateAndImproveNetwork() > XOROptimized.OKAY_ERROR &&
-            count < XOROptimized.MAX_COUNT)
+      this.earlyStopping = new EarlyStopping(this.stallPasses, this.minImprovement,
+                                             XOROptimized.DIVERGENCE_FACTOR, this.validationPatience);
+      this.bestkj = null;
+      this.bestji = null;
+      this.bestState = null;
+      this.stablekj = null;
+      this.stableji = null;
+      this.stableState = null;
+      this.bestFloats = null;
+      this.stableFloats = null;
+      String stop = null;                                   //why training stopped early, if it did
+      double error = this.evaluateAndImproveNetwork();
+      while (error > XOROptimized.OKAY_ERROR && count < XOROptimized.MAX_COUNT)
       {
          if (count % 1000 == 0)
             System.out.println("Error"+ count + ":\t" + this.getError());//prints out the error for user
          count++;
+         this.iteration = count;
+         if (this.checkpointer != null && this.checkpointer.isDue(count))
+         {
+            if (this.hasFiniteWeights() && this.hasFiniteState())//never checkpoints weights or state that blew up
+               this.checkpointer.save(count, error, this.toCheckpointModel(), this.getOptimizerState());
+         }
+         stop = this.afterPass(count, error);
+         if (stop != null)
+            break;
+         error = this.evaluateAndImproveNetwork();
+      }
+      if (stop != null)
+      {
+         System.out.println("Stopped early after " + count + " passes: " + stop);
+         if (this.earlyStopping.isDiverged() && this.stableState != null)
+         {
+            this.putBackWeights(this.stablekj, this.stableji, this.stableFloats, this.stableState);//puts back the last good weights
+            System.out.println("Put back the weights of pass " + this.stablePass
+                               + ", with a training error of " + this.stableError);
+         }
+         else if (!this.earlyStopping.isStalled() && this.bestState != null)
+         {
+            this.putBackWeights(this.bestkj, this.bestji, this.bestFloats, this.bestState);//puts back the best weights
+            System.out.println("Put back the weights of pass " + this.earlyStopping.getBestValidationPass()
+                               + ", with a validation error of " + this.earlyStopping.getBestValidation());
+         }
+      }
+      error = this.getError();                              //the error of the weights we end with
+      System.out.println("Error:\t" + error);               //prints out the error for user
+      if (this.checkpointer != null)
+      {
+         if (this.hasFiniteWeights() && this.hasFiniteState())
+            this.checkpointer.save(count, error, this.toCheckpointModel(), this.getOptimizerState());
+         else
+            System.out.println("The weights or the optimizer state are not all numbers, so no checkpoint was saved");
+         this.checkpointer.waitForPending();
       }
-      System.out.println("Error:\t" + this.getError());      //prints out the error for user
       return;
    }//public void train()
 
    /**
-    * We already have a set of inputs and targets that we have set aside for testing
-    *    Resets inputs and T to match testInputs' and testTargets' dimensions
-    * Resets everything dependent on numModels to have the proper dimensions
-    *    inputs[][]
-    *    T[][]
-    *    outputs[][]
+    * Copies weights kept during training back into weightskj and weightsji
+    *    (or into the float network, when training in single precision), and
+    *    the optimizer state kept with them, so a momentum or running average
+    *    from after the weights were kept does not carry on
     * 
-    * Changes the inputs and targets to the values in testInputs and testTargets
+    * @param keptkj     the weights between input and hidden layer to put back (double)
+    * @param keptji     the weights between hidden and output layer to put back (double)
+    * @param keptFloats the weights to put back when training in float (see FloatNetwork.keepWeights)
+    * @param keptState  the optimizer state copied with them
+    */
+   private void putBackWeights(WeightMatrix keptkj, WeightMatrix keptji, float[] keptFloats, double[] keptState)
+   {
+      if (this.floatNetwork != null)
+         this.floatNetwork.putBackWeights(keptFloats);
+      else
+      {
+         this.weightskj.copyFrom(keptkj);
+         this.weightsji.copyFrom(keptji);
+      }
+      this.optimizer.setState(keptState);
+      return;
+   }//private void putBackWeights(...)
+
+   /**
+    * Tells whether every weight is a number (not NaN or infinite)
+    *    When training in single precision, looks at the float weights.
     * 
-    * Tests the network against the test targets
+    * @return  true if every weight of weightskj and weightsji is finite
+    */
+   private boolean hasFiniteWeights()
+   {
+      if (this.floatNetwork != null)
+         return this.floatNetwork.hasFiniteWeights();
+      for (double w : this.weightskj.getData())
+         if (Double.isNaN(w) || Double.isInfinite(w))
+            return false;
+      for (double w : this.weightsji.getData())
+         if (Double.isNaN(w) || Double.isInfinite(w))
+            return false;
+      return true;
+   }//private boolean hasFiniteWeights()
+
+   /**
+    * Tells whether every number of the optimizer state is finite
+    *    A checkpoint with state that blew up would blow the weights up again
+    *    on the first step after resuming.
+    * 
+    * @return  true if no number of the optimizer state is NaN or infinite
+    */
+   private boolean hasFiniteState()
+   {
+      for (double v : this.getOptimizerState())
+         if (Double.isNaN(v) || Double.isInfinite(v))
+            return false;
+      return true;
+   }//private boolean hasFiniteState()
+
+   /**
+    * Changes lambda for the next pass (see setSchedule) and decides whether
+    *    training should stop early (see EarlyStopping)
+    * 
+    * After the first pass, and then every STABLE_EVERY_PASSES passes, copies
+    *    the weights when the training error is the lowest copied so far, to
+    *    put back if training diverges.
+    * Every validationEveryPasses passes, finds the error on the test models
+    *    that have targets, and copies the weights when it is the best so far.
+    * 
+    * @param count   the number of passes made
+    * @param error   the error of the last pass
+    * @return        why training should stop, or null to carry on
+    */
+   private String afterPass(int count, double error)
+   {
+      this.optimizer.setLambda(this.schedule.lambdaAfter(count, error));
+      String stop = this.earlyStopping.afterPass(count, error);
+      if (stop == null && (this.stableState == null
+            || (count - this.stablePass >= XOROptimized.STABLE_EVERY_PASSES && error < this.stableError)))
+      {
+         if (this.floatNetwork != null)                                       //kept as floats, like the weights
+            this.stableFloats = this.floatNetwork.keepWeights(this.stableFloats);
+         else
+         {
+            if (this.stablekj == null)
+            {
+               this.stablekj = this.weightskj.copy();
+               this.stableji = this.weightsji.copy();
+            }
+            this.stablekj.copyFrom(this.weightskj);
+            this.stableji.copyFrom(this.weightsji);
+         }
+         this.stableState = this.getOptimizerState().clone();
+         this.stableError = error;
+         this.stablePass = count;
+      }
+      if (stop != null || this.validationEveryPasses <= 0 || count % this.validationEveryPasses != 0)
+         return stop;
+      double validation = this.getValidationError();
+      if (Double.isNaN(validation))
+         return null;                                       //no test model has a target
+      stop = this.earlyStopping.afterValidation(count, validation);
+      if (this.earlyStopping.isBestValidation())
+      {
+         if (this.floatNetwork != null)
+            this.bestFloats = this.floatNetwork.keepWeights(this.bestFloats);
+         else
+         {
+            if (this.bestkj == null)
+            {
+               this.bestkj = this.weightskj.copy();
+               this.bestji = this.weightsji.copy();
+            }
+            this.bestkj.copyFrom(this.weightskj);
+            this.bestji.copyFrom(this.weightsji);
+         }
+         this.bestState = this.getOptimizerState().clone();
+      }
+      return stop;
+   }//private String afterPass(int count, double error)
+
+   /**
+    * Finds the error of the network on the test models that have targets
+    *    E = 1/2 * ∑ (Tmi - Fmi)^2 over those models, like the training error
+    *    When training in single precision, the float weights are copied back first.
+    * 
+    * @return  the validation error, or NaN if no test model has a target
+    */
+   public double getValidationError()
+   {
+      if (this.testT == null)
+         return Double.NaN;
+      TrainedModel model = this.toTrainedModel();
+      double[] F = new double[this.numOutputs];
+      double[] row = new double[this.numInputs];
+      double error = 0;
+      int numScored = 0;
+      for (int m = 0; m < this.numTestModels; m++)                            //loops over the test models
+      {
+         if (this.testT[m] == null)
+            continue;
+         model.predict(this.testInput(m, row), F);
+         for (int i = 0; i < this.numOutputs; i++)                            //loops over the outputs
+            error += (this.testT[m][i] - F[i]) * (this.testT[m][i] - F[i]);
+         numScored++;
+      }
+      return numScored == 0 ? Double.NaN : error/2;
+   }//public double getValidationError()
+
+   /**
+    * We already have a set of inputs that we have set aside for testing
+    *    They are scored on their own (see scoreTests()), so inputs, T, and
+    *    outputs keep the training data
+    * 
+    * Tests the network against the test inputs
     *    Supposed to be called once the weights are trained
     * 
     * Evaluates the network
@@ -582,7 +1521,7 @@ public class XOROptimized
          }
          System.out.print("\t\tTargets:");
          for (int i = 0; i < this.numOutputs; i++) {
-            System.out.print("\t" + this.T[m][i]);   
+            System.out.print("\t" + (this.T != null ? this.T[m][i] : this.floatT[m][i]));
          }
          System.out.println();                                    
       }
@@ -590,73 +1529,183 @@ public class XOROptimized
    }//public void printEvaluatedOutputs()
    
    /**
-    * Converts the inputs into the testInputs and evaluates the network
+    * Scores every test input on all the cores (see BatchScorer)
+    *    inputs, T, and outputs are not changed, so the network can keep training
+    *    The current weights are copied into a new TrainedModel every time
+    *    (toTrainedModel()); only the scorer is kept from one call to the next.
+    * 
+    * @return  [test model][output node] the outputs for each of testInputs
+    */
+   public double[][] scoreTests()
+   {
+      return this.scoreTests(this.toTrainedModel());
+   }//public double[][] scoreTests()
+
+   /**
+    * Scores every test input with a given trained network on all the cores
+    *    (for example a MappedModel from mapSavedWeights())
+    * 
+    * @param model   the network to score with
+    * @return        [test model][output node] the outputs for each of testInputs
+    */
+   public double[][] scoreTests(Predictor model)
+   {
+      if (this.scorer == null)
+         this.scorer = new BatchScorer();
+      double[][] testOutputs = (this.packedTestInputs != null) ? this.scorer.score(model, this.packedTestInputs)
+                                                               : this.scorer.score(model, this.testInputs);
+      this.testRowsPerSecond = this.scorer.getRowsPerSecond();
+      return testOutputs;
+   }//public double[][] scoreTests(Predictor model)
+
+   /**
+    * Evaluates the network under each of the testInputs and prints the outputs
+    *    The outputs are all scored first (scoreTests()) and then printed at once
     */
    public void printEvaluatedTests()
    {
-      this.inputs = new double[this.numTestModels][this.numInputs];           //resets inputs
-      this.outputs = new double[this.numTestModels][this.numOutputs];         //resets outputs
-      for (int m = 0; m < this.numTestModels; m++)
-         for (int k = 0; k < this.numInputs; k++)
-            this.inputs[m][k] = this.testInputs[m][k];                        //sets inputs equal to testInputs
-      
+      double[][] testOutputs = this.scoreTests();
+      StringBuilder report = new StringBuilder();
       for (int m = 0; m < this.numTestModels; m++)
-      {
          for (int i = 0; i < this.numOutputs; i++)                               //loops over the outputs
-         {
-            this.thetai[i] = 0;                                                  //resets thetai
-            for (int j = 0; j < this.numHiddens; j++)                            //loops over the hidden nodes
-            {
-               this.thetaj[j] = 0;                                               //resets thetaj
-               for (int k = 0; k < this.numInputs; k++)                          //loops over the inputs
-               {
-                  this.thetaj[j] += this.inputs[m][k] * this.weightskj[k][j];    //accumulates thetaj (sum of ak * wkj)
-               }
-               this.hidden[j] = this.f(this.thetaj[j]);                          //sets hidden node
-               this.thetai[i] += this.hidden[j] * this.weightsji[j][i];          //accumulates thetai (sum of hj * wji)
-            }//for (int j = 0; j < this.numHiddens; j++)
-
-            this.outputs[m][i] = this.f(this.thetai[i]);                         //sets output
-            System.out.println("Outputs:\t" + this.outputs[m][i]);               //prints outputs for user
-         }//for (int i = 0; i < this.numOutputs; i++)
-      }//for (int m = 0; m < this.numTestModels; m++)
+            report.append("Outputs:\t").append(testOutputs[m][i]).append('\n');
+      report.append("Scored ").append(this.numTestModels).append(" tests at ")
+            .append(Math.round(this.testRowsPerSecond)).append(" rows per second\n");
+      System.out.print(report);                                                  //prints outputs for user
+      return;
    }//public void printEvaluatedTests()
 
    /**
-    * Saves the weights
+    * Makes a ModelFile of the current weights
+    *    When training in single precision, the float weights are saved as floats
+    * 
+    * @return  the ModelFile
+    */
+   private ModelFile toModelFile()
+   {
+      WeightMatrix[] weights = this.doubleWeights();
+      return new ModelFile(weights[0], weights[1], this.floatNetwork != null,
+                           this.hiddenActivation, this.outputActivation);
+   }//private ModelFile toModelFile()
+
+   /**
+    * Makes the ModelFile a checkpoint saves: the current weights in double
+    *    and the activation functions
+    * 
+    * @return  the ModelFile
+    */
+   private ModelFile toCheckpointModel()
+   {
+      WeightMatrix[] weights = this.doubleWeights();
+      return new ModelFile(weights[0], weights[1], false, this.hiddenActivation, this.outputActivation);
+   }//private ModelFile toCheckpointModel()
+
+   /**
+    * Finds the current weights in double, for saving, exporting, and checkpointing
+    *    While training in float no double weights are kept (see
+    *    setFloatPrecision), so they are made from the float weights each time.
+    * 
+    * @return  weightskj and weightsji (not copies), or new matrices with the
+    *          float weights when training in float
+    */
+   private WeightMatrix[] doubleWeights()
+   {
+      if (this.floatNetwork != null)
+         return this.floatNetwork.toWeightMatrices();
+      return new WeightMatrix[] {this.weightskj, this.weightsji};
+   }//private WeightMatrix[] doubleWeights()
+
+   /**
+    * Makes sure both layers use the sigmoid, for the networks that only work that out
+    *    (FloatNetwork and QuantizedModel)
+    * 
+    * @param what    the network, for the message
+    * @throws IllegalStateException  if either activation function is not the sigmoid
+    */
+   private void requireSigmoid(String what)
+   {
+      if (!Activations.isSigmoid(this.hiddenActivation) || !Activations.isSigmoid(this.outputActivation))
+         throw new IllegalStateException(what + " only works with the sigmoid, not "
+               + this.hiddenActivation.getName() + " / " + this.outputActivation.getName());
+      return;
+   }//private void requireSigmoid(String what)
+
+   /**
+    * Makes sure the network is in double precision, for what only works on the
+    *    double layers (see setFloatPrecision(...))
+    * 
+    * @param what    what needs it, for the message
+    * @throws IllegalStateException  if float precision is on
+    */
+   private void requireDouble(String what)
+   {
+      if (this.floatNetwork != null)
+         throw new IllegalStateException(what + " needs double precision; turn float precision off first");
+      return;
+   }//private void requireDouble(String what)
+
+   /**
+    * Makes sure the inputs are kept as doubles, for the ways of training that
+    *    read inputs[][] (FloatNetwork, ParallelTrainer, and HogwildTrainer)
+    * 
+    * @param what    the way of training, for the message
+    * @throws IllegalStateException  if the images were loaded as packed bits (PACKED_INPUTS)
+    */
+   private void requireDenseInputs(String what)
+   {
+      if (this.packedInputs != null)
+         throw new IllegalStateException(what + " needs the inputs as doubles, not packed bits");
+      return;
+   }//private void requireDenseInputs(String what)
+
+   /**
+    * Finds one row of training inputs, unpacking it when the images were
+    *    loaded as packed bits or widening it when training in float
+    * 
+    * @param model   the model
+    * @param row     where to unpack it (length numInputs), if it is packed or float
+    * @return        the inputs of the model (row, or a row of inputs)
+    */
+   private double[] trainingInput(int model, double[] row)
+   {
+      if (this.floatInputs != null)
+      {
+         for (int k = 0; k < this.numInputs; k++)
+            row[k] = this.floatInputs[model][k];
+         return row;
+      }
+      return (this.packedInputs != null) ? this.packedInputs.unpack(model, row) : this.inputs[model];
+   }//private double[] trainingInput(int model, double[] row)
+
+   /**
+    * Finds one row of test inputs, unpacking it when the images were loaded
+    *    as packed bits
+    * 
+    * @param model   the test model
+    * @param row     where to unpack it (length numInputs), if it is packed
+    * @return        the inputs of the test model (row, or a row of testInputs)
+    */
+   private double[] testInput(int model, double[] row)
+   {
+      return (this.packedTestInputs != null) ? this.packedTestInputs.unpack(model, row) : this.testInputs[model];
+   }//private double[] testInput(int model, double[] row)
+
+   /**
+    * Saves the weights to the binary model file, MODEL_FILE_NAME (see ModelFile)
+    *    The file records the number of hidden nodes, so it does not need to be remembered
     */
-   @SuppressWarnings("resource")
    public void saveWeights()
    {
+      if (!this.hasFiniteWeights())
+      {
+         System.out.println("The weights are not all numbers (training diverged), so they were not saved");
+         return;
+      }
       try
       {
-         int count = 0;
-         File file = new File(XOROptimized.WEIGHTS_FILE_NAME + "1");
-         FileWriter fw = new FileWriter(file);
-         fw.write(this.numHiddens);
-         fw.flush();
-         for (int k = 0; k < this.numInputs; k++)
-         {
-            for (int j = 0; j < this.numHiddens; j++)
-            {
-               fw.write("\n" + this.weightskj[k][j]);    //writes the weightskj onto the file
-               count++;
-            }
-            fw.flush();
-         }
-         for (int j = 0; j < this.numHiddens; j++)
-         {
-            for (int i = 0; i < this.numOutputs; i++)
-            {
-               fw.write("\n" + this.weightsji[j][i]);    //writes the weightsji onto the file
-               count++;
-            }
-            fw.flush();
-         }
-         System.out.println("Number of lines should be:\t" + count);
-         System.out.println("Please remember that this program had "
-               + this.hidden.length + " hidden nodes");
-      }//try
+         this.toModelFile().write(new File(XOROptimized.MODEL_FILE_NAME));
+         System.out.println("Saved " + this.numHiddens + " hidden nodes to " + XOROptimized.MODEL_FILE_NAME);
+      }
       catch (IOException e)
       {
          e.printStackTrace();
@@ -664,6 +1713,38 @@ public class XOROptimized
       return;
    }//public void saveWeights()
 
+   /**
+    * Maps the saved model file, MODEL_FILE_NAME, for inference straight from
+    *    the file (see MappedModel). Nothing is parsed or copied, so this takes
+    *    the same time no matter how big the model is.
+    * 
+    * @return  the mapped network
+    * @throws IOException  if the file cannot be mapped or is not a model file
+    */
+   public static MappedModel mapSavedWeights() throws IOException
+   {
+      return new MappedModel(new File(XOROptimized.MODEL_FILE_NAME));
+   }//public static MappedModel mapSavedWeights()
+
+   /**
+    * Saves the weights as text, one per line, to WEIGHTS_FILE_NAME + "1"
+    *    (the format assignWeightsFromTextFile() reads)
+    */
+   public void exportWeights()
+   {
+      try
+      {
+         this.toModelFile().writeText(new File(XOROptimized.WEIGHTS_FILE_NAME + "1"));
+         System.out.println("Number of lines should be:\t"
+               + (this.numInputs * this.numHiddens + this.numHiddens * this.numOutputs));
+      }
+      catch (IOException e)
+      {
+         e.printStackTrace();
+      }
+      return;
+   }//public void exportWeights()
+
    /**
     * Prints out each of the weights, starting a new line for each one
     *    Different from print2DDoubleArray because it prints both sets
@@ -672,20 +1753,120 @@ public class XOROptimized
     */
    public void printWeights()
    {
+      WeightMatrix[] weights = this.doubleWeights();
+      WeightMatrix weightskj = weights[0];
+      WeightMatrix weightsji = weights[1];
       for (int k = 0; k < this.numInputs; k++)                                      //loops through each input
          for (int j = 0; j < this.numHiddens; j++)                                  //loops through each node of hidden layer
          {
-            System.out.println("w" + (k+1) + (j+1) + "1" + ":\t" + weightskj[k][j]);//prints out weights1
+            System.out.println("w" + (k+1) + (j+1) + "1" + ":\t" + weightskj.get(j, k));//prints out weights1
          }
 
       for (int j = 0; j < this.numHiddens; j++)                                     //loops through each node of hidden layer
          for (int i = 0; i < this.numOutputs; i++)                                  //loops through each output
          {
-            System.out.println("w" + (j+1) + (i+1) + "2" + ":\t" + weightsji[j][i]);//prints out weights2
+            System.out.println("w" + (j+1) + (i+1) + "2" + ":\t" + weightsji.get(i, j));//prints out weights2
          }
       return;
    }//public void printWeights()
 
+   /**
+    * Runs one input pattern forward through the network
+    *    input -> hidden (hiddenLayer), then hidden -> output (outputLayer)
+    * 
+    * Each hidden node is calculated exactly once, so a forward pass costs
+    *    numHiddens * numInputs + numOutputs * numHiddens multiplications.
+    *    After this returns, thetaj, hidden, and thetai hold the values for this input.
+    * 
+    * @param input   the activations of the input layer
+    * @return        the output activations (owned by outputLayer, overwritten next call)
+    * @throws IllegalStateException  while training in float (there are no layers)
+    */
+   public double[] forward(double[] input)
+   {
+      this.requireDouble("forward(...)");
+      return this.outputLayer.forward(this.hiddenLayer.forward(input));
+   }//public double[] forward(double[] input)
+
+   /**
+    * Makes an immutable copy of this network for inference only
+    *    The copy can be shared by any number of threads (see TrainedModel),
+    *    and this network can keep training without changing it.
+    *    When training in single precision, it has the float weights in double.
+    * 
+    * @return  the TrainedModel with the current weights
+    */
+   public TrainedModel toTrainedModel()
+   {
+      WeightMatrix[] weights = this.doubleWeights();
+      return new TrainedModel(weights[0], weights[1], this.hiddenActivation, this.outputActivation);
+   }//public TrainedModel toTrainedModel()
+
+   /**
+    * Makes an int8 copy of this network for inference only (see QuantizedModel)
+    *
+    * @return  the QuantizedModel with the current weights rounded to 8 bits
+    */
+   public QuantizedModel toQuantizedModel()
+   {
+      this.requireSigmoid("The int8 network");
+      WeightMatrix[] weights = this.doubleWeights();
+      return new QuantizedModel(weights[0], weights[1]);
+   }//public QuantizedModel toQuantizedModel()
+
+   /**
+    * Prints how far the int8 network (toQuantizedModel()) is from the double
+    *    network (toTrainedModel()) on the training inputs and on the test inputs
+    *    (TEST_PATTERNS or the test characters, whichever were loaded):
+    *    the largest and mean output difference, how often both pick the same
+    *    largest output (when there is more than one), and the memory each
+    *    one's weights take
+    */
+   public void reportQuantization()
+   {
+      TrainedModel exact = this.toTrainedModel();
+      QuantizedModel rounded = this.toQuantizedModel();
+      double[] roundedOutputs = new double[this.numOutputs];
+      String[] names = {"Training inputs", "Test inputs"};
+      int[] sizes = {this.numModels, this.numTestModels};
+      double[] row = new double[this.numInputs];
+      for (int set = 0; set < names.length; set++)
+      {
+         double worst = 0;
+         double total = 0;
+         int sameChoice = 0;
+         for (int m = 0; m < sizes[set]; m++)
+         {
+            double[] input = (set == 0) ? this.trainingInput(m, row) : this.testInput(m, row);
+            double[] exactOutputs = exact.predict(input);
+            rounded.predict(input, roundedOutputs);
+            int exactChoice = 0;
+            int roundedChoice = 0;
+            for (int i = 0; i < this.numOutputs; i++)                            //loops over the outputs
+            {
+               double difference = Math.abs(exactOutputs[i] - roundedOutputs[i]);
+               worst = Math.max(worst, difference);
+               total += difference;
+               if (exactOutputs[i] > exactOutputs[exactChoice])
+                  exactChoice = i;
+               if (roundedOutputs[i] > roundedOutputs[roundedChoice])
+                  roundedChoice = i;
+            }
+            if (exactChoice == roundedChoice)
+               sameChoice++;
+         }//for (int m = 0; m < sizes[set]; m++)
+         System.out.print(names[set] + ":\tlargest output difference " + worst
+               + "\tmean output difference " + total / Math.max(1, sizes[set] * this.numOutputs));
+         if (this.numOutputs > 1)
+            System.out.print("\tsame largest output " + sameChoice + " / " + sizes[set]);
+         System.out.println();
+      }//for (int set = 0; set < names.length; set++)
+      long doubleBytes = 8L * ((long) this.numHiddens * this.numInputs + (long) this.numOutputs * this.numHiddens);
+      System.out.println("Weights (double):\t" + doubleBytes + " bytes");
+      System.out.println("Weights (int8):\t" + rounded.getNumBytes() + " bytes");
+      return;
+   }//public void reportQuantization()
+
    /**
     * Evaluates the network within one model, only.
     * 
@@ -706,29 +1887,21 @@ public class XOROptimized
     * 
     * Below is the loop structure:
     * 
+    *    forward(ak)                            (hiddenLayer then outputLayer)
+    *       for j = 0 to hj (hidden layer loop)
+    *          thetaj = ∑k ak * wkj             (accumulates thetaj)
+    *          hj = f (thetaj)                  (calculates hidden node)
+    *       next j
+    *       for i = 0 to Fi (output loop)
+    *          thetai = ∑j hj * wji             (accumulates thetai)
+    *          Fi = f (thetai)                  (calculates output)
+    *       next i
+    *
     *    subError = 0
     *       for i = 0 to Fi (output loop)
-    *          thetai = 0
-    *            
-    *             for j = 0 to hj (hidden layer loop)
-    *             
-    *                if i = 0 (only need to do the following once for all outputs)
-    *                   thetaj = 0
-    *                   
-    *                   for k = 0 to ak (input loop)
-    *                     thetaj += ak * wkj (accumulates thetaj)
-    *                   next k
-    *               
-    *                close if i = 0
-    *                hj = f (thetaj)          (calculates hidden node)
-    *                thetai += hj * wji       (accumulates thetai)
-    *             next j
-    *           
-    *          Fi = f (thetai)                   (calculates output)
     *          omegai = (Ti - Fi)                (calculates omegai - no array)
     *          psii = omegai * f ' (thetai)      (calculates psii)
     *          subError += omegai * omegai       (adds to the error)
-    *      
     *       next i
     *    return subError
     * 
@@ -737,55 +1910,66 @@ public class XOROptimized
     */
    public double evaluateNetwork(int model)
    {  
-      double subError = 0.0;
-      for (int i = 0; i < this.numOutputs; i++)                               //loops over the outputs
+      if (this.floatNetwork != null)                                          //the float network has no layers
       {
-         this.thetai[i] = 0;                                                  //resets thetai
-         for (int j = 0; j < this.numHiddens; j++)                            //loops over the hidden nodes
-         {
-            this.thetaj[j] = 0;                                               //resets thetaj
-            for (int k = 0; k < this.numInputs; k++)                          //loops over the inputs
-            {
-               this.thetaj[j] += this.inputs[model][k] * this.weightskj[k][j];//accumulates thetaj (sum of ak * wkj)
-            }
-            this.hidden[j] = this.f(this.thetaj[j]);                          //sets hidden node
-            this.thetai[i] += this.hidden[j] * this.weightsji[j][i];          //accumulates thetai (sum of hj * wji)
-         }                                                                    //for (int j = 0; j < this.numHiddens; j++)
-
-         this.outputs[model][i] = this.f(this.thetai[i]);                     //sets output
-         double omegai = this.T[model][i] - this.outputs[model][i];           //creates omegai
-         this.psii[i] = omegai * this.fPrime(this.thetai[i]);                 //sets psii
-         subError += omegai * omegai;                                         //adds to subError
-      }                                                                       //for (int i = 0; i < this.numOutputs; i++)
-      return subError;
+         double subError = this.floatNetwork.evaluateNetwork(model);
+         float[] F = this.floatNetwork.getOutputs();
+         for (int i = 0; i < this.numOutputs; i++)
+            this.outputs[model][i] = F[i];
+         return subError;
+      }
+      double[] F = this.outputLayer.forward(this.forwardInputs(model, 1)[0]);  //evaluates hidden and output layers once
+      for (int i = 0; i < this.numOutputs; i++)                               //loops over the outputs
+         this.outputs[model][i] = F[i];                                       //sets output
+      return this.outputLayer.outputDeltas(this.T, model, 1);                 //sets omegai and psii, returns subError
    }//public double evaluateNetwork(int model)
 
+   /**
+    * The backward pass for one model, without changing the weights
+    *    Evaluates the network for the model, finds omegaj and psij once, then
+    *    adds up the gradient of each layer of weights as an outer product:
+    *       gradientji(i, j) = hj * psii
+    *       gradientkj(j, k) = ak * psij
+    * 
+    * The gradients are exactly the change this model asks for, without
+    *    lambda; improveWeights(...) makes the same change fused into the
+    *    weights. They are copied out of the layers (Layer.getGradient()) and
+    *    the layers' gradients are cleared again, so training is not affected.
+    * 
+    * @param model   the model to find the gradients of
+    * @return        the gradient of weightskj and then of weightsji (same
+    *                layouts as the weights)
+    */
+   public WeightMatrix[] backward(int model)
+   {
+      this.requireDouble("backward(...)");
+      this.evaluateNetwork(model);
+      this.hiddenLayer.propagateDeltas(this.outputLayer);                        //omegaj and psij, once per hidden node
+      this.outputLayer.accumulateGradient();                                     //gradientji
+      this.hiddenLayer.accumulateGradient();                                     //gradientkj
+      WeightMatrix[] gradients = {this.hiddenLayer.getGradient().copy(), this.outputLayer.getGradient().copy()};
+      this.hiddenLayer.getGradient().clear();
+      this.outputLayer.getGradient().clear();
+      return gradients;
+   }//public WeightMatrix[] backward(int model)
+
    /**
     * Adjusts the weights within one model
     *    Finds omegaj and psij to adjust weightsji
     * 
-    *    for k = 0 to ak (input loop)
-    *        
+    *    propagateDeltas
     *       for j = 0 to hj (hidden layer loop)
-    *              
-    *          if k = 0 (only need to do the following once for all inputs)
-    *
-    *             omegaj = 0
-    *          
-    *             for i = 0 to Fi (output loop)
-    *                omegaj += psii weightsji (calculates psii * wji for omegaj)
-    *                deltawji = lambda * hidden j * psii
-    *                weightsji += deltawji
-    *             next i
-    *          
-    *             psij = omegaj * f ' (thetaj)
-    *          close if k = 0
-    *       
-    *          deltawkj = lambda * input k * psij
-    *          weightskj += deltawkj
-    *       
+    *          omegaj = ∑i psii * wji            (uses the weights before any change)
+    *          psij = omegaj * f ' (thetaj)
     *       next j
-    *    next k
+    *    weightsji += lambda * hj * psii         (straight into the weights)
+    *    weightskj += lambda * ak * psij         (only where ak is not 0)
+    * 
+    * The change of one model goes straight into the weights instead of through
+    *    the gradient arrays, so a weight whose input is 0 is never read or
+    *    written; with sparse inputs (see SparseRows) the inputs that are 0 are
+    *    not even looked at. An optimizer that keeps state (anything but sgd)
+    *    changes every weight instead, through the gradient arrays.
     * 
     * @precondition  thetaj, thetai, psii, omegai, inputs, hidden nodes, outputs
     *                   have been declared and are all under the same model
@@ -793,22 +1977,18 @@ public class XOROptimized
     */
    public void improveWeights(int model)
    {
-      for (int k = 0; k < this.numInputs; k++)                                   //loops over the inputs
+      this.hiddenLayer.propagateDeltas(this.outputLayer);                        //omegaj and psij, once per hidden node
+      if (this.optimizer.isStateless())
       {
-         for (int j = 0; j < this.numHiddens; j++)                               //loops over the hidden nodes
-         {
-            this.omegaj[j] = 0;                                                  //resets omegaj
-            for (int i = 0; i < this.numOutputs; i++)                            //loops over the outputs
-            {
-               this.omegaj[j] += this.psii[i] * this.weightsji[j][i];            //accumulates omegaj
-               double deltawji = this.LAMBDA * this.hidden[j] * this.psii[i];    //calculates change in weightsji
-               this.weightsji[j][i] += deltawji;
-            }
-            this.psij[j] = omegaj[j] * this.fPrime(this.thetaj[j]);              //calculates psij
-            double deltawkj = this.LAMBDA * this.inputs[model][k] * this.psij[j];//calculates change in weightskj
-            this.weightskj[k][j] += deltawkj;
-         }                                                                       //for (int j = 0; j < this.numHiddens; j++)
-      }                                                                          //for (int k = 0; k < this.numInputs; k++)
+         this.outputLayer.updateWeights(this.optimizer.getLambda());             //weightsji += lambda * hj * psii
+         this.hiddenLayer.updateWeights(this.optimizer.getLambda());             //weightskj += lambda * ak * psij
+         return;
+      }
+      this.outputLayer.accumulateGradient();                                     //gradientji
+      this.hiddenLayer.accumulateGradient();                                     //gradientkj
+      this.optimizer.startStep();
+      this.outputLayer.applyGradient(this.optimizer);
+      this.hiddenLayer.applyGradient(this.optimizer);
       return;
    }//public void improveWeights(double model)
 
@@ -834,56 +2014,42 @@ public class XOROptimized
     *    Within the model loop, there are two sets of loops
     *
     * 1) 
+    *    forward(ak)                            (hiddenLayer then outputLayer)
+    *       for j = 0 to hj (hidden layer loop)
+    *          thetaj = ∑k ak * wkj             (accumulates thetaj)
+    *          hj = f (thetaj)                  (calculates hidden node)
+    *       next j
+    *       for i = 0 to Fi (output loop)
+    *          thetai = ∑j hj * wji             (accumulates thetai)
+    *          Fi = f (thetai)                  (calculates output)
+    *       next i
+    *
     *    subError = 0
     *       for i = 0 to Fi (output loop)
-    *          thetai = 0
-    *            
-    *             for j = 0 to hj (hidden layer loop)
-    *             
-    *                if i = 0 (only need to do the following once for all outputs)
-    *                   thetaj = 0
-    *                   
-    *                   for k = 0 to ak (input loop)
-    *                     thetaj += ak * wkj (accumulates thetaj)
-    *                   next k
-    *               
-    *                close if i = 0
-    *                hj = f (thetaj)          (calculates hidden node)
-    *                thetai += hj * wji       (accumulates thetai)
-    *             next j
-    *           
-    *          Fi = f (thetai)                   (calculates output)
     *          omegai = (Ti - Fi)                (calculates omegai - no array)
     *          psii = omegai * f ' (thetai)      (calculates psii)
     *          subError += omegai * omegai       (adds to the error)
-    *      
     *       next i
     *    return subError
     *    
     * 2)
-    *    for k = 0 to ak (input loop)
-    *        
+    *    propagateDeltas
     *       for j = 0 to hj (hidden layer loop)
-    *              
-    *          if k = 0 (only need to do the following once for all inputs)
-    *
-    *             omegaj = 0
-    *          
-    *             for i = 0 to Fi (output loop)
-    *                omegaj += psii weightsji (calculates psii * wji for omegaj)
-    *                deltawji = lambda * hidden j * psii
-    *                weightsji += deltawji
-    *             next i
-    *          
-    *             psij = omegaj * f ' (thetaj)
-    *          close if k = 0
-    *       
-    *          deltawkj = lambda * input k * psij
-    *          weightskj += deltawkj
-    *       
+    *          omegaj = ∑i psii * wji            (uses the weights before any change)
+    *          psij = omegaj * f ' (thetaj)
     *       next j
-    *    next k
+    *
+    *    weightsji += lambda * hj * psii
+    *    weightskj += lambda * ak * psij         (only where ak is not 0)
     *       
+    * When the batch size is more than 1, the models are taken batchSize at a
+    *    time instead: evaluateBatch(...) does 1) for the whole batch and
+    *    improveWeightsBatch(...) does 2) for the whole batch, so the weights
+    *    change once per batch.
+    * When there is more than one training thread, ParallelTrainer does 1) and
+    *    2) for every model on all the threads and changes the weights once,
+    *    or HogwildTrainer does 1) and 2) for each model on whichever thread
+    *    takes it.
     * 
     * Then, at the very end, it returns 1/2 the error, which was the sum
     *    of all the (Tmi - Fmi)^2 over all models
@@ -892,17 +2058,94 @@ public class XOROptimized
     */
    public double evaluateAndImproveNetwork()
    {
+      if (this.floatNetwork != null)
+         return this.floatNetwork.evaluateAndImproveNetwork((float) this.optimizer.getLambda());
+      if (this.parallelTrainer != null)
+         return this.parallelTrainer.evaluateAndImproveNetwork(this.optimizer);
+      if (this.hogwildTrainer != null)
+         return this.hogwildTrainer.evaluateAndImproveNetwork(this.optimizer.getLambda());
+
       double error = 0;
-      for (int m = 0; m < this.numModels; m++)//loops over all different models
+      if (this.batchSize > 1)
       {
-         error += this.evaluateNetwork(m);
-         this.improveWeights(m);
+         for (int first = 0; first < this.numModels; first += this.batchSize)//loops over the batches
+         {
+            int count = Math.min(this.batchSize, this.numModels - first);
+            error += this.evaluateBatch(first, count);
+            this.improveWeightsBatch(count);
+         }
+      }
+      else
+      {
+         for (int m = 0; m < this.numModels; m++)//loops over all different models
+         {
+            error += this.evaluateNetwork(m);
+            this.improveWeights(m);
+         }
       }
       return error/2;
    }//public double evaluateAndImproveNetwork()
 
+   /**
+    * Evaluates the network under count models at once, starting at model first
+    *    Same as evaluateNetwork(m) for each model in the batch, except that the
+    *    batch goes through each layer as one matrix-matrix product
+    *    (see Layer.forward(double[][], int, int))
+    * 
+    * @param first   the first model in the batch
+    * @param count   the number of models in the batch (at most the batch size)
+    * @return        double the ∑ (Tmi - Fmi) ^ 2 over the models in the batch
+    */
+   public double evaluateBatch(int first, int count)
+   {
+      this.forwardInputs(first, count);
+      double[][] F = this.outputLayer.forward(this.hiddenLayer.getActivationRows(), 0, count);
+      for (int b = 0; b < count; b++)                                         //loops over the models in the batch
+         for (int i = 0; i < this.numOutputs; i++)                            //loops over the outputs
+            this.outputs[first + b][i] = F[b][i];                             //sets output
+      return this.outputLayer.outputDeltas(this.T, first, count);            //psii and the error of every model
+   }//public double evaluateBatch(int first, int count)
+
+   /**
+    * Runs count training models through the hidden layer, from the packed
+    *    bits when the images were loaded that way, else from inputs
+    * 
+    * @param first   the first model
+    * @param count   the number of models (at most the batch size)
+    * @return        the [model][node] activations of the hidden layer
+    */
+   private double[][] forwardInputs(int first, int count)
+   {
+      if (this.packedInputs != null)
+         return this.hiddenLayer.forward(this.packedInputs, first, count);
+      return this.hiddenLayer.forward(this.inputs, first, count);
+   }//private double[][] forwardInputs(int first, int count)
+
+   /**
+    * The backward pass for the whole batch last given to evaluateBatch(...)
+    *    followed by one change of the weights
+    * 
+    * The gradient of every model in the batch is added up first, so the weights
+    *    are written once per batch instead of once per model. The gradient is a
+    *    sum (not an average), so LAMBDA means the same thing as in online training.
+    * 
+    * @param count   the number of models in the batch
+    */
+   public void improveWeightsBatch(int count)
+   {
+      this.hiddenLayer.propagateDeltas(this.outputLayer, count);                 //omegaj and psij for every model
+      this.outputLayer.accumulateGradient(count);                                //gradientji
+      this.hiddenLayer.accumulateGradient(count);                                //gradientkj
+      this.optimizer.startStep();
+      this.outputLayer.applyGradient(this.optimizer);
+      this.hiddenLayer.applyGradient(this.optimizer);
+      return;
+   }//public void improveWeightsBatch(int count)
+
    public double getError()
    {
+      if (this.floatNetwork != null)
+         return this.floatNetwork.getError();
       double error = 0;
       for (int m = 0; m < this.numModels; m++)//loops over all different models
          error += this.evaluateNetwork(m);